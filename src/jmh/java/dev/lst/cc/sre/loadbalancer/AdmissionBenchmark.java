@@ -0,0 +1,73 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.FixedConcurrencyLimit;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of the AdmissionController on Loadbalancer.get() while it is not overloaded, i.e. every request is admitted
+ * right away, against a Loadbalancer without admission control.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdmissionBenchmark {
+
+    private static final int PROVIDERS = 10;
+
+    @Param({"NONE", "ADMISSION"})
+    private String admission;
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private Loadbalancer loadbalancer;
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        for (int i = 0; i < PROVIDERS; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("provider-" + i), 1,
+                    new FixedConcurrencyLimit(1000)));
+        }
+        AdmissionController controller = "ADMISSION".equals(admission) ? new AdmissionController(1000) : null;
+        loadbalancer = new Loadbalancer(RoundRobinLBStrategy.INSTANCE, ExecutionMode.PROVIDER_EXECUTOR, null,
+                controller);
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.resetProviders();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String get_1Thread() throws ServiceUnavailableException {
+        return loadbalancer.get();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getCritical_1Thread() throws ServiceUnavailableException {
+        return loadbalancer.get(RequestPriority.CRITICAL, Loadbalancer.NO_TIMEOUT);
+    }
+}
@@ -0,0 +1,116 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.DelayedInMemoryProvider;
+import dev.lst.cc.sre.registry.FixedConcurrencyLimit;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bursts of BURST requests against 10 providers taking 50 microseconds per call (and per batch), dispatched one by one,
+ * batched by the RequestBatcher, or as keyed requests with and without single-flight coalescing. One operation is one
+ * complete burst.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchingBenchmark {
+
+    private static final int PROVIDERS = 10;
+    private static final int BURST = 64;
+    private static final int KEYS = 4;
+    private static final long DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_BATCH_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Param({"8", "64"})
+    private int maxBatchSize;
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private final String[] keys = new String[BURST];
+    private Loadbalancer loadbalancer;
+    private RequestBatcher batcher;
+    private ExecutorService batchExecutor;
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        for (int i = 0; i < PROVIDERS; i++) {
+            // the whole burst may run at the same time, BUSY providers would only measure rejections
+            registry.registerProvider(new ProviderRegistryItem(new DelayedInMemoryProvider("provider-" + i,
+                    DELAY_NANOS), 1, new FixedConcurrencyLimit(BURST)));
+        }
+        for (int i = 0; i < BURST; i++) {
+            keys[i] = "key-" + i % KEYS;
+        }
+        loadbalancer = new Loadbalancer(RoundRobinLBStrategy.INSTANCE);
+        batchExecutor = Executors.newFixedThreadPool(BURST, runnable -> {
+            Thread thread = new Thread(runnable, "batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batcher = loadbalancer.batcher(maxBatchSize, MAX_BATCH_DELAY_NANOS, batchExecutor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchExecutor.shutdownNow();
+        registry.resetProviders();
+    }
+
+    @Benchmark
+    public void burst_unbatched() {
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            answers[i] = loadbalancer.getAsync();
+        }
+        CompletableFuture.allOf(answers).join();
+    }
+
+    @Benchmark
+    public void burst_batched() {
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            answers[i] = batcher.submit();
+        }
+        CompletableFuture.allOf(answers).join();
+    }
+
+    @Benchmark
+    public void keyedBurst_uncoalesced() {
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            answers[i] = loadbalancer.getAsync(keys[i]);
+        }
+        CompletableFuture.allOf(answers).join();
+    }
+
+    @Benchmark
+    public void keyedBurst_coalesced() {
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            answers[i] = loadbalancer.getCoalesced(keys[i]);
+        }
+        CompletableFuture.allOf(answers).join();
+    }
+}
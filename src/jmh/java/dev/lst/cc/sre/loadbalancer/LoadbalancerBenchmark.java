@@ -0,0 +1,91 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.strategy.LBStrategyBenchmark;
+import dev.lst.cc.sre.provider.DelayedInMemoryProvider;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.provider.Provider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end Loadbalancer.get(), including the strategy and the call to the provider. The DELAYED providers park
+ * for 50 microseconds per call, as a stand-in for the SlowInMemoryProvider. With a timeout, the call runs on the
+ * executor of the provider, so that is the price of a request the caller can stop waiting for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadbalancerBenchmark {
+
+    private static final long DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Param({"RandomLBStrategy", "RoundRobinLBStrategy"})
+    private String strategyName;
+
+    @Param({"10", "100", "10000"})
+    private int providers;
+
+    @Param({"IN_MEMORY", "DELAYED"})
+    private String providerType;
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private Loadbalancer loadbalancer;
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        registry.setMaxProviders(providers);
+        for (int i = 0; i < providers; i++) {
+            registry.registerProvider(new ProviderRegistryItem(provider(UUID.randomUUID().toString())));
+        }
+        loadbalancer = new Loadbalancer(LBStrategyBenchmark.strategy(strategyName));
+    }
+
+    private Provider provider(String uid) {
+        return "DELAYED".equals(providerType) ? new DelayedInMemoryProvider(uid, DELAY_NANOS) : new InMemoryProvider(uid);
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.resetProviders();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String get_1Thread() throws ServiceUnavailableException {
+        return loadbalancer.get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String get_8Threads() throws ServiceUnavailableException {
+        return loadbalancer.get();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getWithTimeout_1Thread() throws ServiceUnavailableException {
+        return loadbalancer.get(TIMEOUT_NANOS);
+    }
+}
@@ -0,0 +1,86 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.HealthCheckScheduler;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loadbalancer.get() over many independent pools of 10 in-memory providers each, every call going to the next pool.
+ * The setup prints the threads and the heap the pools added, to show they don't grow per pool beyond the registry and
+ * its providers: all pools share one HealthCheckScheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolsBenchmark {
+
+    private static final int PROVIDERS = 10;
+
+    @Param({"1", "100"})
+    private int pools;
+
+    private ProviderRegistry[] registries;
+    private Loadbalancer[] loadbalancers;
+    private int next;
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        HealthCheckScheduler.shared();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        registries = new ProviderRegistry[pools];
+        loadbalancers = new Loadbalancer[pools];
+        for (int pool = 0; pool < pools; pool++) {
+            registries[pool] = new ProviderRegistry("pool-" + pool);
+            loadbalancers[pool] = new Loadbalancer(new RoundRobinLBStrategy(registries[pool]));
+            for (int i = 0; i < PROVIDERS; i++) {
+                loadbalancers[pool].registerProvider(new ProviderRegistryItem(new InMemoryProvider("provider-" + i)));
+            }
+        }
+
+        System.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        System.out.printf("%n%d pools: %d threads and %d KiB heap (%d bytes per pool) added%n", pools, threads,
+                heap / 1024, heap / pools);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (ProviderRegistry registry : registries) {
+            registry.close();
+        }
+    }
+
+    @Benchmark
+    public String get() throws ServiceUnavailableException {
+        int pool = next;
+        next = pool + 1 == pools ? 0 : pool + 1;
+        return loadbalancers[pool].get();
+    }
+}
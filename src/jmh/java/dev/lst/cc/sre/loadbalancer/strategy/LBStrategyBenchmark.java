@@ -0,0 +1,98 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency percentiles of LBStrategy.getNext() for the different strategies and pool sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LBStrategyBenchmark {
+
+    @Param({"RandomLBStrategy", "RoundRobinLBStrategy", "PowerOfTwoChoicesLBStrategy", "LeastConnectionsLBStrategy",
+            "PeakEwmaLBStrategy", "SmoothWeightedRoundRobinLBStrategy", "WeightedRandomLBStrategy",
+            "ConsistentHashLBStrategy", "PriorityLBStrategy"})
+    private String strategyName;
+
+    @Param({"10", "100", "10000"})
+    private int providers;
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private LBStrategy strategy;
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        registry.setMaxProviders(providers);
+        for (int i = 0; i < providers; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString())));
+        }
+        strategy = strategy(strategyName);
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.resetProviders();
+    }
+
+    public static LBStrategy strategy(String name) {
+        switch (name) {
+            case "RandomLBStrategy":
+                return RandomLBStrategy.INSTANCE;
+            case "RoundRobinLBStrategy":
+                return RoundRobinLBStrategy.INSTANCE;
+            case "PowerOfTwoChoicesLBStrategy":
+                return PowerOfTwoChoicesLBStrategy.INSTANCE;
+            case "LeastConnectionsLBStrategy":
+                return LeastConnectionsLBStrategy.INSTANCE;
+            case "PeakEwmaLBStrategy":
+                return PeakEwmaLBStrategy.INSTANCE;
+            case "SmoothWeightedRoundRobinLBStrategy":
+                return SmoothWeightedRoundRobinLBStrategy.INSTANCE;
+            case "WeightedRandomLBStrategy":
+                return WeightedRandomLBStrategy.INSTANCE;
+            case "ConsistentHashLBStrategy":
+                return ConsistentHashLBStrategy.INSTANCE;
+            case "PriorityLBStrategy":
+                return PriorityLBStrategy.INSTANCE;
+            default:
+                throw new IllegalArgumentException("unknown strategy " + name);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderRegistryItem getNext_1Thread() throws ServiceUnavailableException {
+        return strategy.getNext();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ProviderRegistryItem getNext_8Threads() throws ServiceUnavailableException {
+        return strategy.getNext();
+    }
+}
@@ -0,0 +1,89 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the thread local RandomLBStrategy with the previous implementation, which shared one java.util.Random
+ * between all callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomLBStrategyBenchmark {
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private final Random sharedRandom = new Random();
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        for (int i = 0; i < 10; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString())));
+        }
+        RandomLBStrategy.INSTANCE.setRandomSource(RandomSource.threadLocal());
+    }
+
+    private ProviderRegistryItem sharedRandomGetNext() {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+        return activeProviders.get(sharedRandom.nextInt(activeProviders.size()));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderRegistryItem sharedRandom_1Thread() {
+        return sharedRandomGetNext();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ProviderRegistryItem sharedRandom_8Threads() {
+        return sharedRandomGetNext();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public ProviderRegistryItem sharedRandom_64Threads() {
+        return sharedRandomGetNext();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderRegistryItem threadLocal_1Thread() throws ServiceUnavailableException {
+        return RandomLBStrategy.INSTANCE.getNext();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ProviderRegistryItem threadLocal_8Threads() throws ServiceUnavailableException {
+        return RandomLBStrategy.INSTANCE.getNext();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public ProviderRegistryItem threadLocal_64Threads() throws ServiceUnavailableException {
+        return RandomLBStrategy.INSTANCE.getNext();
+    }
+}
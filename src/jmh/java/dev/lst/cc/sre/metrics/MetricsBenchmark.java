@@ -0,0 +1,79 @@
+package dev.lst.cc.sre.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.Loadbalancer;
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of the metrics: recording into a Counter and a Histogram on their own, and Loadbalancer.get() against 10
+ * in-memory providers with metrics switched on and off. The in-memory providers answer right away, so the difference
+ * of the two get() runs is the whole overhead of recording a request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private static final int PROVIDERS = 10;
+
+    @Param({"true", "false"})
+    private boolean enabled;
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private final Counter counter = new Counter();
+    private final Histogram histogram = new Histogram();
+    private Loadbalancer loadbalancer;
+    private long value;
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        for (int i = 0; i < PROVIDERS; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("provider-" + i)));
+        }
+        loadbalancer = new Loadbalancer(RoundRobinLBStrategy.INSTANCE);
+        Metrics.INSTANCE.setEnabled(enabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Metrics.INSTANCE.setEnabled(true);
+        registry.resetProviders();
+    }
+
+    @Benchmark
+    public void counter_increment() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public void histogram_record() {
+        histogram.record(value++ & 0xFFFFF);
+    }
+
+    @Benchmark
+    public String get() throws ServiceUnavailableException {
+        return loadbalancer.get();
+    }
+}
@@ -0,0 +1,32 @@
+package dev.lst.cc.sre.provider;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for a SlowInMemoryProvider in benchmarks. Parks for a configurable amount of nanoseconds instead of
+ * sleeping for 2 seconds, so benchmarks can show the effect of a slow provider without taking forever. A batch costs
+ * the same delay as a single call, like one round trip to a remote provider.
+ */
+public class DelayedInMemoryProvider extends InMemoryProvider implements BatchProvider {
+
+    private final long delayNanos;
+
+    public DelayedInMemoryProvider(String uid, long delayNanos) {
+        super(uid);
+        this.delayNanos = delayNanos;
+    }
+
+    @Override
+    public String get() {
+        LockSupport.parkNanos(delayNanos);
+        return super.getUid();
+    }
+
+    @Override
+    public List<String> getBatch(int requests) {
+        LockSupport.parkNanos(delayNanos);
+        return Collections.nCopies(requests, super.getUid());
+    }
+}
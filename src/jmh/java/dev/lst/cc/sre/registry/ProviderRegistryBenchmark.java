@@ -0,0 +1,122 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.loadbalancer.strategy.RandomLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reading the active providers from the registry and of the admin operations (register, exclude) for
+ * different pool sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderRegistryBenchmark {
+
+    @Param({"10", "100", "10000"})
+    private int providers;
+
+    private final ProviderRegistry registry = ProviderRegistry.INSTANCE;
+
+    private final List<String> uids = new ArrayList<>();
+
+    @Setup
+    public void setup() throws RegistryFullException {
+        registry.resetProviders();
+        // one more for registerAndRemove
+        registry.setMaxProviders(providers + 1);
+        uids.clear();
+        for (int i = 0; i < providers; i++) {
+            String uid = UUID.randomUUID().toString();
+            uids.add(uid);
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.resetProviders();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<ProviderRegistryItem> getActiveProviders_1Thread() {
+        return registry.getActiveProviders();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<ProviderRegistryItem> getActiveProviders_8Threads() {
+        return registry.getActiveProviders();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderSnapshot getActiveSnapshot_1Thread() {
+        return registry.getActiveSnapshot();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ProviderSnapshot getActiveSnapshot_8Threads() {
+        return registry.getActiveSnapshot();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderSnapshot registerAndRemove_1Thread() throws RegistryFullException {
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+        registry.removeProvider(uid);
+        return registry.getActiveSnapshot();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderSnapshot excludeAndInclude_1Thread() {
+        String uid = uids.get(ThreadLocalRandom.current().nextInt(uids.size()));
+        registry.exclude(uid);
+        registry.include(uid);
+        return registry.getActiveSnapshot();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ProviderSnapshot excludeAndInclude_8Threads() {
+        return excludeAndInclude_1Thread();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ProviderRegistryItem select_1Thread() throws ServiceUnavailableException {
+        return RandomLBStrategy.INSTANCE.getNext();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ProviderRegistryItem select_8Threads() throws ServiceUnavailableException {
+        return RandomLBStrategy.INSTANCE.getNext();
+    }
+}
@@ -3,9 +3,6 @@ package dev.lst.cc.sre;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import dev.lst.cc.sre.loadbalancer.Loadbalancer;
@@ -107,9 +104,10 @@ public class LoadbalancerApp {
 
     private static void executeStep6And7() throws InterruptedException {
         // Step 6 / Step 7
-        // provider health check. have a look at the output. you should see something like this regularly pop up:
+        // provider health check. have a look at the output. you should see something like this pop up whenever a
+        // health check changes the status of a provider:
         // - provider <some-provider-uid> healthcheck executed. healt is <health>, overall status is <overall-state>
-        // initial execution is after 5 seconds, after that, every 30 seconds.
+        // initial execution is within the first 5 seconds, after that, every 30 seconds (with some jitter).
         // I will move one to excluded again so we can see it.
 
         System.out.println("--- Step 6 / Step 7: providerHealthCheck -");
@@ -131,9 +129,9 @@ public class LoadbalancerApp {
         // separate thread so we can see the providers slowly disappear and eventually be fully busy.
 
         System.out.println("--- Step 8: curcuit breaker -");
-        Loadbalancer randomProviderLoadbalancer = new Loadbalancer(RandomLBStrategy.INSTANCE);
+        // the slow providers get a pool of their own, the ones of the steps before keep running next to them.
+        Loadbalancer randomProviderLoadbalancer = new Loadbalancer(new RandomLBStrategy(new ProviderRegistry("step-8")));
 
-        ProviderRegistry.INSTANCE.resetProviders();
         List<ProviderRegistryItem> providers = new ArrayList<>();
         for (int i = 0; i < 10; i++) {
             ProviderRegistryItem providerRegistryItem = new ProviderRegistryItem(new SlowInMemoryProvider(UUID.randomUUID().toString()));
@@ -146,10 +144,10 @@ public class LoadbalancerApp {
         }
 
         // now we're going to execute 10 * 10 calls. With this we will see that all the providers will be busy for a bit.
-        ExecutorService executor = Executors.newFixedThreadPool(100);
+        // the calls are asynchronous, so we don't need a thread per call here.
         for (int i = 0; i < 10; i++) {
             for (int z = 0; z < 10; z++) {
-                Future<String> future = executor.submit(randomProviderLoadbalancer::get);
+                randomProviderLoadbalancer.getAsync();
             }
             System.out.print("Current status after " + (i * 10 + 10) + " requests is : ");
             providers.forEach(System.out::print);
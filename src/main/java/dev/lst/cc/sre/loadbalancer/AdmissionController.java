@@ -0,0 +1,338 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Admission control in front of a Loadbalancer: at most maxConcurrent requests run at the same time, the others wait
+ * in a bounded queue and are shed with a ServiceUnavailableException instead of piling up work nobody waits for any
+ * more.
+ * <ul>
+ *     <li>the queue holds at most maxQueueLength requests. A request finding it full pushes out the newest waiting
+ *     request of a lower priority, or is shed itself if there is none.</li>
+ *     <li>waiting requests are admitted by priority (see RequestPriority), first come first served within one.</li>
+ *     <li>a request is shed as soon as its timeout passed, and right away if it has less time left than the requests
+ *     waited at least during the last interval.</li>
+ *     <li>queue delay is controlled like CoDel: if even the shortest wait of an interval was longer than target, the
+ *     queue is overloaded. Requests may then wait at most target instead of interval, and SHEDDABLE requests are not
+ *     queued at all, until a request gets through without waiting again.</li>
+ * </ul>
+ * Waiting requests are parked and handed the slot of a finishing request directly, the bookkeeping takes a short lock.
+ * <p>
+ * One controller can be passed to several Loadbalancers, then it caps the requests of all of them together, e.g. one
+ * controller per process in front of every pool.
+ */
+public class AdmissionController {
+
+    public static final int DEFAULT_MAX_QUEUE_LENGTH = 100;
+    public static final long DEFAULT_TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    public static final long DEFAULT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int WAITING = 0;
+    private static final int ADMITTED = 1;
+    private static final int SHED = 2;
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    private final int maxConcurrent;
+    private final int maxQueueLength;
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private final Object lock = new Object();
+    private final List<ArrayDeque<Waiter>> queues;
+    private int inFlight;
+    private int queued;
+    private long admitted;
+    private long shed;
+
+    // CoDel state: the shortest wait of the current interval and the verdict on the last one
+    private long intervalEnd;
+    private long minDelay = Long.MAX_VALUE;
+    private long lastMinDelay;
+    private volatile boolean overloaded;
+
+    /**
+     * Admission control with the default queue length and CoDel settings.
+     *
+     * @param maxConcurrent requests running at the same time.
+     */
+    public AdmissionController(int maxConcurrent) {
+        this(maxConcurrent, DEFAULT_MAX_QUEUE_LENGTH, DEFAULT_TARGET_NANOS, DEFAULT_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param maxConcurrent  requests running at the same time, at least 1.
+     * @param maxQueueLength requests waiting for admission, 0 for none.
+     * @param targetNanos    acceptable queue delay, also the longest wait while the queue is overloaded.
+     * @param intervalNanos  interval in which the queue delay has to drop below target once, also the longest wait
+     *                       otherwise. At least targetNanos.
+     */
+    public AdmissionController(int maxConcurrent, int maxQueueLength, long targetNanos, long intervalNanos) {
+        if (maxConcurrent < 1 || maxQueueLength < 0 || targetNanos < 0 || intervalNanos < targetNanos) {
+            throw new IllegalArgumentException("invalid admission control settings");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueueLength = maxQueueLength;
+        this.targetNanos = targetNanos;
+        this.intervalNanos = intervalNanos;
+        this.queues = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        this.intervalEnd = System.nanoTime() + intervalNanos;
+    }
+
+    /**
+     * Waits for a slot. Every successful acquire has to be followed by a release().
+     *
+     * @param priority     priority class of the request.
+     * @param startNanos   System.nanoTime() the request started at, its timeout counts from there.
+     * @param timeoutNanos time the request may take, Loadbalancer.NO_TIMEOUT for none.
+     * @throws ServiceUnavailableException if the request was shed.
+     */
+    void acquire(RequestPriority priority, long startNanos, long timeoutNanos) throws ServiceUnavailableException {
+        Waiter waiter;
+        synchronized (lock) {
+            long now = System.nanoTime();
+            rollInterval(now);
+            if (queued == 0 && inFlight < maxConcurrent) {
+                inFlight++;
+                admit(0);
+                return;
+            }
+            if (remaining(startNanos, timeoutNanos, now) <= lastMinDelay) {
+                throw shed("request shed, its timeout can't be met");
+            }
+            if (overloaded && priority == RequestPriority.SHEDDABLE) {
+                throw shed("request shed, the queue is overloaded");
+            }
+            if (queued >= maxQueueLength && !pushOut(priority)) {
+                throw shed("request shed, the queue is full");
+            }
+            waiter = new Waiter(priority, now, startNanos, timeoutNanos);
+            queues.get(priority.ordinal()).addLast(waiter);
+            queued++;
+        }
+        await(waiter);
+    }
+
+    /**
+     * Takes a slot only if one is free right away, for callers that must not block.
+     *
+     * @return true if admitted, then it has to be followed by a release().
+     */
+    boolean tryAcquire() {
+        synchronized (lock) {
+            rollInterval(System.nanoTime());
+            if (queued == 0 && inFlight < maxConcurrent) {
+                inFlight++;
+                admit(0);
+                return true;
+            }
+            shed++;
+            return false;
+        }
+    }
+
+    /**
+     * Frees the slot of a finished request, or hands it to the next waiting request that is still worth running.
+     */
+    void release() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            rollInterval(now);
+            Waiter next;
+            while ((next = poll()) != null) {
+                long delay = now - next.enqueuedNanos;
+                if (delay > maxWaitNanos() || remaining(next.startNanos, next.timeoutNanos, now) <= 0) {
+                    wake(next, SHED);
+                    shed++;
+                } else {
+                    wake(next, ADMITTED);
+                    admit(delay);
+                    return;
+                }
+            }
+            inFlight--;
+        }
+    }
+
+    private void await(Waiter waiter) throws ServiceUnavailableException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                int state = waiter.state;
+                if (state == ADMITTED) {
+                    return;
+                }
+                if (state == SHED) {
+                    throw new ServiceUnavailableException("request shed while waiting for admission");
+                }
+                long now = System.nanoTime();
+                long wait = Math.min(remaining(waiter.startNanos, waiter.timeoutNanos, now),
+                        maxWaitNanos() - (now - waiter.enqueuedNanos));
+                if (wait <= 0 || interrupted) {
+                    giveUp(waiter);
+                } else {
+                    LockSupport.parkNanos(this, wait);
+                    interrupted = Thread.interrupted();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void giveUp(Waiter waiter) {
+        synchronized (lock) {
+            // it may have been admitted in the meantime, then it keeps the slot
+            if (waiter.state == WAITING) {
+                queues.get(waiter.priority.ordinal()).remove(waiter);
+                queued--;
+                waiter.state = SHED;
+                shed++;
+            }
+        }
+    }
+
+    /**
+     * Sheds the newest waiting request of the lowest priority below the given one.
+     */
+    private boolean pushOut(RequestPriority priority) {
+        for (int i = queues.size() - 1; i > priority.ordinal(); i--) {
+            Waiter victim = queues.get(i).pollLast();
+            if (victim != null) {
+                queued--;
+                wake(victim, SHED);
+                shed++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Waiter poll() {
+        for (ArrayDeque<Waiter> queue : queues) {
+            Waiter waiter = queue.pollFirst();
+            if (waiter != null) {
+                queued--;
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    private static void wake(Waiter waiter, int state) {
+        waiter.state = state;
+        LockSupport.unpark(waiter.thread);
+    }
+
+    private void admit(long delayNanos) {
+        admitted++;
+        minDelay = Math.min(minDelay, delayNanos);
+    }
+
+    /**
+     * Judges the interval that ended, if any. An interval in which no request left the queue keeps the verdict of the
+     * one before, unless the queue is empty by now.
+     */
+    private void rollInterval(long now) {
+        if (now - intervalEnd < 0) {
+            return;
+        }
+        if (minDelay != Long.MAX_VALUE) {
+            lastMinDelay = minDelay;
+            overloaded = minDelay > targetNanos;
+        } else if (queued == 0) {
+            lastMinDelay = 0;
+            overloaded = false;
+        }
+        minDelay = Long.MAX_VALUE;
+        intervalEnd = now + intervalNanos;
+    }
+
+    private long maxWaitNanos() {
+        return overloaded ? targetNanos : intervalNanos;
+    }
+
+    private static long remaining(long startNanos, long timeoutNanos, long now) {
+        return timeoutNanos == Loadbalancer.NO_TIMEOUT ? Long.MAX_VALUE : timeoutNanos - (now - startNanos);
+    }
+
+    private ServiceUnavailableException shed(String message) {
+        shed++;
+        return new ServiceUnavailableException(message);
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return requests currently running.
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @return requests currently waiting for admission.
+     */
+    public int getQueueLength() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    /**
+     * @return whether the queue delay stayed above target for a whole interval, see the CoDel rules above.
+     */
+    public boolean isOverloaded() {
+        synchronized (lock) {
+            rollInterval(System.nanoTime());
+            return overloaded;
+        }
+    }
+
+    /**
+     * @return requests admitted so far.
+     */
+    public long getAdmitted() {
+        synchronized (lock) {
+            return admitted;
+        }
+    }
+
+    /**
+     * @return requests shed so far.
+     */
+    public long getShed() {
+        synchronized (lock) {
+            return shed;
+        }
+    }
+
+    private static final class Waiter {
+        private final RequestPriority priority;
+        private final long enqueuedNanos;
+        private final long startNanos;
+        private final long timeoutNanos;
+        private final Thread thread = Thread.currentThread();
+        private volatile int state = WAITING;
+
+        private Waiter(RequestPriority priority, long enqueuedNanos, long startNanos, long timeoutNanos) {
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+            this.startNanos = startNanos;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+}
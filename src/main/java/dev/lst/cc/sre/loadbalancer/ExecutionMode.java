@@ -0,0 +1,16 @@
+package dev.lst.cc.sre.loadbalancer;
+
+/**
+ * Defines where the Loadbalancer runs asynchronous provider calls.
+ */
+public enum ExecutionMode {
+    /**
+     * Calls run on the provider itself if it is an AsyncProvider, otherwise on the bounded executor of the
+     * BlockingProviderAdapter.
+     */
+    PROVIDER_EXECUTOR,
+    /**
+     * Every call runs on its own virtual thread, so blocking providers don't need a big thread pool.
+     */
+    VIRTUAL_THREADS;
+}
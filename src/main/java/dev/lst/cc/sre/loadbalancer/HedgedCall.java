@@ -0,0 +1,147 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import dev.lst.cc.sre.loadbalancer.strategy.LBStrategy;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+
+/**
+ * One request of the Loadbalancer with its retries and hedged calls, as defined by the RetryPolicy. The first
+ * successful answer completes the request, it only fails once every call failed and no further attempt is allowed.
+ * Calls that lost the race are not interrupted, they finish in the background and release their provider slot then.
+ * <p>
+ * Decisions are made while holding the lock of the call, the provider calls themselves are started outside of it, so a
+ * provider answering right away can't run into the lock of its own request.
+ */
+final class HedgedCall {
+
+    private static final int PICKS = 3;
+
+    private final LBStrategy strategy;
+    private final RetryPolicy policy;
+    private final Function<ProviderRegistryItem, CompletableFuture<String>> dispatch;
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private final List<ProviderRegistryItem> tried = new ArrayList<>(2);
+    private int attempts;
+    private int outstanding;
+
+    /**
+     * @param strategy strategy to pick providers for retries and hedges with.
+     * @param policy   retry policy.
+     * @param dispatch runs a call against a provider.
+     */
+    HedgedCall(LBStrategy strategy, RetryPolicy policy,
+               Function<ProviderRegistryItem, CompletableFuture<String>> dispatch) {
+        this.strategy = strategy;
+        this.policy = policy;
+        this.dispatch = dispatch;
+    }
+
+    /**
+     * @param first provider for the first call.
+     * @return future with the first successful answer.
+     */
+    CompletableFuture<String> start(ProviderRegistryItem first) {
+        synchronized (this) {
+            reserve(first);
+        }
+        scheduleHedge();
+        launch(first);
+        return result;
+    }
+
+    private synchronized void scheduleHedge() {
+        if (policy.isHedging() && attempts < policy.getMaxAttempts()) {
+            long delay = policy.getHedgeDelayNanos(System.nanoTime());
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(this::hedge);
+        }
+    }
+
+    private void hedge() {
+        ProviderRegistryItem next;
+        synchronized (this) {
+            next = nextAttempt();
+        }
+        if (next != null) {
+            scheduleHedge();
+            launch(next);
+        }
+    }
+
+    private void launch(ProviderRegistryItem item) {
+        long start = System.nanoTime();
+        CompletableFuture<String> call;
+        try {
+            call = dispatch.apply(item);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((answer, failure) -> completed(answer, failure, start));
+    }
+
+    private void completed(String answer, Throwable failure, long start) {
+        if (failure == null) {
+            long end = System.nanoTime();
+            policy.recordLatency(end - start, end);
+            synchronized (this) {
+                outstanding--;
+            }
+            result.complete(answer);
+            return;
+        }
+        ProviderRegistryItem retry;
+        boolean failed;
+        synchronized (this) {
+            outstanding--;
+            retry = nextAttempt();
+            failed = retry == null && outstanding == 0;
+        }
+        if (retry != null) {
+            launch(retry);
+        } else if (failed) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Reserves the next attempt on a provider not tried yet, if the request is still open and the policy and budget
+     * allow it. Only called while holding the lock.
+     *
+     * @return provider for the next attempt, null if there is none.
+     */
+    private ProviderRegistryItem nextAttempt() {
+        if (result.isDone() || attempts >= policy.getMaxAttempts()) {
+            return null;
+        }
+        ProviderRegistryItem next = pickOther();
+        if (next == null || !policy.getRetryBudget().tryWithdraw()) {
+            return null;
+        }
+        reserve(next);
+        return next;
+    }
+
+    private void reserve(ProviderRegistryItem item) {
+        attempts++;
+        outstanding++;
+        tried.add(item);
+    }
+
+    private ProviderRegistryItem pickOther() {
+        try {
+            for (int i = 0; i < PICKS; i++) {
+                ProviderRegistryItem item = strategy.getNext();
+                if (!tried.contains(item)) {
+                    return item;
+                }
+            }
+        } catch (ServiceUnavailableException e) {
+            // no other provider left, the request has to do with the calls it already has
+        }
+        return null;
+    }
+}
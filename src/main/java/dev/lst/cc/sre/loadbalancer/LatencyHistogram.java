@@ -0,0 +1,100 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import dev.lst.cc.sre.metrics.Histogram;
+
+/**
+ * Lock free histogram of response times over a sliding window, to read percentiles from.
+ * <p>
+ * Buckets are the log-linear ones of the metrics Histogram, but kept in a plain array of counters, so recording is one
+ * increment of a counter and the windows can be cleared.
+ * <p>
+ * Two windows take turns: values go into the current one, percentiles come from the previous, full one (or from the
+ * current one while there is no previous yet). Every windowNanos the previous one is cleared and becomes the current
+ * one, so old latencies age out. A value recorded right while the windows are switched may end up in either of them.
+ */
+public class LatencyHistogram {
+
+    private final long windowNanos;
+    private final AtomicLongArray[] windows = {new AtomicLongArray(Histogram.BUCKETS), new AtomicLongArray(Histogram.BUCKETS)};
+    private final AtomicLong[] counts = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong windowStart;
+    private volatile int current;
+    private volatile boolean hasPrevious;
+
+    /**
+     * @param windowNanos time after which recorded values start to age out.
+     */
+    public LatencyHistogram(long windowNanos) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("windowNanos must be positive but was " + windowNanos);
+        }
+        this.windowNanos = windowNanos;
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @param valueNanos response time.
+     * @param nowNanos   current System.nanoTime().
+     */
+    public void record(long valueNanos, long nowNanos) {
+        rotateIfNeeded(nowNanos);
+        int window = current;
+        windows[window].incrementAndGet(Histogram.bucketOf(Math.max(0, valueNanos)));
+        counts[window].incrementAndGet();
+    }
+
+    /**
+     * @param nowNanos current System.nanoTime().
+     * @return values in the window percentiles are read from.
+     */
+    public long getCount(long nowNanos) {
+        rotateIfNeeded(nowNanos);
+        return counts[readWindow()].get();
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100.
+     * @param nowNanos   current System.nanoTime().
+     * @return upper bound of the bucket holding the percentile, 0 if there are no values.
+     */
+    public long getValueAtPercentile(double percentile, long nowNanos) {
+        rotateIfNeeded(nowNanos);
+        int window = readWindow();
+        long count = counts[window].get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        AtomicLongArray buckets = windows[window];
+        long seen = 0;
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return Histogram.upperBoundOf(bucket);
+            }
+        }
+        return Histogram.upperBoundOf(Histogram.BUCKETS - 1);
+    }
+
+    private int readWindow() {
+        return hasPrevious ? 1 - current : current;
+    }
+
+    private void rotateIfNeeded(long nowNanos) {
+        long start = windowStart.get();
+        if (nowNanos - start < windowNanos || !windowStart.compareAndSet(start, nowNanos)) {
+            return;
+        }
+        int next = 1 - current;
+        AtomicLongArray buckets = windows[next];
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            buckets.set(bucket, 0);
+        }
+        counts[next].set(0);
+        current = next;
+        hasPrevious = true;
+    }
+}
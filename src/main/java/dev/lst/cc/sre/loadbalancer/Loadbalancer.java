@@ -1,25 +1,409 @@
 package dev.lst.cc.sre.loadbalancer;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 import dev.lst.cc.sre.loadbalancer.strategy.LBStrategy;
+import dev.lst.cc.sre.metrics.Metrics;
+import dev.lst.cc.sre.metrics.StrategyMetrics;
 import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderTimeoutException;
+import dev.lst.cc.sre.registry.ProviderUnavailableException;
 import dev.lst.cc.sre.registry.RegistryFullException;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
 
 /**
- * Loadbalancer implementation.
+ * Loadbalancer implementation. Works on the pool of its strategy: the registry of the strategy is the one providers
+ * are registered in, excluded and included, so every pool gets a Loadbalancer of its own.
+ * <p>
+ * With a RetryPolicy, get() and getAsync() retry failed calls and hedge slow ones on other providers. Calls with a key
+ * are not retried, the key pins them to their provider.
+ * <p>
+ * With an AdmissionController, requests wait for a slot before a provider is picked and are shed when the
+ * Loadbalancer is overloaded. Asynchronous requests never wait, they are only admitted if a slot is free right away.
+ * Loadbalancers sharing one AdmissionController share its slots, so it can cap the requests of all pools together.
+ * <p>
+ * A request with a timeout passes what is left of it on to the provider calls: a call that takes longer is abandoned,
+ * the thread running a blocking provider is interrupted, and it counts as failed for the health of its provider.
+ * Providers whose recent response times (their latency EWMA) already exceed the time left are skipped. If the executor
+ * of the provider rejects a call, the request fails as unavailable.
+ * <p>
+ * Every request is recorded in the StrategyMetrics of the strategy: its latency, and whether it failed or found no
+ * provider at all. A shed request counts as one that found no provider.
  */
 public class Loadbalancer {
 
+    /**
+     * Timeout of requests that may take as long as they need.
+     */
+    public static final long NO_TIMEOUT = Long.MAX_VALUE;
+
+    // providers the strategy is asked for before a request with a timeout gives up on finding a fast enough one
+    private static final int PICKS = 3;
+
     private final LBStrategy lbStrategy;
 
-    private ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    private final Executor callExecutor;
+
+    private final RetryPolicy retryPolicy;
+
+    private final AdmissionController admissionController;
+
+    private final SingleFlight<String> singleFlight = new SingleFlight<>();
+
+    private final StrategyMetrics metrics;
+
+    private final ProviderRegistry registry;
 
     public Loadbalancer(LBStrategy lbStrategy) {
+        this(lbStrategy, ExecutionMode.PROVIDER_EXECUTOR);
+    }
+
+    /**
+     * @param lbStrategy    strategy.
+     * @param executionMode where asynchronous provider calls run.
+     */
+    public Loadbalancer(LBStrategy lbStrategy, ExecutionMode executionMode) {
+        this(lbStrategy, executionMode, null);
+    }
+
+    /**
+     * @param lbStrategy    strategy.
+     * @param executionMode where asynchronous provider calls run, hedged calls of get() run there as well.
+     * @param retryPolicy   retries and hedging, null for none.
+     */
+    public Loadbalancer(LBStrategy lbStrategy, ExecutionMode executionMode, RetryPolicy retryPolicy) {
+        this(lbStrategy, executionMode, retryPolicy, null);
+    }
+
+    /**
+     * @param lbStrategy          strategy.
+     * @param executionMode       where asynchronous provider calls run, hedged calls of get() run there as well.
+     * @param retryPolicy         retries and hedging, null for none.
+     * @param admissionController admission control and load shedding, null for none. May be shared with other
+     *                            Loadbalancers.
+     */
+    public Loadbalancer(LBStrategy lbStrategy, ExecutionMode executionMode, RetryPolicy retryPolicy,
+                        AdmissionController admissionController) {
         this.lbStrategy = lbStrategy;
+        this.callExecutor = executionMode == ExecutionMode.VIRTUAL_THREADS ? VirtualThreads.executor() : null;
+        this.retryPolicy = retryPolicy;
+        this.admissionController = admissionController;
+        this.registry = lbStrategy.getRegistry();
+        this.metrics = Metrics.INSTANCE.strategy(registry.getName(), lbStrategy.getClass().getSimpleName());
     }
 
     public String get() throws ServiceUnavailableException {
-        return lbStrategy.getNext().executeGet();
+        return get(RequestPriority.NORMAL, NO_TIMEOUT);
+    }
+
+    /**
+     * Get with a timeout, see get(RequestPriority, long).
+     *
+     * @param timeoutNanos time the request may take, NO_TIMEOUT for none.
+     * @return providers answer.
+     * @throws ServiceUnavailableException if no provider is likely to answer in time.
+     * @throws ProviderTimeoutException    if the provider did not answer in time.
+     */
+    public String get(long timeoutNanos) throws ServiceUnavailableException {
+        return get(RequestPriority.NORMAL, timeoutNanos);
+    }
+
+    /**
+     * Get with a priority class and a timeout. The request waits for admission as long as its timeout allows and is
+     * shed before lower priority ones, the priority is ignored without an AdmissionController. Whatever is left of the
+     * timeout is the timeout of the provider call.
+     *
+     * @param priority     priority class of the request.
+     * @param timeoutNanos time the request may take, NO_TIMEOUT for none.
+     * @return providers answer.
+     * @throws ServiceUnavailableException if no provider is available or likely to answer in time, the picked one
+     *                                     takes no more calls, its executor rejected the call, or the request was
+     *                                     shed.
+     * @throws ProviderTimeoutException    if the provider did not answer in time.
+     */
+    public String get(RequestPriority priority, long timeoutNanos) throws ServiceUnavailableException {
+        long start = System.nanoTime();
+        admit(priority, start, timeoutNanos);
+        try {
+            String answer = retryPolicy == null ? call(start, timeoutNanos) : getWithRetryPolicy(start, timeoutNanos);
+            metrics.recordRequest(System.nanoTime() - start, false);
+            return answer;
+        } catch (ServiceUnavailableException e) {
+            metrics.recordUnavailable();
+            throw e;
+        } catch (ProviderUnavailableException | RejectedExecutionException e) {
+            metrics.recordUnavailable();
+            throw new ServiceUnavailableException(e.getMessage());
+        } catch (RuntimeException e) {
+            metrics.recordRequest(System.nanoTime() - start, true);
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    private void admit(RequestPriority priority, long start, long timeoutNanos) throws ServiceUnavailableException {
+        if (admissionController != null) {
+            try {
+                admissionController.acquire(priority, start, timeoutNanos);
+            } catch (ServiceUnavailableException e) {
+                metrics.recordUnavailable();
+                throw e;
+            }
+        }
+    }
+
+    private String call(long start, long timeoutNanos) throws ServiceUnavailableException {
+        ProviderRegistryItem item = pick(start, timeoutNanos);
+        return timeoutNanos == NO_TIMEOUT ? item.executeGet() : join(dispatch(item, start, timeoutNanos));
+    }
+
+    private String getWithRetryPolicy(long start, long timeoutNanos) throws ServiceUnavailableException {
+        retryPolicy.getRetryBudget().deposit();
+        // without hedging the calls run one after the other on the calling thread, as without a policy. Calls with a
+        // timeout always run asynchronously, so the request can stop waiting for them.
+        Function<ProviderRegistryItem, CompletableFuture<String>> dispatch;
+        if (timeoutNanos != NO_TIMEOUT) {
+            dispatch = item -> dispatch(item, start, timeoutNanos);
+        } else {
+            dispatch = retryPolicy.isHedging() ? this::dispatch : Loadbalancer::executeNow;
+        }
+        return join(new HedgedCall(lbStrategy, retryPolicy, dispatch).start(pick(start, timeoutNanos)));
+    }
+
+    private static String join(CompletableFuture<String> answer) {
+        try {
+            return answer.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Picks the provider for a request. With a timeout, providers whose latency EWMA is not below the time left are
+     * skipped, up to PICKS of them.
+     *
+     * @throws ServiceUnavailableException if no provider is available or likely to answer in time.
+     */
+    private ProviderRegistryItem pick(long start, long timeoutNanos) throws ServiceUnavailableException {
+        ProviderRegistryItem item = lbStrategy.getNext();
+        if (timeoutNanos == NO_TIMEOUT) {
+            return item;
+        }
+        long now = System.nanoTime();
+        long remaining = timeoutNanos - (now - start);
+        for (int i = 1; i < PICKS && !isFastEnough(item, remaining, now); i++) {
+            item = lbStrategy.getNext();
+        }
+        if (!isFastEnough(item, remaining, now)) {
+            throw new ServiceUnavailableException("no provider is likely to answer within the timeout");
+        }
+        return item;
+    }
+
+    private static boolean isFastEnough(ProviderRegistryItem item, long remainingNanos, long nowNanos) {
+        // a provider without any response time yet is given a chance
+        return remainingNanos > 0 && item.getLatencyEwmaNanos(nowNanos) < remainingNanos;
+    }
+
+    /**
+     * Get for a request with a key. With a key aware strategy like the ConsistentHashLBStrategy, requests with the
+     * same key end up on the same provider.
+     *
+     * @param key key of the request, e.g. tenant or session.
+     * @return providers answer.
+     * @throws ServiceUnavailableException if no provider is available.
+     */
+    public String get(String key) throws ServiceUnavailableException {
+        long start = System.nanoTime();
+        admit(RequestPriority.NORMAL, start, NO_TIMEOUT);
+        try {
+            String answer = lbStrategy.getNext(key).executeGet();
+            metrics.recordRequest(System.nanoTime() - start, false);
+            return answer;
+        } catch (ServiceUnavailableException e) {
+            metrics.recordUnavailable();
+            throw e;
+        } catch (ProviderUnavailableException e) {
+            metrics.recordUnavailable();
+            throw new ServiceUnavailableException(e.getMessage());
+        } catch (RuntimeException e) {
+            metrics.recordRequest(System.nanoTime() - start, true);
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Asynchronous get. Selecting the provider happens right away, the call itself does not block the calling thread
+     * but runs as defined by the ExecutionMode.
+     *
+     * @return future with the providers answer. Fails with a ServiceUnavailableException if no provider is available.
+     */
+    public CompletableFuture<String> getAsync() {
+        return getAsync(NO_TIMEOUT);
+    }
+
+    /**
+     * Asynchronous get with a timeout, see get(RequestPriority, long).
+     *
+     * @param timeoutNanos time the request may take, NO_TIMEOUT for none.
+     * @return future with the providers answer. Fails with a ServiceUnavailableException if no provider is available
+     * or likely to answer in time, and with a ProviderTimeoutException if the provider did not answer in time.
+     */
+    public CompletableFuture<String> getAsync(long timeoutNanos) {
+        long start = System.nanoTime();
+        if (!tryAdmit()) {
+            return shed();
+        }
+        try {
+            if (retryPolicy == null) {
+                return recorded(dispatch(pick(start, timeoutNanos), start, timeoutNanos), start);
+            }
+            retryPolicy.getRetryBudget().deposit();
+            Function<ProviderRegistryItem, CompletableFuture<String>> dispatch = timeoutNanos == NO_TIMEOUT
+                    ? this::dispatch : item -> dispatch(item, start, timeoutNanos);
+            return recorded(new HedgedCall(lbStrategy, retryPolicy, dispatch).start(pick(start, timeoutNanos)), start);
+        } catch (ServiceUnavailableException e) {
+            release();
+            metrics.recordUnavailable();
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronous get for a request with a key, see get(String).
+     *
+     * @param key key of the request, e.g. tenant or session.
+     * @return future with the providers answer. Fails with a ServiceUnavailableException if no provider is available.
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        long start = System.nanoTime();
+        if (!tryAdmit()) {
+            return shed();
+        }
+        try {
+            return recorded(dispatch(lbStrategy.getNext(key)), start);
+        } catch (ServiceUnavailableException e) {
+            release();
+            metrics.recordUnavailable();
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Admits an asynchronous request if a slot is free right away. Its slot is released once the call completes, see
+     * recorded().
+     */
+    private boolean tryAdmit() {
+        return admissionController == null || admissionController.tryAcquire();
+    }
+
+    private CompletableFuture<String> shed() {
+        metrics.recordUnavailable();
+        return CompletableFuture.failedFuture(new ServiceUnavailableException("request shed, no free slot"));
+    }
+
+    private void release() {
+        if (admissionController != null) {
+            admissionController.release();
+        }
+    }
+
+    /**
+     * Records the request once its call completed and releases its slot. A provider that took no more calls or whose
+     * executor rejected the call fails it with a ServiceUnavailableException, like get() does.
+     */
+    private CompletableFuture<String> recorded(CompletableFuture<String> answer, long start) {
+        return answer.whenComplete((value, failure) -> {
+            if (unavailable(failure) != null) {
+                metrics.recordUnavailable();
+            } else {
+                metrics.recordRequest(System.nanoTime() - start, failure != null);
+            }
+            release();
+        }).exceptionallyCompose(failure -> {
+            Throwable unavailable = unavailable(failure);
+            return CompletableFuture.failedFuture(unavailable == null ? failure
+                    : new ServiceUnavailableException(unavailable.getMessage()));
+        });
+    }
+
+    /**
+     * @return the cause of the failure if the call was not even started, null otherwise.
+     */
+    private static Throwable unavailable(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        return cause instanceof ProviderUnavailableException || cause instanceof RejectedExecutionException
+                ? cause : null;
+    }
+
+    /**
+     * Asynchronous get for a request with a key, coalesced with the identical requests running at the same time: only
+     * the first one calls a provider, the others share its answer.
+     *
+     * @param key key of the request, e.g. tenant or session.
+     * @return future with the providers answer. Fails with a ServiceUnavailableException if no provider is available.
+     */
+    public CompletableFuture<String> getCoalesced(String key) {
+        return singleFlight.execute(key, () -> getAsync(key));
+    }
+
+    /**
+     * @return requests answered by the call of an identical request, see getCoalesced(String).
+     */
+    public long getCoalescedRequests() {
+        return singleFlight.getCoalesced();
+    }
+
+    /**
+     * Creates a batching front-end with the strategy of this Loadbalancer.
+     *
+     * @param maxBatchSize  requests after which a batch is dispatched right away.
+     * @param maxDelayNanos time after the first request of a batch after which it is dispatched anyway.
+     * @param executor      executor running the batches.
+     * @return batcher to submit requests to.
+     */
+    public RequestBatcher batcher(int maxBatchSize, long maxDelayNanos, Executor executor) {
+        return new RequestBatcher(lbStrategy, maxBatchSize, maxDelayNanos, executor);
+    }
+
+    private CompletableFuture<String> dispatch(ProviderRegistryItem item) {
+        return callExecutor == null ? item.executeGetAsync() : item.executeGetAsync(callExecutor);
+    }
+
+    /**
+     * Dispatches a call with what is left of the timeout of its request.
+     */
+    private CompletableFuture<String> dispatch(ProviderRegistryItem item, long start, long timeoutNanos) {
+        if (timeoutNanos == NO_TIMEOUT) {
+            return dispatch(item);
+        }
+        long remaining = Math.max(0, timeoutNanos - (System.nanoTime() - start));
+        return callExecutor == null ? item.executeGetAsync(remaining) : item.executeGetAsync(callExecutor, remaining);
+    }
+
+    private static CompletableFuture<String> executeNow(ProviderRegistryItem item) {
+        try {
+            return CompletableFuture.completedFuture(item.executeGet());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     public void registerProvider(ProviderRegistryItem item) throws RegistryFullException {
@@ -33,4 +417,8 @@ public class Loadbalancer {
     public void includeProvider(String providerUid) {
         registry.include(providerUid);
     }
+
+    public void setProviderWeight(String providerUid, int weight) {
+        registry.setWeight(providerUid, weight);
+    }
 }
@@ -0,0 +1,120 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.strategy.LBStrategy;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+
+/**
+ * Batching front-end of a Loadbalancer. Requests are collected until there are maxBatchSize of them or maxDelayNanos
+ * passed since the first one, whatever comes first, and then go to one provider as one call (see
+ * ProviderRegistryItem.executeGetBatch). With a BatchProvider that is one round trip for the whole batch instead of
+ * one per request.
+ * <p>
+ * Collecting only takes a short lock to add the request to the open batch. Batches are dispatched on the given
+ * executor, never on the thread submitting the request. If the executor rejects a batch, all of its requests fail with
+ * the RejectedExecutionException.
+ */
+public class RequestBatcher {
+
+    private final LBStrategy lbStrategy;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Executor executor;
+    private final Object lock = new Object();
+    private List<CompletableFuture<String>> batch;
+    private long batchNumber;
+
+    /**
+     * @param lbStrategy    strategy picking the provider of every batch.
+     * @param maxBatchSize  requests after which a batch is dispatched right away.
+     * @param maxDelayNanos time after the first request of a batch after which it is dispatched anyway.
+     * @param executor      executor running the batches.
+     */
+    public RequestBatcher(LBStrategy lbStrategy, int maxBatchSize, long maxDelayNanos, Executor executor) {
+        if (maxBatchSize < 1 || maxDelayNanos < 0) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1 and maxDelayNanos not negative");
+        }
+        this.lbStrategy = lbStrategy;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayNanos;
+        this.executor = executor;
+        this.batch = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Adds a request to the open batch.
+     *
+     * @return future with the providers answer. Fails with a ServiceUnavailableException if no provider is available.
+     */
+    public CompletableFuture<String> submit() {
+        CompletableFuture<String> answer = new CompletableFuture<>();
+        List<CompletableFuture<String>> full = null;
+        long scheduled = -1;
+        synchronized (lock) {
+            batch.add(answer);
+            if (batch.size() >= maxBatchSize) {
+                full = takeBatch();
+            } else if (batch.size() == 1) {
+                scheduled = batchNumber;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (scheduled >= 0) {
+            long number = scheduled;
+            // the flush only takes the batch, so it runs on the delayer thread and the batch goes through dispatch()
+            // like a full one, also if the executor rejects it
+            CompletableFuture.delayedExecutor(maxDelayNanos, TimeUnit.NANOSECONDS, Runnable::run)
+                    .execute(() -> flush(number));
+        }
+        return answer;
+    }
+
+    /**
+     * Dispatches the batch with the given number if it is still open, i.e. did not fill up in the meantime.
+     */
+    private void flush(long number) {
+        List<CompletableFuture<String>> due = null;
+        synchronized (lock) {
+            if (number == batchNumber && !batch.isEmpty()) {
+                due = takeBatch();
+            }
+        }
+        if (due != null) {
+            dispatch(due);
+        }
+    }
+
+    private List<CompletableFuture<String>> takeBatch() {
+        List<CompletableFuture<String>> taken = batch;
+        batch = new ArrayList<>(maxBatchSize);
+        batchNumber++;
+        return taken;
+    }
+
+    private void dispatch(List<CompletableFuture<String>> requests) {
+        try {
+            executor.execute(() -> execute(requests));
+        } catch (RejectedExecutionException e) {
+            requests.forEach(request -> request.completeExceptionally(e));
+        }
+    }
+
+    private void execute(List<CompletableFuture<String>> requests) {
+        try {
+            ProviderRegistryItem item = lbStrategy.getNext();
+            List<String> answers = item.executeGetBatch(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                requests.get(i).complete(answers.get(i));
+            }
+        } catch (ServiceUnavailableException | RuntimeException e) {
+            requests.forEach(request -> request.completeExceptionally(e));
+        }
+    }
+}
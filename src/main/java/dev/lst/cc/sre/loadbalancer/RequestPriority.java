@@ -0,0 +1,20 @@
+package dev.lst.cc.sre.loadbalancer;
+
+/**
+ * Priority class of a request for the AdmissionController, from the most to the least important one. Waiting requests
+ * are admitted in this order.
+ */
+public enum RequestPriority {
+    /**
+     * Traffic that has to survive overload. May push a waiting request of a lower priority out of a full queue.
+     */
+    CRITICAL,
+    /**
+     * Regular traffic, the priority of get().
+     */
+    NORMAL,
+    /**
+     * Traffic that is dropped first, e.g. prefetching or reports. Not queued at all while the queue is overloaded.
+     */
+    SHEDDABLE
+}
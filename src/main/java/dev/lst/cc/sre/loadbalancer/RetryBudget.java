@@ -0,0 +1,72 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that limits retries and hedged requests to a fraction of the traffic. Every request deposits ratio
+ * tokens, every retry or hedge takes one. So with a ratio of 0.1 at most one in ten requests gets a second attempt in
+ * the long run, and a provider outage turns into at most 10% more load instead of a retry storm. The bucket holds at
+ * most maxTokens, which is also what it starts with, to allow a short burst of retries.
+ * <p>
+ * Tokens are kept as fixed point thousandths in an AtomicLong, so depositing is a single atomic add.
+ */
+public class RetryBudget {
+
+    public static final double DEFAULT_RATIO = 0.1;
+    public static final int DEFAULT_MAX_TOKENS = 10;
+
+    private static final long ONE_TOKEN = 1000;
+
+    private final long deposit;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    public RetryBudget() {
+        this(DEFAULT_RATIO, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * @param ratio     retries allowed per request, between 0 and 1.
+     * @param maxTokens retries that can be saved up for a burst.
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio < 0 || ratio > 1 || maxTokens < 1) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1 and maxTokens at least 1");
+        }
+        this.deposit = Math.round(ratio * ONE_TOKEN);
+        this.maxTokens = maxTokens * ONE_TOKEN;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    /**
+     * Called once for every request.
+     */
+    public void deposit() {
+        if (tokens.get() < maxTokens) {
+            tokens.accumulateAndGet(deposit, (current, added) -> Math.min(maxTokens, current + added));
+        }
+    }
+
+    /**
+     * Takes the token for a retry or hedge.
+     *
+     * @return true if the budget allows it.
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < ONE_TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - ONE_TOKEN));
+        return true;
+    }
+
+    /**
+     * @return whole tokens currently available.
+     */
+    public int getAvailableTokens() {
+        return (int) (tokens.get() / ONE_TOKEN);
+    }
+}
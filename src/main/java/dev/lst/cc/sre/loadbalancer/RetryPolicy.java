@@ -0,0 +1,91 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries and hedged requests of a Loadbalancer.
+ * <ul>
+ *     <li>a failed call is retried on a different provider.</li>
+ *     <li>with hedging, a call that did not answer within the hedge percentile of the recent response times gets a
+ *     second call to a different provider, and the first answer wins. The delay is kept between minHedgeDelayNanos and
+ *     maxHedgeDelayNanos, the latter is also used until there are enough response times.</li>
+ * </ul>
+ * Both count towards maxAttempts and both need a token of the RetryBudget, so they never add more load than the budget
+ * allows. Keeps the budget and the response times, so every Loadbalancer needs its own instance.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 2;
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    public static final long DEFAULT_MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    public static final long DEFAULT_MAX_HEDGE_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long HISTOGRAM_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MIN_SAMPLES = 20;
+
+    private final int maxAttempts;
+    private final boolean hedging;
+    private final double hedgePercentile;
+    private final long minHedgeDelayNanos;
+    private final long maxHedgeDelayNanos;
+    private final RetryBudget retryBudget;
+    private final LatencyHistogram latencies = new LatencyHistogram(HISTOGRAM_WINDOW_NANOS);
+
+    /**
+     * Retries and hedging with the default settings and a budget of 10% of the traffic.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, true, DEFAULT_HEDGE_PERCENTILE, DEFAULT_MIN_HEDGE_DELAY_NANOS,
+                DEFAULT_MAX_HEDGE_DELAY_NANOS, new RetryBudget());
+    }
+
+    /**
+     * @param maxAttempts        calls per request including the first one, at least 1.
+     * @param hedging            whether slow calls get a hedged call, otherwise only failed calls are retried.
+     * @param hedgePercentile    percentile of the response times after which a call is hedged, between 0 and 100.
+     * @param minHedgeDelayNanos lower bound of the hedge delay.
+     * @param maxHedgeDelayNanos upper bound of the hedge delay.
+     * @param retryBudget        budget shared by retries and hedges.
+     */
+    public RetryPolicy(int maxAttempts, boolean hedging, double hedgePercentile, long minHedgeDelayNanos,
+                       long maxHedgeDelayNanos, RetryBudget retryBudget) {
+        if (maxAttempts < 1 || hedgePercentile < 0 || hedgePercentile > 100 || minHedgeDelayNanos < 0
+                || maxHedgeDelayNanos < minHedgeDelayNanos) {
+            throw new IllegalArgumentException("invalid retry policy settings");
+        }
+        this.maxAttempts = maxAttempts;
+        this.hedging = hedging;
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelayNanos = minHedgeDelayNanos;
+        this.maxHedgeDelayNanos = maxHedgeDelayNanos;
+        this.retryBudget = retryBudget;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @param nowNanos current System.nanoTime().
+     * @return time to wait for an answer before sending a hedged call.
+     */
+    public long getHedgeDelayNanos(long nowNanos) {
+        if (latencies.getCount(nowNanos) < MIN_SAMPLES) {
+            return maxHedgeDelayNanos;
+        }
+        long percentile = latencies.getValueAtPercentile(hedgePercentile, nowNanos);
+        return Math.max(minHedgeDelayNanos, Math.min(maxHedgeDelayNanos, percentile));
+    }
+
+    void recordLatency(long latencyNanos, long nowNanos) {
+        latencies.record(latencyNanos, nowNanos);
+    }
+}
@@ -5,5 +5,6 @@ package dev.lst.cc.sre.loadbalancer;
  */
 public class ServiceUnavailableException extends Exception {
     public ServiceUnavailableException(String message) {
+        super(message);
     }
 }
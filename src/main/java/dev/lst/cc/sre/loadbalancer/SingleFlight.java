@@ -0,0 +1,57 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests: while a call for a key is running, further requests for the same key
+ * don't start a call of their own but get the answer of the running one. Once it completed, the next request starts a
+ * new call, so answers are never older than the request asking for them.
+ *
+ * @param <T> type of the answer.
+ */
+public class SingleFlight<T> {
+
+    private final Map<String, CompletableFuture<T>> calls = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param key  key of the request, requests with equal keys are identical.
+     * @param call starts the call, only invoked if there is no running call for the key.
+     * @return future with the answer. Every caller gets its own future, cancelling it does not affect the others.
+     */
+    public CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<T> running = calls.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return running.copy();
+        }
+        CompletableFuture<T> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((answer, failure) -> {
+            // removed before completing, so a request reacting on the answer already starts a fresh call
+            calls.remove(key, flight);
+            if (failure == null) {
+                flight.complete(answer);
+            } else {
+                flight.completeExceptionally(failure);
+            }
+        });
+        return flight.copy();
+    }
+
+    /**
+     * @return requests that were answered by the call of another request.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+}
@@ -0,0 +1,26 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads: one executor shared by all Loadbalancers, starting a new virtual thread for every task.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Shared executor starting a new virtual thread for every task.
+     *
+     * @return executor.
+     */
+    public static ExecutorService executor() {
+        return ExecutorHolder.EXECUTOR;
+    }
+
+    private static final class ExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -0,0 +1,248 @@
+package dev.lst.cc.sre.loadbalancer.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.lst.cc.sre.loadbalancer.Loadbalancer;
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+
+/**
+ * Caches the answers of keyed requests in front of a Loadbalancer.
+ * <ul>
+ *     <li>an answer younger than ttlNanos is served from the cache.</li>
+ *     <li>an answer older than that, but within another staleNanos, is still served, while one background call
+ *     refreshes it (stale-while-revalidate).</li>
+ *     <li>everything else is a miss, concurrent misses of the same key share one call (Loadbalancer.getCoalesced).</li>
+ * </ul>
+ * The cache holds at most maxSize answers. Each cached answer owns one slot of a fixed array, slots are filled up in
+ * order and never freed, only taken over. Once all slots are taken, a new answer is compared with the least frequently
+ * used of a few randomly sampled slots, and only replaces it if its key was asked for more often (TinyLFU admission,
+ * frequencies from a FrequencySketch). Expired answers always make room. So a burst of keys asked for only once
+ * cannot flush the popular ones out of the cache.
+ * <p>
+ * There is no global lock: lookups are a read of a ConcurrentHashMap, and a slot is taken over with compare-and-set.
+ */
+public class CachingLoadbalancer {
+
+    private static final int SAMPLES = 4;
+    private static final int ATTEMPTS = 2;
+
+    private final Loadbalancer loadbalancer;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicInteger filledSlots = new AtomicInteger();
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param loadbalancer loadbalancer answering the misses.
+     * @param maxSize      answers the cache holds at most.
+     * @param ttlNanos     time an answer is served without asking a provider again.
+     * @param staleNanos   time after the ttl an answer is still served while it is refreshed, 0 for none.
+     */
+    public CachingLoadbalancer(Loadbalancer loadbalancer, int maxSize, long ttlNanos, long staleNanos) {
+        if (maxSize < 1 || ttlNanos <= 0 || staleNanos < 0) {
+            throw new IllegalArgumentException("maxSize and ttlNanos must be positive and staleNanos not negative");
+        }
+        this.loadbalancer = loadbalancer;
+        this.ttlNanos = ttlNanos;
+        this.staleNanos = staleNanos;
+        this.slots = new AtomicReferenceArray<>(maxSize);
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * Get for a request with a key, answered from the cache if possible.
+     *
+     * @param key key of the request.
+     * @return providers answer.
+     * @throws ServiceUnavailableException if the answer is not cached and no provider is available.
+     */
+    public String get(String key) throws ServiceUnavailableException {
+        try {
+            return getAsync(key).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ServiceUnavailableException) {
+                throw (ServiceUnavailableException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronous get for a request with a key, see get(String). Hits complete right away.
+     *
+     * @param key key of the request.
+     * @return future with the providers answer.
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        long now = System.nanoTime();
+        sketch.increment(key.hashCode());
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            Answer answer = entry.answer;
+            long age = now - answer.writtenNanos();
+            if (age < ttlNanos) {
+                hits.increment();
+                return CompletableFuture.completedFuture(answer.value());
+            }
+            if (age < ttlNanos + staleNanos) {
+                staleHits.increment();
+                refresh(key, entry);
+                return CompletableFuture.completedFuture(answer.value());
+            }
+        }
+        misses.increment();
+        return loadbalancer.getCoalesced(key).thenApply(value -> {
+            store(key, value);
+            return value;
+        });
+    }
+
+    private void refresh(String key, Entry entry) {
+        if (entry.refreshing.compareAndSet(false, true)) {
+            loadbalancer.getCoalesced(key).whenComplete((value, failure) -> {
+                // a failed refresh keeps the stale answer until it runs out of its stale time
+                if (failure == null) {
+                    entry.answer = new Answer(value, System.nanoTime());
+                }
+                entry.refreshing.set(false);
+            });
+        }
+    }
+
+    private void store(String key, String value) {
+        Answer answer = new Answer(value, System.nanoTime());
+        Entry candidate = new Entry(key, answer);
+        Entry existing = entries.putIfAbsent(key, candidate);
+        if (existing != null) {
+            existing.answer = answer;
+        } else if (!admit(candidate)) {
+            entries.remove(key, candidate);
+            rejections.increment();
+        }
+    }
+
+    /**
+     * Finds a slot for a new entry: a free one while the cache fills up, then the one of an expired entry or of the
+     * least frequently used of the sampled entries if the candidate is used more often.
+     *
+     * @return true if the candidate got a slot.
+     */
+    private boolean admit(Entry candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        long now = System.nanoTime();
+        if (filledSlots.get() < slots.length()) {
+            int free = filledSlots.getAndIncrement();
+            if (free < slots.length()) {
+                slots.set(free, candidate);
+                return true;
+            }
+        }
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            int start = ThreadLocalRandom.current().nextInt(slots.length());
+            int victimSlot = -1;
+            Entry victim = null;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = 0; i < Math.min(SAMPLES, slots.length()); i++) {
+                int slot = (start + i) % slots.length();
+                Entry entry = slots.get(slot);
+                if (entry == null) {
+                    // claimed by another thread that did not set it yet
+                    continue;
+                }
+                int frequency = isExpired(entry, now) ? -1 : sketch.frequency(entry.key.hashCode());
+                if (frequency < victimFrequency) {
+                    victimSlot = slot;
+                    victim = entry;
+                    victimFrequency = frequency;
+                }
+            }
+            if (victim == null || victimFrequency >= candidateFrequency) {
+                return false;
+            }
+            if (slots.compareAndSet(victimSlot, victim, candidate)) {
+                entries.remove(victim.key, victim);
+                evictions.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.answer.writtenNanos() >= ttlNanos + staleNanos;
+    }
+
+    /**
+     * @return answers currently cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return requests answered with a fresh cached answer.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return requests answered with a stale cached answer while it was refreshed.
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return requests that had to ask a provider.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return cached answers that made room for more frequently used ones.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return answers not cached since their key was used less than the ones already cached.
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    private record Answer(String value, long writtenNanos) {
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Answer answer;
+
+        private Entry(String key, Answer answer) {
+            this.key = key;
+            this.answer = answer;
+        }
+    }
+}
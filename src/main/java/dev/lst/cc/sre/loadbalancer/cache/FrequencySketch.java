@@ -0,0 +1,74 @@
+package dev.lst.cc.sre.loadbalancer.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate access frequency of keys for the TinyLFU admission, as a count-min sketch: DEPTH rows of small
+ * counters, every key counts in one counter per row and its frequency is the smallest of them. Counters stop at
+ * MAX_COUNT, and once there were ten increments per expected key, all counters are halved, so the sketch forgets
+ * old popularity.
+ * <p>
+ * Increments are a compare-and-set per row that is simply given up on contention. Losing a few increments or
+ * halving a counter that is just being incremented makes the estimate a bit less exact, which is fine for comparing
+ * a candidate with a victim.
+ */
+final class FrequencySketch {
+
+    static final int MAX_COUNT = 15;
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0xcbf29ce4};
+
+    private final AtomicIntegerArray counters;
+    private final int width;
+    private final int mask;
+    private final int resetAfter;
+    private final AtomicInteger increments = new AtomicInteger();
+
+    /**
+     * @param expectedKeys keys the sketch should tell apart, e.g. the size of the cache.
+     */
+    FrequencySketch(int expectedKeys) {
+        int keys = Math.max(16, expectedKeys);
+        // four counters per key and row keep the chance small that a rare key collides with popular ones in all rows
+        this.width = Integer.highestOneBit(keys - 1) << 3;
+        this.mask = width - 1;
+        this.resetAfter = 10 * keys;
+        this.counters = new AtomicIntegerArray(DEPTH * width);
+    }
+
+    void increment(int hash) {
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            int count = counters.get(index);
+            if (count < MAX_COUNT) {
+                counters.compareAndSet(index, count, count + 1);
+            }
+        }
+        int current = increments.incrementAndGet();
+        if (current >= resetAfter && increments.compareAndSet(current, 0)) {
+            halve();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.get(indexOf(hash, row)));
+        }
+        return frequency;
+    }
+
+    private void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> 1);
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * width + (h & mask);
+    }
+}
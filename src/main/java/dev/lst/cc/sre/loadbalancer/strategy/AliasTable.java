@@ -0,0 +1,70 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Alias table (Vose's alias method) over the weights of a snapshot. Built in O(n), after that a weighted random
+ * position is drawn in O(1) with two random numbers and without allocating.
+ */
+final class AliasTable {
+
+    // probabilities are kept as ints scaled to PRECISION, so RandomSource.nextInt is all we need
+    private static final int PRECISION = 1 << 30;
+
+    private final int[] probability;
+    private final int[] alias;
+
+    AliasTable(ProviderSnapshot snapshot) {
+        int size = snapshot.size();
+        probability = new int[size];
+        alias = new int[size];
+        if (size == 0) {
+            return;
+        }
+
+        long totalWeight = 0;
+        for (int i = 0; i < size; i++) {
+            totalWeight += snapshot.getWeight(i);
+        }
+
+        // scaled weight of every position, the average is 1
+        double[] scaled = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = (double) snapshot.getWeight(i) * size / totalWeight;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = (int) (scaled[less] * PRECISION);
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left is 1 up to rounding errors
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = PRECISION;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = PRECISION;
+        }
+    }
+
+    int next(RandomSource random) {
+        int position = random.nextInt(probability.length);
+        return random.nextInt(PRECISION) < probability[position] ? position : alias[position];
+    }
+}
@@ -0,0 +1,115 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Consistent hashing with bounded loads. Requests with the same key go to the same provider, so provider side caches
+ * get a good hit rate, and excluding or including a provider only moves about 1/n of the keys.
+ * <p>
+ * To avoid hot spots, a provider is only taken if it has less than LOAD_FACTOR times its (weighted) fair share of
+ * all ongoing requests. Otherwise we walk on along the ring to the next provider that has capacity left. As soon as
+ * the load is gone, the key goes back to its own provider.
+ * <p>
+ * The ring is built over all registered providers and the walk skips the ones that are not selectable, so it is
+ * only rebuilt when providers are registered, removed or reweighed, not every time one turns busy or trips.
+ * <p>
+ * Requests without a key are spread randomly over the ring.
+ */
+public final class ConsistentHashLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final ConsistentHashLBStrategy INSTANCE = new ConsistentHashLBStrategy(ProviderRegistry.INSTANCE);
+
+    static final double LOAD_FACTOR = 1.25;
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+    private final SnapshotCache<HashRing> ring = new SnapshotCache<>(HashRing::new);
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public ConsistentHashLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness used for requests without a key.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+
+        if (activeProviders.isEmpty()) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        ProviderSnapshot registeredProviders = registry.getRegisteredSnapshot();
+        HashRing hashRing = ring.get(registeredProviders);
+        return next(activeProviders, registeredProviders, hashRing, random.nextInt(Math.max(1, hashRing.size())));
+    }
+
+    @Override
+    public ProviderRegistryItem getNext(String key) throws ServiceUnavailableException {
+        if (key == null) {
+            return getNext();
+        }
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+
+        if (activeProviders.isEmpty()) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        ProviderSnapshot registeredProviders = registry.getRegisteredSnapshot();
+        HashRing hashRing = ring.get(registeredProviders);
+        return next(activeProviders, registeredProviders, hashRing, hashRing.firstPointIndex(Hashing.hash(key)));
+    }
+
+    private ProviderRegistryItem next(ProviderSnapshot activeProviders, ProviderSnapshot registeredProviders,
+                                      HashRing hashRing, int startPoint) {
+        long totalOngoing = 0;
+        long totalWeight = 0;
+        for (int i = 0; i < activeProviders.size(); i++) {
+            totalOngoing += activeProviders.get(i).getOngoingRequests();
+            totalWeight += activeProviders.getWeight(i);
+        }
+        // +1 for the request we are placing right now
+        double capacityPerWeight = LOAD_FACTOR * (totalOngoing + 1) / totalWeight;
+
+        // the sum of all ongoing requests is below the sum of all capacities, so there always is a provider with
+        // capacity left. Still, stop after one round in case the ongoing requests changed while we looked, and take
+        // the first selectable provider then.
+        ProviderRegistryItem firstSelectable = null;
+        for (int i = 0; i < hashRing.size(); i++) {
+            int position = hashRing.owner((startPoint + i) % hashRing.size());
+            ProviderRegistryItem candidate = registeredProviders.get(position);
+            if (!candidate.isSelectable()) {
+                continue;
+            }
+            if (candidate.getOngoingRequests() < Math.ceil(capacityPerWeight * registeredProviders.getWeight(position))) {
+                return candidate;
+            }
+            if (firstSelectable == null) {
+                firstSelectable = candidate;
+            }
+        }
+        // the registered snapshot may not have caught up with the active one yet, it is read after it
+        return firstSelectable != null ? firstSelectable : activeProviders.get(0);
+    }
+}
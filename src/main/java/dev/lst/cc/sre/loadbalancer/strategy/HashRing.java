@@ -0,0 +1,84 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.Arrays;
+
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Consistent hash ring over the providers of a snapshot. Every provider gets VIRTUAL_NODES_PER_WEIGHT points on the
+ * ring per unit of weight. The points only depend on the uid of the provider, so when a provider leaves or joins the
+ * snapshot, only the keys that are (or will be) on its points move - about 1/n of them.
+ * <p>
+ * If the weights add up to more than MAX_POINTS / VIRTUAL_NODES_PER_WEIGHT, the points per provider are scaled down
+ * so that the ring stays at about MAX_POINTS. A provider keeps its first points then, so most keys stay where they
+ * were.
+ */
+final class HashRing {
+
+    static final int VIRTUAL_NODES_PER_WEIGHT = 100;
+
+    // upper bound for the amount of points on the ring, like SmoothWeightedRoundRobinLBStrategy.MAX_CYCLE_LENGTH
+    static final int MAX_POINTS = 1 << 16;
+
+    // every point carries the position of its owner in its lowest bits, so the ring is a single sorted long[]
+    private final long[] points;
+    private final long ownerMask;
+
+    HashRing(ProviderSnapshot snapshot) {
+        int size = snapshot.size();
+        int[] replicas = replicas(snapshot);
+        int totalPoints = 0;
+        for (int replica : replicas) {
+            totalPoints += replica;
+        }
+
+        ownerMask = (1L << (Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(1, size - 1)))) - 1;
+        points = new long[totalPoints];
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            String uid = snapshot.get(i).getProviderUid();
+            for (int replica = 0; replica < replicas[i]; replica++) {
+                points[index++] = (Hashing.hash(uid, replica) & ~ownerMask) | i;
+            }
+        }
+        Arrays.sort(points);
+    }
+
+    private static int[] replicas(ProviderSnapshot snapshot) {
+        int size = snapshot.size();
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += (long) VIRTUAL_NODES_PER_WEIGHT * snapshot.getWeight(i);
+        }
+        double scale = total > Math.max(MAX_POINTS, size) ? (double) Math.max(MAX_POINTS, size) / total : 1;
+        int[] replicas = new int[size];
+        for (int i = 0; i < size; i++) {
+            replicas[i] = Math.max(1, (int) (VIRTUAL_NODES_PER_WEIGHT * snapshot.getWeight(i) * scale));
+        }
+        return replicas;
+    }
+
+    int size() {
+        return points.length;
+    }
+
+    /**
+     * @param hash hash of the key.
+     * @return index of the first point on the ring at or after the hash, wrapping around at the end.
+     */
+    int firstPointIndex(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == points.length ? 0 : index;
+    }
+
+    /**
+     * @param pointIndex index of a point, see firstPointIndex().
+     * @return position in the snapshot of the provider owning that point.
+     */
+    int owner(int pointIndex) {
+        return (int) (points[pointIndex] & ownerMask);
+    }
+}
@@ -0,0 +1,44 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+/**
+ * Hash function for keys and ring positions. FNV-1a over the chars followed by the murmur3 finalizer, which gives a
+ * good spread over all 64 bits without allocating (String.hashCode() alone has only 32 bits and clusters badly).
+ */
+final class Hashing {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    static long hash(String value, int replica) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= replica;
+        hash *= FNV_PRIME;
+        return mix(hash);
+    }
+
+    // murmur3 fmix64
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
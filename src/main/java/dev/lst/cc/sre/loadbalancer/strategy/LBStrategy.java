@@ -1,13 +1,20 @@
 package dev.lst.cc.sre.loadbalancer.strategy;
 
 import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
 
 /**
- * Loadbalancing strategy interface.
+ * Loadbalancing strategy interface. A strategy picks from the providers of one registry, its pool. The INSTANCE of
+ * every strategy works on ProviderRegistry.INSTANCE, strategies for other pools are created with their registry.
  */
 public interface LBStrategy {
 
+    /**
+     * @return registry the providers are picked from.
+     */
+    ProviderRegistry getRegistry();
+
     /**
      * Returns the next provider based on the strategy. If no provider is available, it throws
      * a ServiceUnavailableException.
@@ -16,4 +23,17 @@ public interface LBStrategy {
      * @throws ServiceUnavailableException if no provider is available.
      */
     ProviderRegistryItem getNext() throws ServiceUnavailableException;
+
+    /**
+     * Returns the next provider for a request with the given key (e.g. tenant or session). Strategies that route by
+     * key return the same provider for the same key as long as the active providers don't change, all others just
+     * ignore the key.
+     *
+     * @param key key of the request.
+     * @return next provider.
+     * @throws ServiceUnavailableException if no provider is available.
+     */
+    default ProviderRegistryItem getNext(String key) throws ServiceUnavailableException {
+        return getNext();
+    }
 }
@@ -0,0 +1,66 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Least connections: looks at all active providers and takes the one with the fewest ongoing requests. This is a
+ * full scan, so it is meant for small pools - for large ones use the PowerOfTwoChoicesLBStrategy.
+ */
+public final class LeastConnectionsLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final LeastConnectionsLBStrategy INSTANCE = new LeastConnectionsLBStrategy(ProviderRegistry.INSTANCE);
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public LeastConnectionsLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+        int size = activeProviders.size();
+
+        if (size == 0) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        // start at a random position so ties don't always go to the first provider in the snapshot
+        int start = random.nextInt(size);
+        ProviderRegistryItem best = activeProviders.get(start);
+        int bestOngoing = best.getOngoingRequests();
+        for (int i = 1; i < size && bestOngoing > 0; i++) {
+            ProviderRegistryItem candidate = activeProviders.get((start + i) % size);
+            int ongoing = candidate.getOngoingRequests();
+            if (ongoing < bestOngoing) {
+                best = candidate;
+                bestOngoing = ongoing;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,43 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Monotonically increasing counter that sits on its own cache line, so threads hammering it don't invalidate
+ * neighbouring fields (false sharing). The padding is done through the class hierarchy since the JVM keeps fields of
+ * a super class in front of the ones of its sub class.
+ */
+final class PaddedCounter extends PaddedCounterRhsPadding {
+
+    private static final AtomicLongFieldUpdater<PaddedCounterValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(PaddedCounterValue.class, "value");
+
+    /**
+     * @return the incremented value.
+     */
+    long incrementAndGet() {
+        return VALUE.incrementAndGet(this);
+    }
+
+    /**
+     * @param delta value to add.
+     * @return the new value.
+     */
+    long addAndGet(long delta) {
+        return VALUE.addAndGet(this, delta);
+    }
+}
+
+@SuppressWarnings("unused")
+abstract class PaddedCounterLhsPadding {
+    protected long p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class PaddedCounterValue extends PaddedCounterLhsPadding {
+    protected volatile long value;
+}
+
+@SuppressWarnings("unused")
+abstract class PaddedCounterRhsPadding extends PaddedCounterValue {
+    protected long p11, p12, p13, p14, p15, p16, p17;
+}
@@ -0,0 +1,83 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Latency aware strategy. Takes the provider with the lowest cost, where the cost is the peak EWMA of its response
+ * times multiplied by its ongoing requests + 1. Providers that get slow are avoided after their first slow answer,
+ * and since the average decays while a provider is idle, they are tried again after a while.
+ * <p>
+ * This is a full scan over the active providers, like the LeastConnectionsLBStrategy.
+ */
+public final class PeakEwmaLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final PeakEwmaLBStrategy INSTANCE = new PeakEwmaLBStrategy(ProviderRegistry.INSTANCE);
+
+    // cost of a provider that has not answered yet but already has calls ongoing. Large enough that we don't pile up
+    // requests on a provider we know nothing about, e.g. one that hangs on its very first call.
+    private static final double PENALTY_NANOS = Long.MAX_VALUE >> 16;
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public PeakEwmaLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+        int size = activeProviders.size();
+
+        if (size == 0) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        long now = System.nanoTime();
+        // start at a random position so ties (e.g. providers without any response yet) are spread
+        int start = random.nextInt(size);
+        ProviderRegistryItem best = activeProviders.get(start);
+        double bestCost = cost(best, now);
+        for (int i = 1; i < size; i++) {
+            ProviderRegistryItem candidate = activeProviders.get((start + i) % size);
+            double cost = cost(candidate, now);
+            if (cost < bestCost) {
+                best = candidate;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    static double cost(ProviderRegistryItem item, long nowNanos) {
+        double latency = item.getLatencyEwmaNanos(nowNanos);
+        int ongoing = item.getOngoingRequests();
+        if (latency == 0.0 && ongoing != 0) {
+            return PENALTY_NANOS + ongoing;
+        }
+        return latency * (ongoing + 1);
+    }
+}
@@ -0,0 +1,68 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Power of two random choices: picks two different providers at random and takes the one with fewer ongoing
+ * requests. Costs about as much as the random strategy but keeps sending less traffic to providers that slow down,
+ * long before they reach BUSY.
+ */
+public final class PowerOfTwoChoicesLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final PowerOfTwoChoicesLBStrategy INSTANCE = new PowerOfTwoChoicesLBStrategy(ProviderRegistry.INSTANCE);
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public PowerOfTwoChoicesLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+        int size = activeProviders.size();
+
+        if (size == 0) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+        if (size == 1) {
+            return activeProviders.get(0);
+        }
+
+        RandomSource randomSource = random;
+        int first = randomSource.nextInt(size);
+        // pick the second one out of the remaining size - 1 so the two are always different
+        int second = randomSource.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        ProviderRegistryItem firstItem = activeProviders.get(first);
+        ProviderRegistryItem secondItem = activeProviders.get(second);
+        return secondItem.getOngoingRequests() < firstItem.getOngoingRequests() ? secondItem : firstItem;
+    }
+}
@@ -0,0 +1,93 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Failover strategy over priority tiers (ProviderRegistryItem.setPriority): the primary tier gets all requests as long
+ * as enough of its providers are active, backup tiers only get the load the tiers above can't take any more, graded by
+ * how many of their providers are EXCLUDED, BUSY, OPEN, ... See PriorityLoad for the computation. Within a tier the
+ * providers are picked randomly.
+ * <p>
+ * The load of the tiers is only recomputed when the registry publishes a new active or registered snapshot, so a pick
+ * is O(1) and does not allocate.
+ */
+public final class PriorityLBStrategy implements LBStrategy {
+
+    /**
+     * Overprovisioning factor of Envoy: a tier counts as fully healthy while 1 / 1.4 = 72% of its providers are active.
+     */
+    public static final double DEFAULT_OVERPROVISIONING_FACTOR = 1.4;
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final PriorityLBStrategy INSTANCE = new PriorityLBStrategy(ProviderRegistry.INSTANCE);
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+    private final double overprovisioningFactor;
+    private final SnapshotCache<PriorityLoad> load = new SnapshotCache<>(this::load);
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public PriorityLBStrategy(ProviderRegistry registry) {
+        this(registry, DEFAULT_OVERPROVISIONING_FACTOR);
+    }
+
+    /**
+     * @param registry               pool to pick the providers from.
+     * @param overprovisioningFactor factor on the share of active providers of a tier, at least 1. The higher, the
+     *                               more of its providers a tier may lose before backup tiers get requests.
+     */
+    public PriorityLBStrategy(ProviderRegistry registry, double overprovisioningFactor) {
+        if (overprovisioningFactor < 1) {
+            throw new IllegalArgumentException("overprovisioningFactor must be at least 1 but was "
+                    + overprovisioningFactor);
+        }
+        this.registry = registry;
+        this.overprovisioningFactor = overprovisioningFactor;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+
+        if (activeProviders.isEmpty()) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        return activeProviders.get(load.get(activeProviders, registry.getRegisteredSnapshot()).next(random));
+    }
+
+    /**
+     * @param priority priority tier.
+     * @return share of the requests the tier currently gets, between 0 and 1. 0 for all tiers if no provider is active.
+     */
+    public double getLoad(int priority) {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+        return activeProviders.isEmpty() ? 0
+                : load.get(activeProviders, registry.getRegisteredSnapshot()).getLoad(priority);
+    }
+
+    private PriorityLoad load(ProviderSnapshot snapshot, ProviderSnapshot registered) {
+        return new PriorityLoad(snapshot, registered, overprovisioningFactor);
+    }
+}
@@ -0,0 +1,91 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Share of the requests every priority tier gets, computed like the priority load of Envoy:
+ * <ul>
+ *     <li>the health of a tier is its share of active providers times the overprovisioning factor, at most 100%. With
+ *     the default factor of 1.4 a tier counts as fully healthy as long as 72% of its providers are active.</li>
+ *     <li>going from the primary tier down, every tier gets as much of the remaining load as its health allows, so
+ *     a backup tier only gets what the tiers above can't take.</li>
+ *     <li>if all tiers together are less than 100% healthy, the loads are scaled up to add up to 100% again.</li>
+ * </ul>
+ * Built per snapshot from the tier ranges of the active and of the registered snapshot, so it costs
+ * O(MAX_PRIORITY) per change. A position is then drawn in O(1) with two random numbers and without allocating.
+ */
+final class PriorityLoad {
+
+    // loads are kept as ints scaled to PRECISION, so RandomSource.nextInt is all we need
+    static final int PRECISION = 1 << 20;
+
+    private static final int PRIORITIES = ProviderRegistryItem.MAX_PRIORITY + 1;
+
+    private final int[] cumulativeLoad = new int[PRIORITIES];
+    private final int[] start = new int[PRIORITIES];
+    private final int[] size = new int[PRIORITIES];
+
+    /**
+     * @param snapshot               active providers, not empty.
+     * @param registered             registered providers.
+     * @param overprovisioningFactor factor on the share of active providers of a tier.
+     */
+    PriorityLoad(ProviderSnapshot snapshot, ProviderSnapshot registered, double overprovisioningFactor) {
+        double[] health = new double[PRIORITIES];
+        double totalHealth = 0;
+        for (int priority = 0; priority < PRIORITIES; priority++) {
+            start[priority] = snapshot.getPriorityStart(priority);
+            size[priority] = snapshot.getPriorityEnd(priority) - start[priority];
+            // the active snapshot may already hold a provider the registered one doesn't have yet
+            int registeredSize = Math.max(size[priority],
+                    registered.getPriorityEnd(priority) - registered.getPriorityStart(priority));
+            if (size[priority] > 0) {
+                health[priority] = Math.min(1, overprovisioningFactor * size[priority] / registeredSize);
+                totalHealth += health[priority];
+            }
+        }
+
+        double normalizedHealth = Math.min(1, totalHealth);
+        double remaining = 1;
+        double cumulative = 0;
+        int last = 0;
+        for (int priority = 0; priority < PRIORITIES; priority++) {
+            double load = normalizedHealth == 0 ? 0 : Math.min(remaining, health[priority] / normalizedHealth);
+            remaining -= load;
+            cumulative += load;
+            cumulativeLoad[priority] = (int) Math.round(cumulative * PRECISION);
+            if (load > 0) {
+                last = priority;
+            }
+        }
+        // rounding must not leave a gap at the end that no tier covers
+        for (int priority = last; priority < PRIORITIES; priority++) {
+            cumulativeLoad[priority] = PRECISION;
+        }
+    }
+
+    /**
+     * @param random source of randomness.
+     * @return position in the snapshot.
+     */
+    int next(RandomSource random) {
+        int priority = 0;
+        if (cumulativeLoad[0] < PRECISION) {
+            int point = random.nextInt(PRECISION);
+            while (point >= cumulativeLoad[priority]) {
+                priority++;
+            }
+        }
+        return start[priority] + random.nextInt(size[priority]);
+    }
+
+    /**
+     * @param priority priority tier.
+     * @return share of the requests the tier gets, between 0 and 1.
+     */
+    double getLoad(int priority) {
+        int below = priority == 0 ? 0 : cumulativeLoad[priority - 1];
+        return (double) (cumulativeLoad[priority] - below) / PRECISION;
+    }
+}
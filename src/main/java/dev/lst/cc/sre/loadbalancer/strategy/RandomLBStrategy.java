@@ -1,28 +1,53 @@
 package dev.lst.cc.sre.loadbalancer.strategy;
 
-import java.util.List;
-import java.util.Random;
-
 import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
 import dev.lst.cc.sre.registry.ProviderRegistry;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
 
 /**
- * Implements random load balancer strategy
+ * Implements random load balancer strategy. Randomness comes from a RandomSource which, by default, is thread local so
+ * request threads don't contend on a shared seed.
  */
-public enum RandomLBStrategy implements LBStrategy {
-    INSTANCE;
-    private Random random = new Random();
-    private ProviderRegistry registry = ProviderRegistry.INSTANCE;
+public final class RandomLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final RandomLBStrategy INSTANCE = new RandomLBStrategy(ProviderRegistry.INSTANCE);
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public RandomLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
 
     @Override
     public ProviderRegistryItem getNext() throws ServiceUnavailableException {
-        List<ProviderRegistryItem> activeProviderRegistryItems = registry.getActiveProviders();
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
 
-        if (activeProviderRegistryItems.size() == 0) {
+        if (activeProviders.isEmpty()) {
             throw new ServiceUnavailableException("no providers currently available");
         }
 
-        return activeProviderRegistryItems.get(random.nextInt(activeProviderRegistryItems.size()));
+        return activeProviders.get(random.nextInt(activeProviders.size()));
     }
 }
@@ -0,0 +1,37 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of randomness for the strategies. Implementations must be safe to use from many threads at the same time
+ * without sharing mutable state between them, since they sit on the request path.
+ */
+@FunctionalInterface
+public interface RandomSource {
+
+    /**
+     * @param bound upper bound (exclusive), must be positive.
+     * @return random int between 0 (inclusive) and bound (exclusive).
+     */
+    int nextInt(int bound);
+
+    /**
+     * Default source, backed by ThreadLocalRandom.
+     *
+     * @return random source.
+     */
+    static RandomSource threadLocal() {
+        return bound -> ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    /**
+     * Seeded source, mainly for tests. Every thread gets its own SplittableRandom split off a root seeded with the
+     * given seed, so the sequence seen by a single thread is reproducible.
+     *
+     * @param seed seed.
+     * @return random source.
+     */
+    static RandomSource seeded(long seed) {
+        return new SeededRandomSource(seed);
+    }
+}
@@ -1,39 +1,50 @@
 package dev.lst.cc.sre.loadbalancer.strategy;
 
-import java.util.List;
-
 import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
 import dev.lst.cc.sre.registry.ProviderRegistry;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
 
 /**
  * Load Balancing strategy as round robin.
  */
-public enum RoundRobinLBStrategy implements LBStrategy {
-    INSTANCE;
+public final class RoundRobinLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final RoundRobinLBStrategy INSTANCE = new RoundRobinLBStrategy(ProviderRegistry.INSTANCE);
+
+    private final PaddedCounter counter = new PaddedCounter();
+    private final ProviderRegistry registry;
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public RoundRobinLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
 
-    private int providerIndex = 0;
-    private ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
 
     @Override
     public ProviderRegistryItem getNext() throws ServiceUnavailableException {
-        List<ProviderRegistryItem> activeProviderRegistryItems = registry.getActiveProviders();
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
 
-        if (activeProviderRegistryItems.size() == 0) {
+        if (activeProviders.isEmpty()) {
             throw new ServiceUnavailableException("no providers currently available");
         }
 
-        return activeProviderRegistryItems.get(incrementAndGetProviderPosition(activeProviderRegistryItems.size()));
+        return activeProviders.get(incrementAndGetProviderPosition(activeProviders.size()));
     }
 
-    // on first view it looks like this could be done with an atomicInteger but that's not the case
-    // since we need two operations on it. Once to check if it is larger than activeProviderSize
-    // and if it is, then to set it to zero. So it's not always just an increment.
-    private synchronized int incrementAndGetProviderPosition(int activeProviderSize) {
-        providerIndex++;
-        if (providerIndex >= activeProviderSize) {
-            providerIndex = 0;
-        }
-        return providerIndex;
+    // the counter only ever increases, so there is no check-then-reset and no lock needed. The position is taken
+    // modulo the size of the snapshot we are looking at, which keeps the distribution fair even if the amount of
+    // active providers changes in between two calls.
+    private int incrementAndGetProviderPosition(int activeProviderSize) {
+        return (int) ((counter.incrementAndGet() & Long.MAX_VALUE) % activeProviderSize);
     }
 }
@@ -0,0 +1,27 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible random source. The root is only touched once per thread, when the thread's own generator is split off
+ * it, after that every thread works on its own instance.
+ */
+class SeededRandomSource implements RandomSource {
+
+    private final SplittableRandom root;
+    private final ThreadLocal<SplittableRandom> perThread;
+
+    SeededRandomSource(long seed) {
+        this.root = new SplittableRandom(seed);
+        this.perThread = ThreadLocal.withInitial(this::split);
+    }
+
+    private synchronized SplittableRandom split() {
+        return root.split();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return perThread.get().nextInt(bound);
+    }
+}
@@ -0,0 +1,137 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Smooth weighted round robin, as done by nginx: with weights a=5, b=1, c=1 the order is a a b a c a a instead of
+ * a a a a a b c, so a heavy provider does not get its whole share in one burst.
+ * <p>
+ * The algorithm itself is sequential, so instead of running it under a lock on every call, one full cycle of it is
+ * computed over all registered providers. Picking is then the same lock-free counter as in the RoundRobinLBStrategy,
+ * indexing into that cycle and skipping the providers that are not selectable right now. That way the cycle is only
+ * rebuilt when providers are registered, removed or reweighed, not every time one turns busy or trips.
+ */
+public final class SmoothWeightedRoundRobinLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final SmoothWeightedRoundRobinLBStrategy INSTANCE = new SmoothWeightedRoundRobinLBStrategy(ProviderRegistry.INSTANCE);
+
+    // upper bound for the length of a cycle. If the weights add up to more than that, they are scaled down.
+    static final int MAX_CYCLE_LENGTH = 1 << 16;
+
+    private final PaddedCounter counter = new PaddedCounter();
+    private final ProviderRegistry registry;
+    private final SnapshotCache<int[]> cycle = new SnapshotCache<>(SmoothWeightedRoundRobinLBStrategy::cycle);
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public SmoothWeightedRoundRobinLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+
+        if (activeProviders.isEmpty()) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        ProviderSnapshot registeredProviders = registry.getRegisteredSnapshot();
+        int[] positions = cycle.get(registeredProviders);
+        long start = counter.incrementAndGet() & Long.MAX_VALUE;
+        for (int skipped = 0; skipped < positions.length; skipped++) {
+            int step = (int) (((start + skipped) & Long.MAX_VALUE) % positions.length);
+            ProviderRegistryItem candidate = registeredProviders.get(positions[step]);
+            if (candidate.isSelectable()) {
+                if (skipped > 0) {
+                    // the next pick goes on after this one, so the turns of a skipped provider are spread over the
+                    // others in cycle order instead of all going to the one that follows it
+                    counter.addAndGet(skipped);
+                }
+                return candidate;
+            }
+        }
+        // the providers changed while we looked
+        return activeProviders.get((int) (start % activeProviders.size()));
+    }
+
+    /**
+     * Runs the nginx algorithm for one full cycle: on every step, each provider adds its weight to its current
+     * weight, the one with the highest current weight is picked and the total weight is subtracted from it.
+     *
+     * @param snapshot snapshot to compute the cycle for.
+     * @return positions in the snapshot, in the order they should be picked.
+     */
+    static int[] cycle(ProviderSnapshot snapshot) {
+        int size = snapshot.size();
+        int[] weights = new int[size];
+        int gcd = 0;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] = snapshot.getWeight(i);
+            gcd = gcd(gcd, weights[i]);
+            total += weights[i];
+        }
+        if (gcd > 1) {
+            for (int i = 0; i < size; i++) {
+                weights[i] /= gcd;
+            }
+            total /= gcd;
+        }
+        if (total == size) {
+            // all the same, that's plain round robin
+            int[] positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = i;
+            }
+            return positions;
+        }
+        if (total > Math.max(MAX_CYCLE_LENGTH, size)) {
+            total = 0;
+            double scale = (double) Math.max(MAX_CYCLE_LENGTH, size) / total(weights);
+            for (int i = 0; i < size; i++) {
+                weights[i] = Math.max(1, (int) (weights[i] * scale));
+                total += weights[i];
+            }
+        }
+
+        int[] positions = new int[(int) total];
+        long[] current = new long[size];
+        for (int step = 0; step < positions.length; step++) {
+            int best = 0;
+            for (int i = 0; i < size; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            positions[step] = best;
+        }
+        return positions;
+    }
+
+    private static long total(int[] weights) {
+        long total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        return total;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,65 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Caches a value derived from a ProviderSnapshot (e.g. a lookup table) and only rebuilds it when the registry
+ * published a new snapshot. Reading it is two volatile reads and a reference comparison, so it can be used on the
+ * request path. If several threads see a new snapshot at the same time, each of them may build the value once, the
+ * last one wins - that's cheaper than coordinating them.
+ * <p>
+ * A value that also depends on the registered providers (e.g. how many of a zone are registered) is keyed on the
+ * registered snapshot as well, see get(ProviderSnapshot, ProviderSnapshot). Removing a provider that isn't active
+ * leaves the active snapshot as it is, but always publishes a new registered one.
+ *
+ * @param <T> type of the derived value.
+ */
+final class SnapshotCache<T> {
+
+    private final BiFunction<ProviderSnapshot, ProviderSnapshot, T> factory;
+    private volatile Entry<T> entry;
+
+    SnapshotCache(Function<ProviderSnapshot, T> factory) {
+        this((snapshot, registered) -> factory.apply(snapshot));
+    }
+
+    /**
+     * @param factory builds the value from the active and the registered snapshot.
+     */
+    SnapshotCache(BiFunction<ProviderSnapshot, ProviderSnapshot, T> factory) {
+        this.factory = factory;
+    }
+
+    T get(ProviderSnapshot snapshot) {
+        return get(snapshot, null);
+    }
+
+    /**
+     * @param snapshot   active snapshot.
+     * @param registered registered snapshot.
+     * @return value for both snapshots.
+     */
+    T get(ProviderSnapshot snapshot, ProviderSnapshot registered) {
+        Entry<T> current = entry;
+        if (current == null || current.snapshot != snapshot || current.registered != registered) {
+            current = new Entry<>(snapshot, registered, factory.apply(snapshot, registered));
+            entry = current;
+        }
+        return current.value;
+    }
+
+    private static final class Entry<T> {
+        private final ProviderSnapshot snapshot;
+        private final ProviderSnapshot registered;
+        private final T value;
+
+        private Entry(ProviderSnapshot snapshot, ProviderSnapshot registered, T value) {
+            this.snapshot = snapshot;
+            this.registered = registered;
+            this.value = value;
+        }
+    }
+}
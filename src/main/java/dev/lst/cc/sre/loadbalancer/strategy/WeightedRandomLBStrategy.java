@@ -0,0 +1,55 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Weighted random strategy: every active provider is picked with a probability proportional to its weight. Uses an
+ * alias table which is only rebuilt when the registry publishes a new snapshot (active set or weights changed), so a
+ * pick is O(1) and does not allocate.
+ */
+public final class WeightedRandomLBStrategy implements LBStrategy {
+
+    /**
+     * Strategy on the default pool, ProviderRegistry.INSTANCE.
+     */
+    public static final WeightedRandomLBStrategy INSTANCE = new WeightedRandomLBStrategy(ProviderRegistry.INSTANCE);
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+    private final SnapshotCache<AliasTable> aliasTable = new SnapshotCache<>(AliasTable::new);
+
+    /**
+     * @param registry pool to pick the providers from.
+     */
+    public WeightedRandomLBStrategy(ProviderRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+
+        if (activeProviders.isEmpty()) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        return activeProviders.get(aliasTable.get(activeProviders).next(random));
+    }
+}
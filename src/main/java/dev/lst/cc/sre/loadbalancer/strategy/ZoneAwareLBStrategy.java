@@ -0,0 +1,95 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Locality aware strategy: prefers the providers in the zone of the caller, since calls to other zones cost latency
+ * and money. Requests only spill over to other zones when less than threshold of the local providers are active (not
+ * BUSY, EXCLUDED, OPEN, ...), and then only in proportion to the missing local capacity, see ZoneSplit. Within a zone
+ * the providers are picked randomly.
+ * <p>
+ * The split is only rebuilt when the registry publishes a new active or registered snapshot, so a pick is O(1) and
+ * does not allocate.
+ */
+public final class ZoneAwareLBStrategy implements LBStrategy {
+
+    /**
+     * Requests spill over once less than 70% of the local providers are active.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.7;
+
+    private volatile RandomSource random = RandomSource.threadLocal();
+    private final ProviderRegistry registry;
+    private final String localZone;
+    private final double threshold;
+    private final SnapshotCache<ZoneSplit> split = new SnapshotCache<>(this::split);
+
+    /**
+     * @param registry  pool to pick the providers from.
+     * @param localZone zone of the caller.
+     */
+    public ZoneAwareLBStrategy(ProviderRegistry registry, String localZone) {
+        this(registry, localZone, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param registry  pool to pick the providers from.
+     * @param localZone zone of the caller.
+     * @param threshold share of active local providers below which requests spill over to other zones, more than 0
+     *                  and at most 1.
+     */
+    public ZoneAwareLBStrategy(ProviderRegistry registry, String localZone, double threshold) {
+        if (localZone == null || threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("a local zone and a threshold in (0, 1] are needed");
+        }
+        this.registry = registry;
+        this.localZone = localZone;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the source of randomness, e.g. with a seeded one to get reproducible results in tests.
+     *
+     * @param randomSource source to use from now on.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.random = randomSource;
+    }
+
+    @Override
+    public ProviderRegistryItem getNext() throws ServiceUnavailableException {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+
+        if (activeProviders.isEmpty()) {
+            throw new ServiceUnavailableException("no providers currently available");
+        }
+
+        return activeProviders.get(split.get(activeProviders, registry.getRegisteredSnapshot()).next(random));
+    }
+
+    /**
+     * @return share of the requests currently staying in the local zone, between 0 and 1.
+     */
+    public double getLocalShare() {
+        ProviderSnapshot activeProviders = registry.getActiveSnapshot();
+        return split.get(activeProviders, registry.getRegisteredSnapshot()).getLocalShare();
+    }
+
+    private ZoneSplit split(ProviderSnapshot snapshot, ProviderSnapshot registered) {
+        int localRegistered = 0;
+        for (int i = 0; i < registered.size(); i++) {
+            if (localZone.equals(registered.get(i).getZone())) {
+                localRegistered++;
+            }
+        }
+        return new ZoneSplit(snapshot, localZone, localRegistered, threshold);
+    }
+}
@@ -0,0 +1,85 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.registry.ProviderSnapshot;
+
+/**
+ * Split of a snapshot into the active providers of the local zone and the ones of all other zones, together with the
+ * share of requests that stays local. Built in O(n) per snapshot, after that a position is drawn in O(1) with at most
+ * two random numbers and without allocating.
+ * <p>
+ * As long as at least threshold of the registered local providers are active, all requests stay local. Below that, the
+ * local share drops in proportion to the active local providers (localActive / localRegistered / threshold), the rest
+ * spills over to the other zones, where every active provider is equally likely, so every zone gets spilled requests
+ * in proportion to its active providers.
+ */
+final class ZoneSplit {
+
+    // shares are kept as ints scaled to PRECISION, so RandomSource.nextInt is all we need
+    static final int PRECISION = 1 << 20;
+
+    private final int[] local;
+    private final int[] remote;
+    private final int localShare;
+
+    /**
+     * @param snapshot        active providers.
+     * @param localZone       zone of the caller.
+     * @param localRegistered registered providers of the local zone, whatever their status.
+     * @param threshold       share of active local providers below which requests spill over.
+     */
+    ZoneSplit(ProviderSnapshot snapshot, String localZone, int localRegistered, double threshold) {
+        int localCount = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (localZone.equals(snapshot.get(i).getZone())) {
+                localCount++;
+            }
+        }
+        local = new int[localCount];
+        remote = new int[snapshot.size() - localCount];
+        int l = 0;
+        int r = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (localZone.equals(snapshot.get(i).getZone())) {
+                local[l++] = i;
+            } else {
+                remote[r++] = i;
+            }
+        }
+
+        if (local.length == 0) {
+            localShare = 0;
+        } else if (remote.length == 0) {
+            localShare = PRECISION;
+        } else {
+            // a split built for an older snapshot may still hold a provider that was removed in the meantime
+            double healthy = (double) local.length / Math.max(local.length, localRegistered);
+            localShare = healthy >= threshold ? PRECISION : (int) (PRECISION * healthy / threshold);
+        }
+    }
+
+    /**
+     * The snapshot must not be empty. Then the side that is picked always has providers: the local share is 0 without
+     * local providers and 1 without remote ones.
+     *
+     * @param random source of randomness.
+     * @return position in the snapshot.
+     */
+    int next(RandomSource random) {
+        int[] zone;
+        if (localShare == PRECISION) {
+            zone = local;
+        } else if (localShare == 0) {
+            zone = remote;
+        } else {
+            zone = random.nextInt(PRECISION) < localShare ? local : remote;
+        }
+        return zone[random.nextInt(zone.length)];
+    }
+
+    /**
+     * @return share of requests staying in the local zone, between 0 and 1.
+     */
+    double getLocalShare() {
+        return (double) localShare / PRECISION;
+    }
+}
@@ -0,0 +1,19 @@
+package dev.lst.cc.sre.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. Backed by a LongAdder, so threads counting at the same time don't contend on one cache line.
+ */
+public final class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
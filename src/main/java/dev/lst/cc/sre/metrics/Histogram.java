@@ -0,0 +1,117 @@
+package dev.lst.cc.sre.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of values like response times in nanos, in the style of HdrHistogram.
+ * <p>
+ * Buckets are log-linear: one group per power of two, split into SUB_BUCKETS linear buckets, so every value lands in a
+ * bucket at most 1/SUB_BUCKETS wider than itself (12.5%). Every bucket is a LongAdder, so recording is lock free and
+ * spreads over striped cells under contention. The adders are only created for buckets that get a value, most
+ * histograms only ever touch a few dozen of the BUCKETS. The count is not kept separately but summed up from the
+ * buckets when it is read, so recording a value is just two increments: its bucket and the sum.
+ */
+public final class Histogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Buckets needed for all values up to Long.MAX_VALUE.
+     */
+    public static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param value value to record, negative values count as 0.
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        int bucket = bucketOf(recorded);
+        LongAdder adder = buckets.get(bucket);
+        if (adder == null) {
+            buckets.compareAndSet(bucket, null, new LongAdder());
+            adder = buckets.get(bucket);
+        }
+        adder.increment();
+        sum.add(recorded);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            LongAdder adder = buckets.get(bucket);
+            if (adder != null) {
+                count += adder.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return mean of the recorded values, 0 if there are none.
+     */
+    public double getMean() {
+        long values = getCount();
+        return values == 0 ? 0 : (double) sum.sum() / values;
+    }
+
+    /**
+     * Reads the percentile. Values recorded while reading may or may not be taken into account.
+     *
+     * @param percentile percentile between 0 and 100.
+     * @return upper bound of the bucket holding the percentile, 0 if there are no values.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            LongAdder adder = buckets.get(bucket);
+            if (adder != null) {
+                counts[bucket] = adder.sum();
+                total += counts[bucket];
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return upperBoundOf(bucket);
+            }
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    /**
+     * @param value value, not negative.
+     * @return index of the log-linear bucket of the value.
+     */
+    public static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param bucket index of a bucket.
+     * @return largest value of the bucket.
+     */
+    public static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (magnitude - SUB_BUCKET_BITS);
+        return (1L << magnitude) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,95 @@
+package dev.lst.cc.sre.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All metrics of the loadbalancer. Is implemented as a singleton like the ProviderRegistry.
+ * <p>
+ * The metrics of a provider or strategy are looked up once, by its registration or by the Loadbalancer using it, and
+ * then recorded into directly. The request path never looks up a metric by name, it only increments LongAdders.
+ * Provider metrics are dropped when the provider is removed from the registry, so pools with a lot of churn don't
+ * keep the metrics of every provider they ever had.
+ * <p>
+ * Metrics are named by the pool (the name of the ProviderRegistry), so the same uid or strategy in two pools doesn't
+ * share its metrics: provider.&lt;pool&gt;.&lt;uid&gt;.* and strategy.&lt;pool&gt;.&lt;strategy&gt;.*.
+ */
+public enum Metrics {
+    INSTANCE;
+
+    private final Map<String, ProviderMetrics> providers = new ConcurrentHashMap<>();
+    private final Map<String, StrategyMetrics> strategies = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+
+    /**
+     * @param pool name of the registry of the provider.
+     * @param uid  uid of the provider.
+     * @return metrics of the provider, created on first use.
+     */
+    public ProviderMetrics provider(String pool, String uid) {
+        return providers.computeIfAbsent(pool + "." + uid, ignored -> new ProviderMetrics());
+    }
+
+    /**
+     * @param pool name of the registry of the provider.
+     * @param uid  uid of the provider.
+     */
+    public void removeProvider(String pool, String uid) {
+        providers.remove(pool + "." + uid);
+    }
+
+    /**
+     * @param pool name of the registry the strategy picks from.
+     * @param name name of the strategy.
+     * @return metrics of the strategy, created on first use.
+     */
+    public StrategyMetrics strategy(String pool, String name) {
+        return strategies.computeIfAbsent(pool + "." + name, ignored -> new StrategyMetrics());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches recording on or off, e.g. to measure its overhead. Metrics keep their values while switched off.
+     *
+     * @param enabled whether metrics are recorded.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Hands all metrics to the reporter, sorted by name.
+     *
+     * @param reporter reporter.
+     */
+    public void report(MetricsReporter reporter) {
+        new TreeMap<>(strategies).forEach((name, metrics) -> {
+            String prefix = "strategy." + name + ".";
+            reporter.counter(prefix + "requests", metrics.getRequests());
+            reporter.counter(prefix + "errors", metrics.getErrors());
+            reporter.counter(prefix + "unavailable", metrics.getUnavailable());
+            reporter.histogram(prefix + "latency", metrics.getLatency());
+        });
+        new TreeMap<>(providers).forEach((name, metrics) -> {
+            String prefix = "provider." + name + ".";
+            reporter.counter(prefix + "requests", metrics.getRequests());
+            reporter.counter(prefix + "errors", metrics.getErrors());
+            reporter.counter(prefix + "busy", metrics.getBusy());
+            reporter.counter(prefix + "healthCheckErrors", metrics.getHealthCheckErrors());
+            reporter.histogram(prefix + "latency", metrics.getLatency());
+        });
+    }
+
+    /**
+     * @return all metrics as plain text, one line per metric.
+     */
+    public String dump() {
+        PlainTextReporter reporter = new PlainTextReporter();
+        report(reporter);
+        return reporter.getText();
+    }
+}
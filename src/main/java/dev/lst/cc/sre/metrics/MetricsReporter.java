@@ -0,0 +1,20 @@
+package dev.lst.cc.sre.metrics;
+
+/**
+ * Receives the current metrics, e.g. to print them or to push them to a monitoring system. Reporters are called on
+ * request (Metrics.report), so they decide themselves how often that happens.
+ */
+public interface MetricsReporter {
+
+    /**
+     * @param name  name of the counter, e.g. provider.&lt;uid&gt;.requests.
+     * @param value current value.
+     */
+    void counter(String name, long value);
+
+    /**
+     * @param name      name of the histogram, e.g. provider.&lt;uid&gt;.latency.
+     * @param histogram histogram to read count, mean and percentiles from.
+     */
+    void histogram(String name, Histogram histogram);
+}
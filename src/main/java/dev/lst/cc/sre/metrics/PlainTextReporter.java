@@ -0,0 +1,37 @@
+package dev.lst.cc.sre.metrics;
+
+/**
+ * Writes every metric as one line of plain text:
+ * <pre>
+ *     provider.a.requests 42
+ *     provider.a.latency count=42 mean=1200 p50=1151 p99=4095 p999=8191
+ * </pre>
+ * Latencies are in nanos.
+ */
+public class PlainTextReporter implements MetricsReporter {
+
+    private final StringBuilder text = new StringBuilder();
+
+    @Override
+    public void counter(String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public void histogram(String name, Histogram histogram) {
+        text.append(name)
+                .append(" count=").append(histogram.getCount())
+                .append(" mean=").append(Math.round(histogram.getMean()))
+                .append(" p50=").append(histogram.getValueAtPercentile(50))
+                .append(" p99=").append(histogram.getValueAtPercentile(99))
+                .append(" p999=").append(histogram.getValueAtPercentile(99.9))
+                .append('\n');
+    }
+
+    /**
+     * @return everything reported so far.
+     */
+    public String getText() {
+        return text.toString();
+    }
+}
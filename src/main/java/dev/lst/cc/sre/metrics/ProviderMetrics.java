@@ -0,0 +1,66 @@
+package dev.lst.cc.sre.metrics;
+
+/**
+ * Metrics of one provider, recorded by its ProviderRegistryItem. Every call lands in the latency histogram, so the
+ * requests are its count and need no counter of their own.
+ */
+public final class ProviderMetrics {
+
+    private final Counter errors = new Counter();
+    private final Counter busy = new Counter();
+    private final Counter healthCheckErrors = new Counter();
+    private final Histogram latency = new Histogram();
+
+    ProviderMetrics() {
+    }
+
+    /**
+     * @param latencyNanos response time of the call.
+     * @param failed       whether the call failed.
+     */
+    public void recordCall(long latencyNanos, boolean failed) {
+        if (!Metrics.INSTANCE.isEnabled()) {
+            return;
+        }
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(latencyNanos);
+    }
+
+    /**
+     * A call started that used up the concurrency limit, so the provider is BUSY and gets no further calls until one
+     * finishes.
+     */
+    public void recordBusy() {
+        if (Metrics.INSTANCE.isEnabled()) {
+            busy.increment();
+        }
+    }
+
+    public void recordHealthCheckError() {
+        if (Metrics.INSTANCE.isEnabled()) {
+            healthCheckErrors.increment();
+        }
+    }
+
+    public long getRequests() {
+        return latency.getCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getBusy() {
+        return busy.get();
+    }
+
+    public long getHealthCheckErrors() {
+        return healthCheckErrors.get();
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,55 @@
+package dev.lst.cc.sre.metrics;
+
+/**
+ * Metrics of the requests of the Loadbalancers using one strategy, from picking the provider until its answer.
+ * Requests that reached a provider land in the latency histogram, the requests are its count plus the unavailable
+ * ones.
+ */
+public final class StrategyMetrics {
+
+    private final Counter errors = new Counter();
+    private final Counter unavailable = new Counter();
+    private final Histogram latency = new Histogram();
+
+    StrategyMetrics() {
+    }
+
+    /**
+     * @param latencyNanos time of the request.
+     * @param failed       whether the provider call failed.
+     */
+    public void recordRequest(long latencyNanos, boolean failed) {
+        if (!Metrics.INSTANCE.isEnabled()) {
+            return;
+        }
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(latencyNanos);
+    }
+
+    /**
+     * A request failed with a ServiceUnavailableException, since no provider was available.
+     */
+    public void recordUnavailable() {
+        if (Metrics.INSTANCE.isEnabled()) {
+            unavailable.increment();
+        }
+    }
+
+    public long getRequests() {
+        return latency.getCount() + unavailable.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getUnavailable() {
+        return unavailable.get();
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,16 @@
+package dev.lst.cc.sre.provider;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provider that can answer without blocking the calling thread.
+ */
+public interface AsyncProvider extends Provider {
+
+    /**
+     * Executes the get operation asynchronously.
+     *
+     * @return future completing with the uid of the provider, or exceptionally if the call failed.
+     */
+    CompletableFuture<String> getAsync();
+}
@@ -0,0 +1,17 @@
+package dev.lst.cc.sre.provider;
+
+import java.util.List;
+
+/**
+ * Provider that can answer several requests with one call, e.g. one round trip instead of one per request.
+ */
+public interface BatchProvider extends Provider {
+
+    /**
+     * Executes the get operation for several requests at once.
+     *
+     * @param requests number of requests in the batch, at least 1.
+     * @return one answer per request, in the order of the requests.
+     */
+    List<String> getBatch(int requests);
+}
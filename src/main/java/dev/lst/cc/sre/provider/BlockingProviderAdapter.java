@@ -0,0 +1,127 @@
+package dev.lst.cc.sre.provider;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Makes a synchronous Provider usable as an AsyncProvider by running its get() on an executor. The executor should be
+ * bounded: if it rejects a call, the returned future fails with the RejectedExecutionException instead of the caller
+ * piling up more work.
+ * <p>
+ * A call whose future is completed before the provider answered, e.g. by orTimeout() or cancel(), is interrupted, or
+ * never started if it is still queued, so a hanging provider doesn't hold on to a thread of the executor.
+ */
+public class BlockingProviderAdapter implements AsyncProvider {
+
+    private static final int DEFAULT_THREADS = 64;
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final Provider provider;
+    private final Executor executor;
+
+    /**
+     * Adapter running on the shared default executor (64 threads, up to 1024 queued calls).
+     *
+     * @param provider provider to wrap.
+     */
+    public BlockingProviderAdapter(Provider provider) {
+        this(provider, DefaultExecutorHolder.EXECUTOR);
+    }
+
+    public BlockingProviderAdapter(Provider provider, Executor executor) {
+        this.provider = provider;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync() {
+        try {
+            return supplyInterruptibly(provider::get, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Like CompletableFuture.supplyAsync(), but completing the returned future before the call finished interrupts
+     * the thread running it.
+     *
+     * @param call     blocking call.
+     * @param executor executor to run the call on.
+     * @return future with the result of the call.
+     * @throws RejectedExecutionException if the executor rejects the call.
+     */
+    public static <T> CompletableFuture<T> supplyInterruptibly(Supplier<T> call, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<T> task = new FutureTask<>(call::get) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    result.complete(get());
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    // done() runs once the task finished, so get() does not block
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.execute(task);
+        // a no-op if the task finished already
+        result.whenComplete((value, failure) -> task.cancel(true));
+        return result;
+    }
+
+    @Override
+    public String get() {
+        return provider.get();
+    }
+
+    @Override
+    public ProviderHealthCheckStatus healthCheck() {
+        return provider.healthCheck();
+    }
+
+    @Override
+    public String getUid() {
+        return provider.getUid();
+    }
+
+    @Override
+    public String getZone() {
+        return provider.getZone();
+    }
+
+    // only created when the first adapter without an own executor is created
+    private static final class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(DEFAULT_QUEUE_SIZE), new DaemonThreadFactory());
+
+        static {
+            ((ThreadPoolExecutor) EXECUTOR).allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "provider-call-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -5,9 +5,15 @@ package dev.lst.cc.sre.provider;
  */
 public class InMemoryProvider implements Provider {
     private final String uid;
+    private final String zone;
 
     public InMemoryProvider(String uid) {
+        this(uid, DEFAULT_ZONE);
+    }
+
+    public InMemoryProvider(String uid, String zone) {
         this.uid = uid;
+        this.zone = zone;
     }
 
     public String get() {
@@ -22,4 +28,9 @@ public class InMemoryProvider implements Provider {
     public String getUid() {
         return this.uid;
     }
+
+    @Override
+    public String getZone() {
+        return zone;
+    }
 }
@@ -4,6 +4,12 @@ package dev.lst.cc.sre.provider;
  * Interface defining a Provider.
  */
 public interface Provider {
+
+    /**
+     * Zone of providers that don't tell where they run.
+     */
+    String DEFAULT_ZONE = "default";
+
     /**
      * Executes the get operation.
      *
@@ -24,4 +30,14 @@ public interface Provider {
      * @return Uid.
      */
     public String getUid();
+
+    /**
+     * Zone (e.g. availability zone or data center) the provider runs in, used by the ZoneAwareLBStrategy to prefer
+     * providers close to the caller.
+     *
+     * @return zone.
+     */
+    default String getZone() {
+        return DEFAULT_ZONE;
+    }
 }
@@ -1,11 +1,15 @@
 package dev.lst.cc.sre.provider;
 
 /**
- * Overall status of a Provider.
+ * Overall status of a Provider. OK and BUSY are the closed states of the circuit breaker, OPEN and HALF_OPEN the
+ * other two. EJECTED is set by the outlier detection from the live calls.
  */
 public enum ProviderStatus {
     OK,
     BUSY,
     EXCLUDED,
-    PENDING;
+    PENDING,
+    OPEN,
+    HALF_OPEN,
+    EJECTED;
 }
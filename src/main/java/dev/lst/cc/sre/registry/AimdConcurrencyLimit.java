@@ -0,0 +1,64 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease. Every call that failed or took longer than the latency threshold cuts
+ * the limit by the backoff ratio, every other call adds one, but only while the provider actually uses at least half
+ * of its limit. Otherwise an idle provider would grow its limit without ever having proven it can take the load.
+ */
+public class AimdConcurrencyLimit implements ConcurrencyLimit {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 10;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    public static final long DEFAULT_LATENCY_THRESHOLD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final AtomicDouble limit;
+
+    public AimdConcurrencyLimit() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO,
+                DEFAULT_LATENCY_THRESHOLD_NANOS);
+    }
+
+    /**
+     * @param initialLimit          limit before the first sample.
+     * @param minLimit              lower bound of the limit, at least 1.
+     * @param maxLimit              upper bound of the limit.
+     * @param backoffRatio          factor applied on a failed or slow call, between 0.5 and 1 (exclusive).
+     * @param latencyThresholdNanos calls taking longer count like failed ones.
+     */
+    public AimdConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                long latencyThresholdNanos) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio < 0.5 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0.5 and 1 but was " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = new AtomicDouble(initialLimit);
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit.get();
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inflight, boolean dropped) {
+        if (dropped || rttNanos > latencyThresholdNanos) {
+            limit.updateAndGet(current -> Math.max(minLimit, current * backoffRatio));
+        } else if (inflight * 2 >= getLimit()) {
+            limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+        }
+    }
+}
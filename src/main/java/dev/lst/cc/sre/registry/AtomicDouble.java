@@ -0,0 +1,30 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Double value that is updated with compare-and-set on its bits, for the adaptive limits.
+ */
+final class AtomicDouble {
+
+    private final AtomicLong bits;
+
+    AtomicDouble(double initialValue) {
+        this.bits = new AtomicLong(Double.doubleToRawLongBits(initialValue));
+    }
+
+    double get() {
+        return Double.longBitsToDouble(bits.get());
+    }
+
+    double updateAndGet(DoubleUnaryOperator update) {
+        while (true) {
+            long current = bits.get();
+            double next = update.applyAsDouble(Double.longBitsToDouble(current));
+            if (bits.compareAndSet(current, Double.doubleToRawLongBits(next))) {
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settings and bookkeeping of the circuit breaker of one provider. The state itself (OK/BUSY as closed, OPEN and
+ * HALF_OPEN) is part of the status of the ProviderRegistryItem, this class only decides when to switch:
+ * <ul>
+ *     <li>closed: outcomes go into a sliding window. Once it holds at least minimumCalls calls and the failure rate or
+ *     the slow call rate reaches its threshold, the breaker opens.</li>
+ *     <li>open: the provider gets no calls. After openNanos the registry moves it to half-open.</li>
+ *     <li>half-open: up to halfOpenProbes calls run at the same time. A failed probe opens the breaker again, after
+ *     halfOpenProbes successful probes it closes.</li>
+ * </ul>
+ */
+public final class CircuitBreaker {
+
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    public static final int DEFAULT_FAILURE_RATE_PERCENT = 50;
+    public static final long DEFAULT_SLOW_CALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    public static final int DEFAULT_SLOW_CALL_RATE_PERCENT = 80;
+    public static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    public static final long DEFAULT_OPEN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    public static final int DEFAULT_HALF_OPEN_PROBES = 3;
+
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallNanos;
+    private final int slowCallRatePercent;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    private final SlidingWindow window;
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    public CircuitBreaker() {
+        this(DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE_PERCENT, DEFAULT_SLOW_CALL_NANOS,
+                DEFAULT_SLOW_CALL_RATE_PERCENT, DEFAULT_WINDOW_NANOS, DEFAULT_OPEN_NANOS, DEFAULT_HALF_OPEN_PROBES);
+    }
+
+    /**
+     * @param minimumCalls        calls the window needs before the rates are looked at.
+     * @param failureRatePercent  failure rate that opens the breaker, 1 to 100.
+     * @param slowCallNanos       calls taking at least this long count as slow.
+     * @param slowCallRatePercent slow call rate that opens the breaker, 1 to 100.
+     * @param windowNanos         length of the sliding window.
+     * @param openNanos           time the breaker stays open before probing the provider.
+     * @param halfOpenProbes      concurrent probes while half-open, and successful probes needed to close.
+     */
+    public CircuitBreaker(int minimumCalls, int failureRatePercent, long slowCallNanos, int slowCallRatePercent,
+                          long windowNanos, long openNanos, int halfOpenProbes) {
+        if (minimumCalls < 1 || halfOpenProbes < 1) {
+            throw new IllegalArgumentException("minimumCalls and halfOpenProbes must be at least 1");
+        }
+        if (failureRatePercent < 1 || failureRatePercent > 100 || slowCallRatePercent < 1 || slowCallRatePercent > 100) {
+            throw new IllegalArgumentException("rate thresholds must be between 1 and 100 percent");
+        }
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallNanos = slowCallNanos;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.window = new SlidingWindow(windowNanos);
+        this.openNanos = openNanos;
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    public long getOpenNanos() {
+        return openNanos;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    /**
+     * Records the outcome of a call while closed.
+     *
+     * @return true if the breaker should open.
+     */
+    boolean recordClosed(boolean failure, long durationNanos, long nowNanos) {
+        window.record(failure, durationNanos >= slowCallNanos, nowNanos);
+        SlidingWindow.Totals totals = window.totals(nowNanos);
+        if (totals.calls() < minimumCalls) {
+            return false;
+        }
+        return totals.failures() * 100L >= (long) failureRatePercent * totals.calls()
+                || totals.slowCalls() * 100L >= (long) slowCallRatePercent * totals.calls();
+    }
+
+    /**
+     * Records a successful probe while half-open.
+     *
+     * @return true if enough probes succeeded to close the breaker.
+     */
+    boolean recordProbeSuccess() {
+        return probeSuccesses.incrementAndGet() >= halfOpenProbes;
+    }
+
+    /**
+     * Starts over with an empty window and no successful probes, done on every state change.
+     */
+    void reset() {
+        window.reset();
+        probeSuccesses.set(0);
+    }
+}
@@ -0,0 +1,24 @@
+package dev.lst.cc.sre.registry;
+
+/**
+ * Limit of concurrent calls for a single provider. Once a provider has that many calls ongoing, it goes to BUSY and
+ * doesn't get new requests until calls finish.
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * @return current limit of concurrent calls, at least 1.
+     */
+    int getLimit();
+
+    /**
+     * Called after every finished call of the provider, so adaptive limits can follow the observed latency. Called
+     * concurrently from all threads executing calls.
+     *
+     * @param rttNanos response time of the call.
+     * @param inflight ongoing calls of the provider when the call started, including itself.
+     * @param dropped  true if the call failed.
+     */
+    default void onSample(long rttNanos, int inflight, boolean dropped) {
+    }
+}
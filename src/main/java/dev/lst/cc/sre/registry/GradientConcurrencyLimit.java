@@ -0,0 +1,95 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delay based limit in the style of TCP Vegas. The smallest response time seen is taken as the latency of the provider
+ * without any queueing. The gradient minRtt / rtt (between 0.5 and 1) tells how much of the current response time is
+ * queueing, and the limit follows
+ * <pre>
+ *     newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * where the square root is the queue we allow on top, so the limit keeps probing upwards. The new limit is blended in
+ * with the smoothing factor to not overreact to single samples.
+ * <p>
+ * A provider that really gets slower (not just queues) would be pushed to the minimum limit forever, since its old
+ * minRtt can never be reached again. So every probeInterval samples the limit drops to its queue size and the minRtt
+ * is measured again from scratch.
+ */
+public class GradientConcurrencyLimit implements ConcurrencyLimit {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 10;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    public static final double DEFAULT_SMOOTHING = 0.2;
+    public static final int DEFAULT_PROBE_INTERVAL = 1000;
+
+    private static final double MIN_GRADIENT = 0.5;
+    private static final long NO_MIN_RTT = Long.MAX_VALUE;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final int probeInterval;
+    private final AtomicDouble limit;
+    private final AtomicLong minRttNanos = new AtomicLong(NO_MIN_RTT);
+    private final AtomicLong samples = new AtomicLong();
+
+    public GradientConcurrencyLimit() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_SMOOTHING, DEFAULT_PROBE_INTERVAL);
+    }
+
+    /**
+     * @param initialLimit  limit before the first sample.
+     * @param minLimit      lower bound of the limit, at least 1.
+     * @param maxLimit      upper bound of the limit.
+     * @param smoothing     weight of a new limit estimate, between 0 (exclusive) and 1.
+     * @param probeInterval samples between two new measurements of the minRtt.
+     */
+    public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double smoothing, int probeInterval) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("smoothing must be between 0 and 1 but was " + smoothing);
+        }
+        if (probeInterval < 1) {
+            throw new IllegalArgumentException("probeInterval must be at least 1 but was " + probeInterval);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.probeInterval = probeInterval;
+        this.limit = new AtomicDouble(initialLimit);
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit.get();
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inflight, boolean dropped) {
+        if (samples.incrementAndGet() % probeInterval == 0) {
+            limit.updateAndGet(current -> Math.max(minLimit, queueSize(current)));
+            minRttNanos.set(NO_MIN_RTT);
+            return;
+        }
+        long rtt = Math.max(1, rttNanos);
+        long minRtt = minRttNanos.accumulateAndGet(rtt, Math::min);
+        // a provider using less than half of its limit does not tell us anything about a higher one
+        if (!dropped && inflight * 2 < getLimit()) {
+            return;
+        }
+        double gradient = dropped ? MIN_GRADIENT : Math.max(MIN_GRADIENT, Math.min(1.0, (double) minRtt / rtt));
+        limit.updateAndGet(current -> {
+            double estimate = current * gradient + queueSize(current);
+            double smoothed = current * (1 - smoothing) + estimate * smoothing;
+            return Math.max(minLimit, Math.min(maxLimit, smoothed));
+        });
+    }
+
+    private static double queueSize(double limit) {
+        return Math.sqrt(limit);
+    }
+}
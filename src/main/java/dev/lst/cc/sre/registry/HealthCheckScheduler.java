@@ -0,0 +1,366 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
+
+/**
+ * Runs the health checks of all providers with a fixed amount of threads, no matter how many providers there are.
+ * <p>
+ * Due checks are kept in a hashed timing wheel: a ring of WHEEL_SIZE buckets, one per tick, that a single thread walks
+ * through. An entry due further away than one turn of the wheel just counts down its remaining rounds. Adding an entry
+ * only puts it into a concurrent queue that the wheel thread empties on its next tick, so the buckets themselves are
+ * only ever touched by that thread. The wheel holds one entry per provider plus one timeout per running check, so its
+ * size is bounded by the amount of providers.
+ * <p>
+ * The checks themselves run on a small pool of workers with a bounded queue:
+ * <ul>
+ *     <li>the first check of a provider is at a random time within the initial delay, and every following one has
+ *     up to 10% jitter on the period, so checks of providers registered together spread out instead of firing in
+ *     lockstep.</li>
+ *     <li>a check still running when the next one is due is not started twice, so a hanging provider blocks at most one
+ *     worker.</li>
+ *     <li>a check running longer than the timeout counts as failed and its worker is interrupted.</li>
+ *     <li>checks that don't fit into the queue are skipped for this period.</li>
+ * </ul>
+ */
+public final class HealthCheckScheduler {
+
+    public static final long DEFAULT_INITIAL_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    public static final long DEFAULT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(30);
+    public static final long DEFAULT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    public static final int DEFAULT_WORKERS = 4;
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final double PERIOD_JITTER = 0.1;
+
+    private final long initialDelayNanos;
+    private final long periodNanos;
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final long startNanos;
+
+    private final List<ArrayDeque<Entry>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong skippedChecks = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+    private final ThreadPoolExecutor workers;
+    private final Thread wheelThread;
+    private long tick;
+
+    public HealthCheckScheduler() {
+        this(DEFAULT_INITIAL_DELAY_NANOS, DEFAULT_PERIOD_NANOS, DEFAULT_TIMEOUT_NANOS, DEFAULT_WORKERS,
+                DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * @param initialDelayNanos the first check of a provider is at a random time between now and this delay.
+     * @param periodNanos       time between two checks of a provider.
+     * @param timeoutNanos      checks running longer count as failed.
+     * @param workers           threads running checks.
+     * @param tickNanos         resolution of the timing wheel, checks are due up to one tick late.
+     */
+    public HealthCheckScheduler(long initialDelayNanos, long periodNanos, long timeoutNanos, int workers,
+                                long tickNanos) {
+        if (periodNanos <= 0 || timeoutNanos <= 0 || tickNanos <= 0 || initialDelayNanos < 0 || workers < 1) {
+            throw new IllegalArgumentException("delays must be positive and there must be at least one worker");
+        }
+        this.initialDelayNanos = initialDelayNanos;
+        this.periodNanos = periodNanos;
+        this.timeoutNanos = timeoutNanos;
+        this.tickNanos = tickNanos;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "health-check-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startNanos = System.nanoTime();
+        this.wheelThread = new Thread(this::runWheel, "health-check-wheel");
+        this.wheelThread.setDaemon(true);
+        this.wheelThread.start();
+    }
+
+    /**
+     * @return scheduler shared by all registries that are not given one of their own, so the amount of health check
+     * threads stays the same no matter how many pools there are.
+     */
+    public static HealthCheckScheduler shared() {
+        return SharedHolder.SCHEDULER;
+    }
+
+    /**
+     * Starts the periodic health checks of a provider.
+     *
+     * @param item provider to check.
+     * @return registration to stop the checks with.
+     */
+    public Registration schedule(ProviderRegistryItem item) {
+        long delay = initialDelayNanos == 0 ? 0 : ThreadLocalRandom.current().nextLong(initialDelayNanos);
+        PeriodicCheck check = new PeriodicCheck(item, System.nanoTime() + delay);
+        add(check);
+        return check;
+    }
+
+    /**
+     * Runs a short task once after the given delay, on the thread of the wheel. Meant for cheap state changes like
+     * moving a circuit breaker to half-open, everything else belongs onto an executor.
+     *
+     * @param task       task to run.
+     * @param delayNanos delay before running it.
+     */
+    public void scheduleOnce(Runnable task, long delayNanos) {
+        add(new OneShot(task, System.nanoTime() + delayNanos));
+    }
+
+    /**
+     * @return checks that were skipped because the workers could not keep up.
+     */
+    public long getSkippedChecks() {
+        return skippedChecks.get();
+    }
+
+    /**
+     * @return tasks run on the wheel (see scheduleOnce()) that failed with an exception.
+     */
+    public long getFailedTasks() {
+        return failedTasks.get();
+    }
+
+    /**
+     * @return entries in the wheel, including the ones waiting to be put into it.
+     */
+    int getEntryCount() {
+        return entries.get();
+    }
+
+    /**
+     * Stops the wheel and the workers. Running checks are interrupted.
+     */
+    public void shutdown() {
+        wheelThread.interrupt();
+        workers.shutdownNow();
+    }
+
+    private void add(Entry entry) {
+        entries.incrementAndGet();
+        added.add(entry);
+    }
+
+    private void runWheel() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleep = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+            transferAdded();
+            expire(wheel.get((int) (tick & MASK)));
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Entry entry;
+        while ((entry = added.poll()) != null) {
+            // bucket t is expired at startNanos + (t + 1) * tickNanos, entries already due go into the current one
+            long dueTick = Math.max(tick, ceilDiv(entry.deadlineNanos - startNanos, tickNanos) - 1);
+            entry.rounds = (dueTick - tick) / WHEEL_SIZE;
+            wheel.get((int) (dueTick & MASK)).add(entry);
+        }
+    }
+
+    private void expire(ArrayDeque<Entry> bucket) {
+        Iterator<Entry> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isCancelled()) {
+                iterator.remove();
+                entries.decrementAndGet();
+            } else if (entry.rounds > 0) {
+                entry.rounds--;
+            } else {
+                iterator.remove();
+                entries.decrementAndGet();
+                try {
+                    entry.expire();
+                } catch (RuntimeException e) {
+                    // a failing entry must not stop the wheel, it is reported like an uncaught exception instead
+                    failedTasks.incrementAndGet();
+                    Thread wheelThread = Thread.currentThread();
+                    wheelThread.getUncaughtExceptionHandler().uncaughtException(wheelThread, e);
+                }
+            }
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private long nextPeriod() {
+        long jitter = (long) (periodNanos * PERIOD_JITTER);
+        return periodNanos + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+    }
+
+    /**
+     * Handle of the periodic checks of one provider.
+     */
+    public interface Registration {
+
+        /**
+         * Stops the checks. A check that is already running still finishes.
+         */
+        void cancel();
+    }
+
+    private abstract static class Entry {
+        long deadlineNanos;
+        long rounds;
+
+        Entry(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        abstract boolean isCancelled();
+
+        abstract void expire();
+    }
+
+    private final class PeriodicCheck extends Entry implements Registration {
+        private final ProviderRegistryItem item;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        PeriodicCheck(ProviderRegistryItem item, long deadlineNanos) {
+            super(deadlineNanos);
+            this.item = item;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        void expire() {
+            // due again next period, the entry is reused so a provider never has more than one in the wheel
+            // a wheel that fell behind (e.g. a stopped JVM) does not try to catch up on all missed checks
+            deadlineNanos = Math.max(deadlineNanos + nextPeriod(), System.nanoTime());
+            add(this);
+            if (!running.compareAndSet(false, true)) {
+                skippedChecks.incrementAndGet();
+                return;
+            }
+            CheckRun run = new CheckRun(this);
+            try {
+                run.future = workers.submit(run);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+                skippedChecks.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * One execution of a check. Whoever comes first, the check or its timeout, reports the result. The timeout starts
+     * when a worker picks the check up, time spent in the queue behind other checks does not count.
+     */
+    private final class CheckRun extends Entry implements Runnable {
+        private final PeriodicCheck check;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Future<?> future;
+
+        CheckRun(PeriodicCheck check) {
+            super(0);
+            this.check = check;
+        }
+
+        @Override
+        public void run() {
+            deadlineNanos = System.nanoTime() + timeoutNanos;
+            add(this);
+            try {
+                ProviderHealthCheckStatus health;
+                try {
+                    health = check.item.callHealthCheck();
+                } catch (RuntimeException e) {
+                    health = ProviderHealthCheckStatus.ERROR;
+                }
+                if (done.compareAndSet(false, true)) {
+                    check.item.applyHealthCheck(health);
+                }
+            } finally {
+                check.running.set(false);
+            }
+        }
+
+        @Override
+        boolean isCancelled() {
+            return done.get();
+        }
+
+        @Override
+        void expire() {
+            if (done.compareAndSet(false, true)) {
+                Future<?> running = future;
+                if (running != null) {
+                    running.cancel(true);
+                }
+                check.item.applyHealthCheck(ProviderHealthCheckStatus.ERROR);
+            }
+        }
+    }
+
+    private static final class OneShot extends Entry {
+        private final Runnable task;
+
+        OneShot(Runnable task, long deadlineNanos) {
+            super(deadlineNanos);
+            this.task = task;
+        }
+
+        @Override
+        boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        void expire() {
+            task.run();
+        }
+    }
+
+    // only created when the first registry without an own scheduler is created
+    private static final class SharedHolder {
+        private static final HealthCheckScheduler SCHEDULER = new HealthCheckScheduler();
+    }
+}
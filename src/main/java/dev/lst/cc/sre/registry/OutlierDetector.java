@@ -0,0 +1,197 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import dev.lst.cc.sre.provider.ProviderStatus;
+
+import static dev.lst.cc.sre.provider.ProviderStatus.BUSY;
+import static dev.lst.cc.sre.provider.ProviderStatus.OK;
+
+/**
+ * Passive health checking from the live calls, in the style of the Envoy outlier detection. A provider is EJECTED
+ * <ul>
+ *     <li>right away once it failed consecutiveErrors calls in a row, or</li>
+ *     <li>by the sweep every intervalNanos, if its latency is more than stdevFactor standard deviations above the mean
+ *     latency of the pool.</li>
+ * </ul>
+ * An ejected provider comes back after baseEjectionNanos, doubled for every ejection it already had (up to
+ * maxEjectionNanos). A provider that stays healthy for a sweep gets one ejection forgiven. Never more than
+ * maxEjectionPercent of the pool is ejected at the same time, but always at least one provider may be.
+ * <p>
+ * The calls themselves only count their consecutive errors in the item, everything else runs on the rare path of an
+ * ejection or in the sweep on the thread of the timing wheel.
+ */
+public final class OutlierDetector {
+
+    public static final int DEFAULT_CONSECUTIVE_ERRORS = 5;
+    public static final long DEFAULT_BASE_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(30);
+    public static final long DEFAULT_MAX_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(300);
+    public static final int DEFAULT_MAX_EJECTION_PERCENT = 10;
+    public static final long DEFAULT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    public static final double DEFAULT_STDEV_FACTOR = 1.9;
+    public static final int DEFAULT_MINIMUM_HOSTS = 5;
+
+    private final HealthCheckScheduler scheduler;
+    private final Supplier<Collection<ProviderRegistryItem>> pool;
+    private final int consecutiveErrors;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final int maxEjectionPercent;
+    private final long intervalNanos;
+    private final double stdevFactor;
+    private final int minimumHosts;
+    private final AtomicInteger ejected = new AtomicInteger();
+    private volatile boolean stopped;
+
+    /**
+     * @param scheduler scheduler to bring providers back and to run the sweep on.
+     * @param pool      all registered providers.
+     */
+    public OutlierDetector(HealthCheckScheduler scheduler, Supplier<Collection<ProviderRegistryItem>> pool) {
+        this(scheduler, pool, DEFAULT_CONSECUTIVE_ERRORS, DEFAULT_BASE_EJECTION_NANOS, DEFAULT_MAX_EJECTION_NANOS,
+                DEFAULT_MAX_EJECTION_PERCENT, DEFAULT_INTERVAL_NANOS, DEFAULT_STDEV_FACTOR, DEFAULT_MINIMUM_HOSTS);
+    }
+
+    /**
+     * @param scheduler          scheduler to bring providers back and to run the sweep on.
+     * @param pool               all registered providers.
+     * @param consecutiveErrors  failed calls in a row that eject a provider.
+     * @param baseEjectionNanos  duration of the first ejection.
+     * @param maxEjectionNanos   upper bound of the duration of an ejection.
+     * @param maxEjectionPercent share of the pool that may be ejected at the same time.
+     * @param intervalNanos      time between two sweeps for latency outliers.
+     * @param stdevFactor        standard deviations above the mean latency that make a provider an outlier.
+     * @param minimumHosts       providers with latency samples the sweep needs for meaningful statistics.
+     */
+    public OutlierDetector(HealthCheckScheduler scheduler, Supplier<Collection<ProviderRegistryItem>> pool,
+                           int consecutiveErrors, long baseEjectionNanos, long maxEjectionNanos,
+                           int maxEjectionPercent, long intervalNanos, double stdevFactor, int minimumHosts) {
+        if (consecutiveErrors < 1 || maxEjectionPercent < 0 || maxEjectionPercent > 100 || minimumHosts < 2) {
+            throw new IllegalArgumentException("invalid outlier detection settings");
+        }
+        this.scheduler = scheduler;
+        this.pool = pool;
+        this.consecutiveErrors = consecutiveErrors;
+        this.baseEjectionNanos = baseEjectionNanos;
+        this.maxEjectionNanos = maxEjectionNanos;
+        this.maxEjectionPercent = maxEjectionPercent;
+        this.intervalNanos = intervalNanos;
+        this.stdevFactor = stdevFactor;
+        this.minimumHosts = minimumHosts;
+        scheduler.scheduleOnce(this::sweep, intervalNanos);
+    }
+
+    /**
+     * Called by an item for every failed call.
+     *
+     * @param item   provider that failed.
+     * @param errors failed calls in a row, including this one.
+     */
+    void onError(ProviderRegistryItem item, int errors) {
+        // the counter starts over with every ejection, a provider denied by the guard tries again with its next error
+        if (errors >= consecutiveErrors) {
+            eject(item);
+        }
+    }
+
+    /**
+     * Ejects the provider if it is in use (OK or BUSY) and the max ejection percentage allows it. The ejected
+     * providers are counted, an ejection first reserves its place in the count with a CAS, so concurrent ejections
+     * can't together get past the guard. The item gives the place back once its ejection ends or it is removed.
+     *
+     * @return true if the provider was ejected.
+     */
+    boolean eject(ProviderRegistryItem item) {
+        ProviderStatus status = item.getStatus();
+        if (status != OK && status != BUSY) {
+            return false;
+        }
+        long allowed = (long) maxEjectionPercent * pool.get().size();
+        int current;
+        do {
+            current = ejected.get();
+            if (current > 0 && (current + 1) * 100L > allowed) {
+                return false;
+            }
+        } while (!ejected.compareAndSet(current, current + 1));
+        long ejection = item.eject(this);
+        if (ejection == 0) {
+            ejected.decrementAndGet();
+            return false;
+        }
+        int ejections = item.incrementEjections();
+        long duration = Math.min(maxEjectionNanos, baseEjectionNanos << Math.min(ejections - 1, 30));
+        scheduler.scheduleOnce(() -> item.uneject(ejection), duration);
+        return true;
+    }
+
+    /**
+     * Called by an item whose ejection ended, exactly once per ejection.
+     */
+    void ejectionEnded() {
+        ejected.decrementAndGet();
+    }
+
+    /**
+     * @return providers currently ejected.
+     */
+    int getEjectedCount() {
+        return ejected.get();
+    }
+
+    /**
+     * Looks for latency outliers and forgives one ejection of every provider that was healthy since the last sweep.
+     */
+    void sweep() {
+        try {
+            long now = System.nanoTime();
+            double sum = 0;
+            double sumOfSquares = 0;
+            int hosts = 0;
+            for (ProviderRegistryItem item : pool.get()) {
+                double latency = item.getLatencyEwmaNanos(now);
+                if (isInUse(item) && latency > 0) {
+                    sum += latency;
+                    sumOfSquares += latency * latency;
+                    hosts++;
+                }
+            }
+            double threshold = Double.MAX_VALUE;
+            if (hosts >= minimumHosts) {
+                double mean = sum / hosts;
+                double stdev = Math.sqrt(Math.max(0, sumOfSquares / hosts - mean * mean));
+                threshold = mean + stdevFactor * stdev;
+            }
+            for (ProviderRegistryItem item : pool.get()) {
+                if (!isInUse(item)) {
+                    continue;
+                }
+                if (item.getLatencyEwmaNanos(now) > threshold) {
+                    eject(item);
+                } else if (item.getConsecutiveErrors() == 0) {
+                    item.forgiveEjection();
+                }
+            }
+        } finally {
+            if (!stopped) {
+                scheduler.scheduleOnce(this::sweep, intervalNanos);
+            }
+        }
+    }
+
+    /**
+     * Stops the sweeps, so a registry that is no longer used doesn't keep running them on a shared scheduler.
+     * Ejections that are already scheduled still end.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    private static boolean isInUse(ProviderRegistryItem item) {
+        ProviderStatus status = item.getStatus();
+        return status == OK || status == BUSY;
+    }
+}
@@ -0,0 +1,72 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free, peak sensitive exponentially weighted moving average of response times. A sample higher than the current
+ * average replaces it right away (so a provider that gets slow is penalized immediately), lower samples are blended in
+ * with a weight depending on the time since the last sample. While no samples come in, the value decays towards zero
+ * so idle providers get tried again eventually.
+ * <p>
+ * The average is kept as the bits of a double in an AtomicLong. The time of the last sample is a separate volatile
+ * field, so a concurrent reader might combine a new average with an old time stamp. That only makes the decay slightly
+ * off for a moment, which is fine for load balancing.
+ */
+public final class PeakEwma {
+
+    static final long DEFAULT_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final double decayNanos;
+    private final AtomicLong averageBits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+    private volatile long lastUpdateNanos;
+
+    public PeakEwma() {
+        this(DEFAULT_DECAY_NANOS);
+    }
+
+    /**
+     * @param decayNanos time constant of the decay. After this time without samples, the average is down to 1/e.
+     */
+    public PeakEwma(long decayNanos) {
+        this.decayNanos = decayNanos;
+        this.lastUpdateNanos = System.nanoTime();
+    }
+
+    /**
+     * Records a response time.
+     *
+     * @param rttNanos   response time.
+     * @param nowNanos   current System.nanoTime().
+     */
+    public void observe(long rttNanos, long nowNanos) {
+        while (true) {
+            long bits = averageBits.get();
+            double current = Double.longBitsToDouble(bits);
+            double next;
+            if (rttNanos > current) {
+                next = rttNanos;
+            } else {
+                double weight = weight(nowNanos - lastUpdateNanos);
+                next = current * weight + rttNanos * (1 - weight);
+            }
+            if (averageBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                lastUpdateNanos = nowNanos;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param nowNanos current System.nanoTime().
+     * @return average response time in nanos, decayed by the time since the last sample. 0 if there was no sample yet.
+     */
+    public double get(long nowNanos) {
+        double current = Double.longBitsToDouble(averageBits.get());
+        return current == 0.0 ? 0.0 : current * weight(nowNanos - lastUpdateNanos);
+    }
+
+    private double weight(long elapsedNanos) {
+        return elapsedNanos <= 0 ? 1.0 : Math.exp(-elapsedNanos / decayNanos);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.lst.cc.sre.registry;
+
+/**
+ * Gets notified when the status or the weight of a ProviderRegistryItem changes. Used by the registry to keep its
+ * snapshot of active providers up to date.
+ */
+interface ProviderChangeListener {
+
+    /**
+     * Called after the status or the weight of the item has changed.
+     *
+     * @param item item that changed.
+     */
+    void providerChanged(ProviderRegistryItem item);
+}
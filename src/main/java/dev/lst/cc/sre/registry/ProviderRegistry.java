@@ -1,31 +1,79 @@
 package dev.lst.cc.sre.registry;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
+import dev.lst.cc.sre.metrics.Metrics;
 import dev.lst.cc.sre.provider.ProviderStatus;
 
 /**
- * Provider Registry. Keeps a list of providers available. Is implemented as a singleton since we should always use only
- * one instance.
+ * Provider Registry. Keeps a list of providers available, one registry per pool of providers (e.g. per region or per
+ * service). INSTANCE is the default pool, further pools are created with a name of their own. All registries share one
+ * HealthCheckScheduler unless they are given their own, so the threads running health checks don't grow with the
+ * amount of pools.
+ * <p>
+ * Providers are indexed by uid in a ConcurrentHashMap, so the admin operations find a provider without scanning and
+ * without the lock. The snapshot of active providers is kept in order of priority tier and registration and is never
+ * rebuilt from scratch: every change of a provider only inserts, drops or reweighs that one provider, so pools of
+ * thousands of providers don't pay for every status change with a pass over all of them.
+ * <p>
+ * Besides the active health checks, the OutlierDetector ejects providers that fail or lag behind the rest of the pool
+ * in the live calls.
  */
-public enum ProviderRegistry {
-    INSTANCE;
+public final class ProviderRegistry {
 
     private static final int MAX_PROVIDERS = 10;
-    private static final int HEARTBEAT_PERIOD_SECONDS = 30;
-    private final List<ProviderRegistryItem> providerRegistryItems;
+
+    /**
+     * The default pool, used by the INSTANCE of every strategy.
+     */
+    public static final ProviderRegistry INSTANCE = new ProviderRegistry("default");
+
+    private final String name;
+    private volatile int maxProviders = MAX_PROVIDERS;
+    private final Map<String, ProviderRegistryItem> providersByUid = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sizeByZone = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray sizeByPriority = new AtomicIntegerArray(ProviderRegistryItem.MAX_PRIORITY + 1);
+    private final Map<String, HealthCheckScheduler.Registration> heartbeats = new ConcurrentHashMap<>();
+    private final Queue<Change> changedProviders = new ConcurrentLinkedQueue<>();
+    private long registrationSequence;
     private final ReentrantLock lock = new ReentrantLock();
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(MAX_PROVIDERS);
+    private final HealthCheckScheduler healthChecks;
+    private final OutlierDetector outlierDetector;
+    private final ProviderChangeListener changeListener = this::providerChanged;
+    private volatile ProviderSnapshot activeSnapshot = ProviderSnapshot.EMPTY;
+    private volatile ProviderSnapshot registeredSnapshot = ProviderSnapshot.EMPTY;
+
+    /**
+     * @param name name of the pool, used to tell the metrics of pools apart.
+     */
+    public ProviderRegistry(String name) {
+        this(name, HealthCheckScheduler.shared());
+    }
 
-    ProviderRegistry() {
-        providerRegistryItems = new ArrayList<>();
+    /**
+     * @param name         name of the pool, used to tell the metrics of pools apart.
+     * @param healthChecks scheduler running the health checks and outlier detection of the pool.
+     */
+    public ProviderRegistry(String name, HealthCheckScheduler healthChecks) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("a registry needs a name");
+        }
+        this.name = name;
+        this.healthChecks = healthChecks;
+        this.outlierDetector = new OutlierDetector(healthChecks, providersByUid::values);
+    }
+
+    /**
+     * @return name of the pool.
+     */
+    public String getName() {
+        return name;
     }
 
     /**
@@ -33,17 +81,25 @@ public enum ProviderRegistry {
      * This is implemented with a reentrant lock and not synchronized so that the remove function can also be blocked.
      *
      * @param item to be registered.
-     * @throws RegistryFullException is thrown if there are already MAX_PROVIDERS registered.
+     * @throws RegistryFullException is thrown if there are already maxProviders registered.
      */
     public void registerProvider(ProviderRegistryItem item) throws RegistryFullException {
         lock.lock();
         try {
-            if (providerRegistryItems.size() >= MAX_PROVIDERS) {
+            if (providersByUid.size() >= maxProviders) {
                 throw new RegistryFullException("already the max amount of providers registered.");
             }
 
-            if (!providerRegistryItems.contains(item)) {
-                providerRegistryItems.add(item);
+            if (!providersByUid.containsKey(item.getProviderUid())) {
+                item.setRegistrationSequence(++registrationSequence);
+                providersByUid.put(item.getProviderUid(), item);
+                sizeByZone.merge(item.getZone(), 1, Integer::sum);
+                sizeByPriority.incrementAndGet(item.getPriority());
+                item.setChangeListener(changeListener);
+                item.setOutlierDetector(outlierDetector);
+                item.setMetrics(Metrics.INSTANCE.provider(name, item.getProviderUid()));
+                activeSnapshot = activeSnapshot.withChanged(item);
+                registeredSnapshot = registeredSnapshot.withRegistered(item);
                 scheduleHeartbeatCheck(item);
             }
         } finally {
@@ -51,9 +107,28 @@ public enum ProviderRegistry {
         }
     }
 
+    /**
+     * Sets the maximum amount of providers that can be registered. Defaults to MAX_PROVIDERS, pools of thousands of
+     * providers are fine. Lowering it does not remove providers that are already registered.
+     *
+     * @param maxProviders maximum amount of providers.
+     */
+    public void setMaxProviders(int maxProviders) {
+        if (maxProviders < 1) {
+            throw new IllegalArgumentException("maxProviders must be at least 1 but was " + maxProviders);
+        }
+        this.maxProviders = maxProviders;
+    }
+
     private void scheduleHeartbeatCheck(ProviderRegistryItem providerRegistryItem) {
-        Runnable task = providerRegistryItem::healthCheck;
-        executor.scheduleAtFixedRate(task, 5, HEARTBEAT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        heartbeats.put(providerRegistryItem.getProviderUid(), healthChecks.schedule(providerRegistryItem));
+    }
+
+    private void cancelHeartbeatCheck(String uid) {
+        HealthCheckScheduler.Registration heartbeat = heartbeats.remove(uid);
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
     }
 
     /**
@@ -63,26 +138,139 @@ public enum ProviderRegistry {
      * @param uid Provider to be removed.
      */
     public void removeProvider(String uid) {
-        Optional<ProviderRegistryItem> foundItemOpt = providerRegistryItems.stream().filter(p -> p.getProviderUid().equals(uid)).findAny();
-
-        foundItemOpt.ifPresent(foundItem -> {
-            lock.lock();
-            try {
-                providerRegistryItems.remove(foundItem);
-            } finally {
-                lock.unlock();
+        lock.lock();
+        try {
+            ProviderRegistryItem foundItem = providersByUid.remove(uid);
+            if (foundItem != null) {
+                sizeByZone.computeIfPresent(foundItem.getZone(), (zone, size) -> size == 1 ? null : size - 1);
+                sizeByPriority.decrementAndGet(foundItem.getPriority());
+                cancelHeartbeatCheck(uid);
+                foundItem.setChangeListener(null);
+                foundItem.setOutlierDetector(null);
+                foundItem.setMetrics(null);
+                Metrics.INSTANCE.removeProvider(name, uid);
+                activeSnapshot = activeSnapshot.withRemoved(foundItem);
+                registeredSnapshot = registeredSnapshot.withRemoved(foundItem);
             }
-        });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a registered provider.
+     *
+     * @param uid uid of the provider.
+     * @return the provider, null if no provider with this uid is registered.
+     */
+    public ProviderRegistryItem getProvider(String uid) {
+        return providersByUid.get(uid);
+    }
+
+    /**
+     * @return number of registered providers, whatever their status.
+     */
+    public int size() {
+        return providersByUid.size();
+    }
+
+    /**
+     * Number of registered providers of a zone, whatever their status. Updated before the snapshot that adds or drops
+     * the provider is published, so it is never behind a snapshot that was already read.
+     *
+     * @param zone zone.
+     * @return number of registered providers of the zone.
+     */
+    public int size(String zone) {
+        return sizeByZone.getOrDefault(zone, 0);
+    }
+
+    /**
+     * Number of registered providers of a priority tier, whatever their status. Updated before the snapshot that adds
+     * or drops the provider is published, like size(zone).
+     *
+     * @param priority priority tier.
+     * @return number of registered providers of the tier.
+     */
+    public int sizeOfPriority(int priority) {
+        return sizeByPriority.get(priority);
     }
 
     /**
-     * Get currently active providers (in status ok).
+     * Get currently active providers (in status ok, or half-open with a free probe slot).
      *
-     * @return list of providers.
+     * @return unmodifiable list of providers.
      */
     public List<ProviderRegistryItem> getActiveProviders() {
-        return providerRegistryItems.stream().filter(registryItem -> ProviderStatus.OK.equals(registryItem.getStatus()))
-                .collect(Collectors.toList());
+        return activeSnapshot.asList();
+    }
+
+    /**
+     * Get the current snapshot of active providers (in status ok, or half-open with a free probe slot). This is a single volatile read and does not
+     * allocate, so it is the one to use on the request path.
+     *
+     * @return snapshot of active providers.
+     */
+    public ProviderSnapshot getActiveSnapshot() {
+        return activeSnapshot;
+    }
+
+    /**
+     * Get the current snapshot of all registered providers, whatever their status. It only changes when a provider is
+     * registered, removed or reweighed, so strategies that derive an expensive structure from the pool (like the ring
+     * of the ConsistentHashLBStrategy) build it from this one and skip the providers that are not selectable.
+     *
+     * @return snapshot of registered providers.
+     */
+    public ProviderSnapshot getRegisteredSnapshot() {
+        return registeredSnapshot;
+    }
+
+    /**
+     * Called by an item whenever its status or weight changes. A breaker that just opened gets its switch to HALF_OPEN
+     * scheduled, so nobody has to poll for it.
+     * <p>
+     * The change is queued and applied under the lock, so the status of a provider is always read while holding it
+     * and the last update sees its latest status, no matter in which order concurrent changes come in. Whoever gets
+     * the lock applies the queued changes up to and including its own in one go, so callers waiting behind it mostly
+     * find theirs applied already. Either way the change is visible in the snapshot once this returns.
+     */
+    private void providerChanged(ProviderRegistryItem item) {
+        if (ProviderStatus.OPEN.equals(item.getStatus())) {
+            healthChecks.scheduleOnce(item::halfOpen, item.getCircuitBreaker().getOpenNanos());
+        }
+        Change change = new Change(item);
+        changedProviders.add(change);
+        lock.lock();
+        try {
+            if (!change.applied) {
+                applyChangesUpTo(change);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the queued changes up to the given one, which is still queued, and publishes the snapshots. Changes
+     * queued after it are left to their own callers, so a steady stream of changes can't keep one thread draining.
+     */
+    private void applyChangesUpTo(Change last) {
+        ProviderSnapshot snapshot = activeSnapshot;
+        ProviderSnapshot registered = registeredSnapshot;
+        Change change;
+        do {
+            change = changedProviders.poll();
+            change.applied = true;
+            ProviderRegistryItem item = change.item;
+            // changes of providers that were removed in the meantime don't count anymore
+            if (providersByUid.get(item.getProviderUid()) == item) {
+                snapshot = snapshot.withChanged(item);
+                registered = registered.withRegistered(item);
+            }
+        } while (change != last);
+        registeredSnapshot = registered;
+        activeSnapshot = snapshot;
     }
 
     /**
@@ -91,22 +279,36 @@ public enum ProviderRegistry {
      * @param providerUid Provider to exclude
      */
     public void exclude(String providerUid) {
-        Optional<ProviderRegistryItem> providerOpt = providerRegistryItems.stream()
-                .filter(p -> p.getProviderUid().equals(providerUid)).findAny();
-        providerOpt.ifPresent(p -> p.setStatus(ProviderStatus.EXCLUDED));
+        ProviderRegistryItem provider = providersByUid.get(providerUid);
+        if (provider != null) {
+            provider.setStatus(ProviderStatus.EXCLUDED);
+        }
+    }
+
+    /**
+     * Changes the weight of a provider based on the given UID.
+     *
+     * @param providerUid Provider to change.
+     * @param weight      new weight, between 1 and ProviderRegistryItem.MAX_WEIGHT.
+     */
+    public void setWeight(String providerUid, int weight) {
+        ProviderRegistryItem provider = providersByUid.get(providerUid);
+        if (provider != null) {
+            provider.setWeight(weight);
+        }
     }
 
     /**
-     * Provider that should be included. This is a direct include without going to a PENDING state.
+     * Provider that should be included. This is a direct include without going to a PENDING state, it also ends an
+     * ejection by the outlier detection early.
      *
      * @param providerUid Provider to include.
      */
     public void include(String providerUid) {
-        Optional<ProviderRegistryItem> providerOpt = providerRegistryItems.stream()
-                .filter(p -> p.getProviderUid().equals(providerUid)).findAny();
-        if (providerOpt.isPresent() && (ProviderStatus.EXCLUDED.equals(providerOpt.get().getStatus()) ||
-                ProviderStatus.PENDING.equals(providerOpt.get().getStatus()))) {
-            providerOpt.get().include();
+        ProviderRegistryItem provider = providersByUid.get(providerUid);
+        if (provider != null && !provider.compareAndSetStatus(ProviderStatus.EXCLUDED, ProviderStatus.OK)
+                && !provider.compareAndSetStatus(ProviderStatus.PENDING, ProviderStatus.OK)) {
+            provider.compareAndSetStatus(ProviderStatus.EJECTED, ProviderStatus.OK);
         }
     }
 
@@ -116,9 +318,43 @@ public enum ProviderRegistry {
     public void resetProviders() {
         lock.lock();
         try {
-            providerRegistryItems.clear();
+            providersByUid.values().forEach(item -> {
+                item.setChangeListener(null);
+                item.setOutlierDetector(null);
+                item.setMetrics(null);
+                Metrics.INSTANCE.removeProvider(name, item.getProviderUid());
+                cancelHeartbeatCheck(item.getProviderUid());
+            });
+            providersByUid.clear();
+            sizeByZone.clear();
+            for (int priority = 0; priority < sizeByPriority.length(); priority++) {
+                sizeByPriority.set(priority, 0);
+            }
+            activeSnapshot = activeSnapshot.cleared();
+            registeredSnapshot = registeredSnapshot.cleared();
         } finally {
             lock.unlock();
         }
     }
+
+    /**
+     * Removes all providers and stops the outlier detection of the pool. Meant for pools that are dropped, the shared
+     * HealthCheckScheduler keeps running for the other ones.
+     */
+    public void close() {
+        resetProviders();
+        outlierDetector.stop();
+    }
+
+    /**
+     * A queued change of a provider, applied is only read and written while holding the lock.
+     */
+    private static final class Change {
+        private final ProviderRegistryItem item;
+        private boolean applied;
+
+        private Change(ProviderRegistryItem item) {
+            this.item = item;
+        }
+    }
 }
@@ -1,89 +1,685 @@
 package dev.lst.cc.sre.registry;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+import dev.lst.cc.sre.metrics.ProviderMetrics;
+import dev.lst.cc.sre.provider.AsyncProvider;
+import dev.lst.cc.sre.provider.BatchProvider;
+import dev.lst.cc.sre.provider.BlockingProviderAdapter;
 import dev.lst.cc.sre.provider.Provider;
 import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
 import dev.lst.cc.sre.provider.ProviderStatus;
 
 import static dev.lst.cc.sre.provider.ProviderStatus.BUSY;
+import static dev.lst.cc.sre.provider.ProviderStatus.EJECTED;
 import static dev.lst.cc.sre.provider.ProviderStatus.EXCLUDED;
+import static dev.lst.cc.sre.provider.ProviderStatus.HALF_OPEN;
 import static dev.lst.cc.sre.provider.ProviderStatus.OK;
+import static dev.lst.cc.sre.provider.ProviderStatus.OPEN;
 import static dev.lst.cc.sre.provider.ProviderStatus.PENDING;
 
 /**
  * A registered Provider Item in the registry.
+ * <p>
+ * Status and number of ongoing calls live together in one AtomicLong (status ordinal in the upper, ongoing calls in
+ * the lower 32 bits) and are only changed with compare-and-set. Starting or finishing a call therefore takes no lock
+ * and can only move the provider between OK and BUSY, it never overwrites EXCLUDED or PENDING.
+ * <p>
+ * The outcome of every call feeds the CircuitBreaker of the item, which opens (OPEN) on too many failed or slow calls
+ * and lets a few probes through (HALF_OPEN) before closing again. Failed calls in a row are counted for the
+ * OutlierDetector, which can take the provider out for a while (EJECTED).
+ * <p>
+ * Calls with a timeout give up their slot once it passed and count as failed, even if the provider never answers.
  */
 public class ProviderRegistryItem {
 
-    private static final int MAX_ONGOING_CALLS = 10;
+    public static final int DEFAULT_MAX_ONGOING_CALLS = 10;
+
+    public static final int DEFAULT_WEIGHT = 1;
+    public static final int MAX_WEIGHT = 1000;
+
+    /**
+     * Priority of the primary tier. Higher numbers are backup tiers, up to MAX_PRIORITY.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final int MAX_PRIORITY = 7;
+
+    // timeout of calls that may take as long as the provider needs
+    private static final long NO_TIMEOUT = Long.MAX_VALUE;
 
     private final Provider provider;
 
+    private final AsyncProvider asyncProvider;
+
     private String providerUid;
 
-    private ProviderStatus status;
+    private static final int STATUS_SHIFT = 32;
+    private static final long ONGOING_MASK = 0xFFFF_FFFFL;
+    private static final ProviderStatus[] STATUSES = ProviderStatus.values();
+
+    private final AtomicLong state = new AtomicLong(pack(OK, 0));
+
+    private final PeakEwma latency = new PeakEwma();
+
+    private volatile int weight;
+
+    private volatile int priority = DEFAULT_PRIORITY;
+
+    private final ConcurrencyLimit concurrencyLimit;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private volatile ProviderChangeListener changeListener;
 
-    private AtomicInteger ongoingRequests = new AtomicInteger(0);
+    private volatile OutlierDetector outlierDetector;
+
+    private volatile ProviderMetrics metrics;
+
+    private final AtomicInteger consecutiveErrors = new AtomicInteger();
+
+    private final AtomicInteger ejections = new AtomicInteger();
+
+    // number of the latest ejection, so a timer only ends the ejection it was scheduled for
+    private final AtomicLong ejectionNumber = new AtomicLong();
+
+    // detector of the ongoing ejection, whoever ends it first tells it
+    private final AtomicReference<OutlierDetector> ejectedBy = new AtomicReference<>();
+
+    private long registrationSequence;
 
     public ProviderRegistryItem(Provider provider) {
+        this(provider, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * @param provider provider.
+     * @param weight   relative capacity of the provider, used by the weighted strategies. Between 1 and MAX_WEIGHT.
+     */
+    public ProviderRegistryItem(Provider provider, int weight) {
+        this(provider, weight, new FixedConcurrencyLimit(DEFAULT_MAX_ONGOING_CALLS));
+    }
+
+    /**
+     * @param provider         provider.
+     * @param weight           relative capacity of the provider, used by the weighted strategies. Between 1 and MAX_WEIGHT.
+     * @param concurrencyLimit limit of concurrent calls, once reached the provider is BUSY. Either fixed or adaptive,
+     *                         e.g. AimdConcurrencyLimit or GradientConcurrencyLimit.
+     */
+    public ProviderRegistryItem(Provider provider, int weight, ConcurrencyLimit concurrencyLimit) {
+        this(provider, weight, concurrencyLimit, new CircuitBreaker());
+    }
+
+    /**
+     * @param provider         provider.
+     * @param weight           relative capacity of the provider, used by the weighted strategies. Between 1 and MAX_WEIGHT.
+     * @param concurrencyLimit limit of concurrent calls, once reached the provider is BUSY.
+     * @param circuitBreaker   circuit breaker settings of this provider.
+     */
+    public ProviderRegistryItem(Provider provider, int weight, ConcurrencyLimit concurrencyLimit,
+                                CircuitBreaker circuitBreaker) {
+        this.concurrencyLimit = concurrencyLimit;
+        this.circuitBreaker = circuitBreaker;
         this.providerUid = provider.getUid();
         this.provider = provider;
-        this.status = OK;
+        this.asyncProvider = provider instanceof AsyncProvider
+                ? (AsyncProvider) provider : new BlockingProviderAdapter(provider);
+        this.weight = checkWeight(weight);
     }
 
     public String getProviderUid() {
         return this.providerUid;
     }
 
+    /**
+     * @return zone of the provider.
+     */
+    public String getZone() {
+        return provider.getZone();
+    }
+
     public ProviderStatus getStatus() {
-        return status;
+        return statusOf(state.get());
+    }
+
+    /**
+     * Whether strategies may pick this provider: it is OK, or it is HALF_OPEN and has a free probe slot.
+     *
+     * @return true if the provider belongs into the active snapshot.
+     */
+    public boolean isSelectable() {
+        return isSelectable(state.get());
     }
 
+    private boolean isSelectable(long state) {
+        ProviderStatus status = statusOf(state);
+        return status == OK || (status == HALF_OPEN && ongoingOf(state) < circuitBreaker.getHalfOpenProbes());
+    }
+
+    /**
+     * Sets the status, keeping the ongoing calls. OK and BUSY are interchangeable here, the item decides between them
+     * by comparing the ongoing calls with the concurrency limit. The listener is only notified if the status actually
+     * changed, so the hot path of setting OK over and over again does not cause any work in the registry.
+     *
+     * @param status new status.
+     */
     public void setStatus(ProviderStatus status) {
-        this.status = status;
+        long current;
+        long next;
+        do {
+            current = state.get();
+            int ongoing = ongoingOf(current);
+            next = pack(resolve(status, ongoing), ongoing);
+        } while (!state.compareAndSet(current, next));
+        notifyIfStatusChanged(current, next);
+    }
+
+    /**
+     * Changes the status only if it still is the expected one, so a decision based on an old status (e.g. by a slow
+     * health check) cannot overwrite a newer one set in the meantime.
+     *
+     * @param expected status the caller based its decision on.
+     * @param status   new status.
+     * @return true if the status was changed.
+     */
+    public boolean compareAndSetStatus(ProviderStatus expected, ProviderStatus status) {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            if (statusOf(current) != expected) {
+                return false;
+            }
+            int ongoing = ongoingOf(current);
+            next = pack(resolve(status, ongoing), ongoing);
+        } while (!state.compareAndSet(current, next));
+        notifyIfStatusChanged(current, next);
+        return true;
+    }
+
+    void setChangeListener(ProviderChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    void setOutlierDetector(OutlierDetector outlierDetector) {
+        this.outlierDetector = outlierDetector;
+        if (outlierDetector == null) {
+            // a removed provider no longer counts against the ejection limit of its pool
+            endEjection();
+        }
+    }
+
+    /**
+     * Set by the registry while the item is registered, unregistered items record no metrics.
+     */
+    void setMetrics(ProviderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return failed calls in a row, reset by every successful one.
+     */
+    int getConsecutiveErrors() {
+        return consecutiveErrors.get();
+    }
+
+    /**
+     * @return ejections not yet forgiven, the OutlierDetector bases the ejection time on it.
+     */
+    int getEjections() {
+        return ejections.get();
+    }
+
+    int incrementEjections() {
+        return ejections.incrementAndGet();
+    }
+
+    void forgiveEjection() {
+        ejections.updateAndGet(count -> Math.max(0, count - 1));
+    }
+
+    /**
+     * Ejects the provider if it is in use (OK or BUSY). The consecutive errors start over, so the provider can be
+     * ejected again once it is back.
+     *
+     * @param detector detector to tell once the ejection ends.
+     * @return number of the ejection to end it with uneject(long), 0 if the provider was not ejected.
+     */
+    long eject(OutlierDetector detector) {
+        ejectedBy.set(detector);
+        // taken before the status changes, so the timer of an earlier ejection can't end this one
+        long number = ejectionNumber.incrementAndGet();
+        if (compareAndSetStatus(OK, EJECTED) || compareAndSetStatus(BUSY, EJECTED)) {
+            consecutiveErrors.set(0);
+            return number;
+        }
+        ejectedBy.compareAndSet(detector, null);
+        return 0;
+    }
+
+    /**
+     * Ends the ejection with the given number, unless the provider was ejected again since.
+     */
+    void uneject(long number) {
+        if (ejectionNumber.get() == number) {
+            compareAndSetStatus(EJECTED, OK);
+        }
+    }
+
+    private void endEjection() {
+        OutlierDetector detector = ejectedBy.getAndSet(null);
+        if (detector != null) {
+            // errors of calls that were still running during the ejection don't count against the provider
+            consecutiveErrors.set(0);
+            detector.ejectionEnded();
+        }
+    }
+
+    /**
+     * Position of the item in the registration order, the registry keeps its snapshots sorted by priority and then by
+     * it. Only written and read while holding the registry lock.
+     */
+    long getRegistrationSequence() {
+        return registrationSequence;
+    }
+
+    void setRegistrationSequence(long registrationSequence) {
+        this.registrationSequence = registrationSequence;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return tier of the provider, DEFAULT_PRIORITY for the primary one.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Puts the provider into a tier. The snapshots are sorted by priority, so it can only be set while the provider is
+     * not registered.
+     *
+     * @param priority tier, between DEFAULT_PRIORITY (primary) and MAX_PRIORITY.
+     * @throws IllegalStateException if the provider is registered.
+     */
+    public void setPriority(int priority) {
+        if (priority < DEFAULT_PRIORITY || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException("priority must be between " + DEFAULT_PRIORITY + " and " + MAX_PRIORITY
+                    + " but was " + priority);
+        }
+        if (changeListener != null) {
+            throw new IllegalStateException("the priority of a registered provider can't be changed");
+        }
+        this.priority = priority;
+    }
+
+    /**
+     * Changes the weight at runtime. The registry publishes a new snapshot, so the weighted strategies pick up the
+     * new weight with their next call.
+     *
+     * @param weight new weight, between 1 and MAX_WEIGHT.
+     */
+    public void setWeight(int weight) {
+        checkWeight(weight);
+        int oldWeight = this.weight;
+        this.weight = weight;
+        ProviderChangeListener listener = changeListener;
+        if (oldWeight != weight && listener != null) {
+            listener.providerChanged(this);
+        }
+    }
+
+    private static int checkWeight(int weight) {
+        if (weight < 1 || weight > MAX_WEIGHT) {
+            throw new IllegalArgumentException("weight must be between 1 and " + MAX_WEIGHT + " but was " + weight);
+        }
+        return weight;
     }
 
     public int getOngoingRequests() {
-        return ongoingRequests.get();
+        return ongoingOf(state.get());
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Peak EWMA of the response times of this provider.
+     *
+     * @param nowNanos current System.nanoTime(), passed in so a strategy can read it once for all providers.
+     * @return average response time in nanos, 0 if the provider did not answer any call yet.
+     */
+    public double getLatencyEwmaNanos(long nowNanos) {
+        return latency.get(nowNanos);
     }
 
 
     /**
-     * Executes the get command against the provider. Takes care of Circuit Breaker.
+     * Executes the get command against the provider. Takes care of Circuit Breaker and records the response time.
+     * An exception thrown by the provider counts as a failed call and is passed on to the caller.
      * @return providers answer.
+     * @throws ProviderUnavailableException if the provider is half-open and all probe slots are taken.
      */
     public String executeGet() {
         // implementation simulating calling get() on the provider.
-        addOngoingCall();
-        String retVal = provider.get();
-        removeOngoingCall();
-        return retVal;
+        return execute(provider::get);
     }
 
-    private synchronized void removeOngoingCall() {
-        ongoingRequests.decrementAndGet();
-        updateProviderStatus();
+    /**
+     * Executes the get command for several requests as one call: a BatchProvider answers them with a single getBatch,
+     * any other provider with one get() per request. Either way the batch takes one slot of the concurrency limit and
+     * counts as one call for the Circuit Breaker and the response time.
+     *
+     * @param requests number of requests in the batch, at least 1.
+     * @return one answer per request, in the order of the requests.
+     */
+    public List<String> executeGetBatch(int requests) {
+        if (requests < 1) {
+            throw new IllegalArgumentException("a batch needs at least one request but had " + requests);
+        }
+        return execute(() -> {
+            if (provider instanceof BatchProvider) {
+                List<String> answers = ((BatchProvider) provider).getBatch(requests);
+                if (answers.size() != requests) {
+                    throw new IllegalStateException("provider " + providerUid + " answered " + answers.size()
+                            + " of " + requests + " requests");
+                }
+                return answers;
+            }
+            List<String> answers = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                answers.add(provider.get());
+            }
+            return answers;
+        });
     }
 
-    private void updateProviderStatus() {
-        if (ongoingRequests.get() >= MAX_ONGOING_CALLS) {
-            setStatus(BUSY);
-        } else {
-            setStatus(OK);
+    /**
+     * Executes the get command with a timeout. The call runs like executeGetAsync(), so the caller can stop waiting for
+     * a provider that hangs: once the timeout passed, the ongoing call is released and counts as a failed call taking
+     * as long as the timeout. A blocking provider is interrupted then, see BlockingProviderAdapter, an AsyncProvider
+     * finds its future completed with a TimeoutException.
+     *
+     * @param timeoutNanos time the provider has to answer.
+     * @return providers answer.
+     * @throws ProviderTimeoutException if the provider did not answer in time.
+     */
+    public String executeGetWithin(long timeoutNanos) {
+        try {
+            return executeGetAsync(timeoutNanos).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
     }
 
-    private synchronized void addOngoingCall() {
-        ongoingRequests.incrementAndGet();
-        updateProviderStatus();
+    private <T> T execute(Supplier<T> call) {
+        int inflight = addOngoingCall();
+        long start = System.nanoTime();
+        try {
+            T retVal = call.get();
+            long end = System.nanoTime();
+            latency.observe(end - start, end);
+            recordOutcome(false, end - start, inflight, end);
+            return retVal;
+        } catch (RuntimeException e) {
+            long end = System.nanoTime();
+            recordOutcome(true, end - start, inflight, end);
+            throw e;
+        } finally {
+            removeOngoingCall();
+        }
     }
 
     /**
-     * Includes the provider.
+     * Executes the get command against the provider without blocking the calling thread. Providers that are not an
+     * AsyncProvider run on the default executor of the BlockingProviderAdapter. The ongoing call is accounted for until
+     * the returned future completes, and the status is updated on completion.
+     *
+     * @return future with the providers answer.
+     */
+    public CompletableFuture<String> executeGetAsync() {
+        return executeAsync(asyncProvider::getAsync, NO_TIMEOUT);
+    }
+
+    /**
+     * Executes the get command against the provider without blocking the calling thread, see executeGetWithin(long) for the
+     * timeout.
+     *
+     * @param timeoutNanos time the provider has to answer.
+     * @return future with the providers answer. Fails with a ProviderTimeoutException if the provider did not answer
+     * in time.
+     */
+    public CompletableFuture<String> executeGetAsync(long timeoutNanos) {
+        return executeAsync(asyncProvider::getAsync, timeoutNanos);
+    }
+
+    /**
+     * Executes the blocking get command of the provider on the given executor, e.g. one running every call on its own
+     * virtual thread. Accounting is the same as for executeGetAsync().
+     *
+     * @param executor executor to run the call on.
+     * @return future with the providers answer.
+     */
+    public CompletableFuture<String> executeGetAsync(Executor executor) {
+        return executeAsync(() -> CompletableFuture.supplyAsync(provider::get, executor), NO_TIMEOUT);
+    }
+
+    /**
+     * Executes the blocking get command of the provider on the given executor, with a timeout as for executeGetWithin(long).
+     *
+     * @param executor     executor to run the call on.
+     * @param timeoutNanos time the provider has to answer.
+     * @return future with the providers answer. Fails with a ProviderTimeoutException if the provider did not answer
+     * in time.
+     */
+    public CompletableFuture<String> executeGetAsync(Executor executor, long timeoutNanos) {
+        return executeAsync(() -> BlockingProviderAdapter.supplyInterruptibly(provider::get, executor), timeoutNanos);
+    }
+
+    private CompletableFuture<String> executeAsync(Supplier<CompletableFuture<String>> asyncCall, long timeoutNanos) {
+        int inflight;
+        try {
+            inflight = addOngoingCall();
+        } catch (ProviderUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<String> call;
+        try {
+            call = asyncCall.get();
+        } catch (RejectedExecutionException e) {
+            removeOngoingCall();
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            removeOngoingCall();
+            throw e;
+        }
+        if (timeoutNanos != NO_TIMEOUT) {
+            call = call.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        CompletableFuture<String> accounted = call.whenComplete((answer, failure) -> {
+            long end = System.nanoTime();
+            if (failure == null) {
+                latency.observe(end - start, end);
+                recordOutcome(false, end - start, inflight, end);
+            } else if (!isRejection(failure)) {
+                if (failure instanceof TimeoutException) {
+                    // the provider takes at least that long, strategies looking at the latency should know
+                    latency.observe(end - start, end);
+                }
+                recordOutcome(true, end - start, inflight, end);
+            }
+            removeOngoingCall();
+        });
+        return timeoutNanos == NO_TIMEOUT ? accounted : accounted.exceptionallyCompose(this::timedOut);
+    }
+
+    private CompletableFuture<String> timedOut(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (cause instanceof TimeoutException) {
+            cause = new ProviderTimeoutException("provider " + providerUid + " did not answer in time");
+        }
+        return CompletableFuture.failedFuture(cause);
+    }
+
+    private static boolean isRejection(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        return cause instanceof RejectedExecutionException;
+    }
+
+    /**
+     * Feeds the outcome of a call into the concurrency limit and the circuit breaker and switches the state of the
+     * breaker if needed. Only called while the call still counts as ongoing, so a probe keeps its slot until its
+     * outcome is recorded, and the following removeOngoingCall() decides on BUSY with the updated limit.
+     */
+    private void recordOutcome(boolean failure, long durationNanos, int inflight, long nowNanos) {
+        ProviderMetrics providerMetrics = metrics;
+        if (providerMetrics != null) {
+            providerMetrics.recordCall(durationNanos, failure);
+        }
+        concurrencyLimit.onSample(durationNanos, inflight, failure);
+        if (failure) {
+            int errors = consecutiveErrors.incrementAndGet();
+            OutlierDetector detector = outlierDetector;
+            if (detector != null) {
+                detector.onError(this, errors);
+            }
+        } else if (consecutiveErrors.get() != 0) {
+            // only write if needed, a healthy provider keeps the counter in a shared cache line
+            consecutiveErrors.set(0);
+        }
+        ProviderStatus status = getStatus();
+        if (status == HALF_OPEN) {
+            if (failure) {
+                open(HALF_OPEN);
+            } else if (circuitBreaker.recordProbeSuccess() && compareAndSetStatus(HALF_OPEN, OK)) {
+                circuitBreaker.reset();
+            }
+        } else if (status == OK || status == BUSY) {
+            if (circuitBreaker.recordClosed(failure, durationNanos, nowNanos) && !open(OK)) {
+                open(BUSY);
+            }
+        }
+    }
+
+    private boolean open(ProviderStatus from) {
+        if (compareAndSetStatus(from, OPEN)) {
+            circuitBreaker.reset();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves an OPEN breaker to HALF_OPEN, so the next calls probe the provider. Called by the registry once the open
+     * time of the breaker is over.
+     */
+    void halfOpen() {
+        // only the one switching it starts the probes over, a late or repeated call must not wipe their results
+        if (compareAndSetStatus(OPEN, HALF_OPEN)) {
+            circuitBreaker.reset();
+        }
+    }
+
+    /**
+     * Takes a slot for a call. A half-open provider only takes as many calls as it has probe slots, checked in the
+     * same CAS that takes the slot, so concurrent callers that all picked it can't together exceed them.
+     *
+     * @return ongoing calls including the new one.
+     * @throws ProviderUnavailableException if the provider is half-open and all probe slots are taken.
+     */
+    private int addOngoingCall() {
+        long current;
+        long next;
+        int ongoing;
+        do {
+            current = state.get();
+            if (statusOf(current) == HALF_OPEN && ongoingOf(current) >= circuitBreaker.getHalfOpenProbes()) {
+                throw new ProviderUnavailableException("provider " + getProviderUid()
+                        + " is half-open and all probe slots are taken");
+            }
+            ongoing = ongoingOf(current) + 1;
+            next = pack(resolve(statusOf(current), ongoing), ongoing);
+        } while (!state.compareAndSet(current, next));
+        notifyIfStatusChanged(current, next);
+        ProviderMetrics providerMetrics = metrics;
+        if (providerMetrics != null && statusOf(current) != BUSY && statusOf(next) == BUSY) {
+            providerMetrics.recordBusy();
+        }
+        return ongoing;
+    }
+
+    private void removeOngoingCall() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            int ongoing = Math.max(0, ongoingOf(current) - 1);
+            next = pack(resolve(statusOf(current), ongoing), ongoing);
+        } while (!state.compareAndSet(current, next));
+        notifyIfStatusChanged(current, next);
+    }
+
+    /**
+     * OK and BUSY follow the ongoing calls, all other states are kept as they are.
+     */
+    private ProviderStatus resolve(ProviderStatus status, int ongoing) {
+        if (status != OK && status != BUSY) {
+            return status;
+        }
+        return ongoing >= concurrencyLimit.getLimit() ? BUSY : OK;
+    }
+
+    private void notifyIfStatusChanged(long oldState, long newState) {
+        if (statusOf(oldState) == EJECTED && statusOf(newState) != EJECTED) {
+            endEjection();
+        }
+        ProviderChangeListener listener = changeListener;
+        if (listener != null && (statusOf(oldState) != statusOf(newState)
+                || isSelectable(oldState) != isSelectable(newState))) {
+            listener.providerChanged(this);
+        }
+    }
+
+    private static long pack(ProviderStatus status, int ongoing) {
+        return ((long) status.ordinal() << STATUS_SHIFT) | (ongoing & ONGOING_MASK);
+    }
+
+    private static ProviderStatus statusOf(long state) {
+        return STATUSES[(int) (state >>> STATUS_SHIFT)];
+    }
+
+    private static int ongoingOf(long state) {
+        return (int) (state & ONGOING_MASK);
+    }
+
+    /**
+     * Includes the provider. Calls that are still running stay accounted for, they release their slot when they finish.
      */
     public void include() {
-        ongoingRequests.set(0);
         setStatus(OK);
     }
 
@@ -93,18 +689,37 @@ public class ProviderRegistryItem {
      * and if it is still ok after the next healthcheck, it will be included again.
      */
     public void healthCheck() {
-        ProviderHealthCheckStatus health = provider.healthCheck();
+        applyHealthCheck(callHealthCheck());
+    }
 
+    ProviderHealthCheckStatus callHealthCheck() {
+        return provider.healthCheck();
+    }
+
+    /**
+     * Sets the state for the result of a health check. Split from the call itself, so the HealthCheckScheduler can
+     * apply an ERROR for a check that timed out. Only changes are printed, with thousands of providers printing every
+     * check would drown everything else.
+     *
+     * @param health result of the health check.
+     */
+    void applyHealthCheck(ProviderHealthCheckStatus health) {
+        ProviderStatus oldStatus = getStatus();
         if (health == ProviderHealthCheckStatus.ERROR) {
+            ProviderMetrics providerMetrics = metrics;
+            if (providerMetrics != null) {
+                providerMetrics.recordHealthCheckError();
+            }
             setStatus(EXCLUDED);
         } else {
-            if (EXCLUDED.equals(getStatus())) {
-                setStatus(PENDING);
-            } else if (PENDING.equals(getStatus())) {
-                include();
+            if (!compareAndSetStatus(EXCLUDED, PENDING)) {
+                compareAndSetStatus(PENDING, OK);
             }
         }
-        System.out.println(" - provider " + getProviderUid() + " healthcheck executed. healt is " + health + ", overall status is " + getStatus());
+        ProviderStatus newStatus = getStatus();
+        if (newStatus != oldStatus) {
+            System.out.println(" - provider " + getProviderUid() + " healthcheck executed. healt is " + health + ", overall status is " + newStatus);
+        }
     }
 
     @Override
@@ -126,7 +741,8 @@ public class ProviderRegistryItem {
     public String toString() {
         return "ProviderRegistryItem{" +
                 "providerUid='" + providerUid + '\'' +
-                ", status=" + status +
+                ", status=" + getStatus() +
+                ", weight=" + weight +
                 '}';
     }
 }
@@ -0,0 +1,216 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, versioned view of the providers that are currently active (in status ok). A new snapshot is published
+ * by the registry every time a provider is registered, removed or changes its status or weight, so readers only need a single
+ * volatile read to get a consistent view and can index into it without allocating. The registry keeps a second one
+ * of all registered providers whatever their status, for strategies that must not be rebuilt on every status change.
+ * <p>
+ * Providers are sorted by priority and then by registration order, so every priority tier is one contiguous range of
+ * positions. The ends of the ranges are updated with every insert and removal.
+ */
+public final class ProviderSnapshot {
+
+    static final ProviderSnapshot EMPTY = new ProviderSnapshot(new ProviderRegistryItem[0], new int[0],
+            new int[ProviderRegistryItem.MAX_PRIORITY + 1], 0);
+
+    private final ProviderRegistryItem[] items;
+    private final int[] weights;
+    // priorityEnds[p] is the position after the last provider with priority p
+    private final int[] priorityEnds;
+    private final long version;
+    private final List<ProviderRegistryItem> view;
+
+    private ProviderSnapshot(ProviderRegistryItem[] items, int[] weights, int[] priorityEnds, long version) {
+        this.items = items;
+        this.weights = weights;
+        this.priorityEnds = priorityEnds;
+        this.version = version;
+        this.view = Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    /**
+     * Copy of this snapshot that reflects the current status and weight of one provider: it is added if it became
+     * selectable, dropped if it no longer is and its weight is updated otherwise. Items are kept in order of priority
+     * and registration, so the position of a provider is found with a binary search and a change costs one array copy
+     * instead of looking at every registered provider again.
+     *
+     * @param item provider that changed.
+     * @return new snapshot with the next version, or this one if nothing changed.
+     */
+    ProviderSnapshot withChanged(ProviderRegistryItem item) {
+        return withChanged(item, item.isSelectable());
+    }
+
+    /**
+     * Copy of this snapshot of registered providers that contains the provider with its current weight, whatever its
+     * status.
+     *
+     * @param item provider that was registered or changed.
+     * @return new snapshot with the next version, or this one if nothing changed.
+     */
+    ProviderSnapshot withRegistered(ProviderRegistryItem item) {
+        return withChanged(item, true);
+    }
+
+    private ProviderSnapshot withChanged(ProviderRegistryItem item, boolean selectable) {
+        int index = indexOf(item);
+        if (index < 0) {
+            return selectable ? withInserted(-(index + 1), item) : this;
+        }
+        if (!selectable) {
+            return without(index);
+        }
+        int weight = item.getWeight();
+        if (weight == weights[index]) {
+            return this;
+        }
+        int[] newWeights = weights.clone();
+        newWeights[index] = weight;
+        return new ProviderSnapshot(items, newWeights, priorityEnds, version + 1);
+    }
+
+    /**
+     * @param item provider that was removed from the registry.
+     * @return new snapshot without the provider, or this one if it was not part of it.
+     */
+    ProviderSnapshot withRemoved(ProviderRegistryItem item) {
+        int index = indexOf(item);
+        return index < 0 ? this : without(index);
+    }
+
+    /**
+     * @return position of the item, or (-(insertion point) - 1) like Arrays.binarySearch.
+     */
+    private int indexOf(ProviderRegistryItem item) {
+        int priority = item.getPriority();
+        long sequence = item.getRegistrationSequence();
+        int low = getPriorityStart(priority);
+        int high = priorityEnds[priority] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midSequence = items[mid].getRegistrationSequence();
+            if (midSequence < sequence) {
+                low = mid + 1;
+            } else if (midSequence > sequence) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int[] priorityEndsAdding(int priority, int delta) {
+        int[] newEnds = priorityEnds.clone();
+        for (int p = priority; p < newEnds.length; p++) {
+            newEnds[p] += delta;
+        }
+        return newEnds;
+    }
+
+    private ProviderSnapshot withInserted(int index, ProviderRegistryItem item) {
+        ProviderRegistryItem[] newItems = new ProviderRegistryItem[items.length + 1];
+        int[] newWeights = new int[weights.length + 1];
+        System.arraycopy(items, 0, newItems, 0, index);
+        System.arraycopy(weights, 0, newWeights, 0, index);
+        newItems[index] = item;
+        newWeights[index] = item.getWeight();
+        System.arraycopy(items, index, newItems, index + 1, items.length - index);
+        System.arraycopy(weights, index, newWeights, index + 1, weights.length - index);
+        return new ProviderSnapshot(newItems, newWeights, priorityEndsAdding(item.getPriority(), 1), version + 1);
+    }
+
+    private ProviderSnapshot without(int index) {
+        ProviderRegistryItem[] newItems = new ProviderRegistryItem[items.length - 1];
+        int[] newWeights = new int[weights.length - 1];
+        System.arraycopy(items, 0, newItems, 0, index);
+        System.arraycopy(weights, 0, newWeights, 0, index);
+        System.arraycopy(items, index + 1, newItems, index, items.length - index - 1);
+        System.arraycopy(weights, index + 1, newWeights, index, weights.length - index - 1);
+        return new ProviderSnapshot(newItems, newWeights, priorityEndsAdding(items[index].getPriority(), -1),
+                version + 1);
+    }
+
+    /**
+     * @return empty snapshot with the next version.
+     */
+    ProviderSnapshot cleared() {
+        return new ProviderSnapshot(new ProviderRegistryItem[0], new int[0], new int[priorityEnds.length], version + 1);
+    }
+
+    /**
+     * @return amount of active providers in this snapshot.
+     */
+    public int size() {
+        return items.length;
+    }
+
+    public boolean isEmpty() {
+        return items.length == 0;
+    }
+
+    /**
+     * @param index position of the provider, between 0 and size() - 1.
+     * @return provider at the given position.
+     */
+    public ProviderRegistryItem get(int index) {
+        return items[index];
+    }
+
+    /**
+     * Weight of the provider at the time the snapshot was taken. Strategies should use this one instead of asking the
+     * provider, so everything they derive from a snapshot stays consistent with it.
+     *
+     * @param index position of the provider, between 0 and size() - 1.
+     * @return weight of the provider at the given position.
+     */
+    public int getWeight(int index) {
+        return weights[index];
+    }
+
+    /**
+     * @param priority priority tier, between ProviderRegistryItem.DEFAULT_PRIORITY and MAX_PRIORITY.
+     * @return position of the first provider of the tier.
+     */
+    public int getPriorityStart(int priority) {
+        return priority == 0 ? 0 : priorityEnds[priority - 1];
+    }
+
+    /**
+     * @param priority priority tier, between ProviderRegistryItem.DEFAULT_PRIORITY and MAX_PRIORITY.
+     * @return position after the last provider of the tier.
+     */
+    public int getPriorityEnd(int priority) {
+        return priorityEnds[priority];
+    }
+
+    /**
+     * Version of this snapshot. Increases every time the registry publishes a new snapshot, so it can be used to
+     * detect changes of the active set.
+     *
+     * @return version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return unmodifiable list view of the snapshot.
+     */
+    public List<ProviderRegistryItem> asList() {
+        return view;
+    }
+
+    @Override
+    public String toString() {
+        return "ProviderSnapshot{" +
+                "version=" + version +
+                ", items=" + Arrays.toString(items) +
+                '}';
+    }
+}
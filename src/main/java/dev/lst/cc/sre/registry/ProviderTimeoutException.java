@@ -0,0 +1,10 @@
+package dev.lst.cc.sre.registry;
+
+/**
+ * Exception that is thrown if a provider did not answer within the timeout of the call.
+ */
+public class ProviderTimeoutException extends RuntimeException {
+    public ProviderTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package dev.lst.cc.sre.registry;
+
+/**
+ * Exception that is thrown if a provider does not take a call at all, e.g. because its circuit breaker is half-open and
+ * all probe slots are taken. The provider was not called, so the call does not count for its health.
+ */
+public class ProviderUnavailableException extends RuntimeException {
+    public ProviderUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,93 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free sliding time window of call outcomes, kept as a ring buffer of buckets. Each bucket covers a fixed slice
+ * of time. A bucket that belongs to an older slice is swapped for a fresh one with compare-and-set when a call of a
+ * newer slice comes in, so recording a call is one array read and a few atomic increments.
+ */
+final class SlidingWindow {
+
+    static final int BUCKETS = 10;
+
+    private static final Bucket EMPTY = new Bucket(Long.MIN_VALUE);
+
+    private final long bucketNanos;
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(BUCKETS);
+
+    /**
+     * @param windowNanos length of the whole window, split into BUCKETS buckets.
+     */
+    SlidingWindow(long windowNanos) {
+        this.bucketNanos = Math.max(1, windowNanos / BUCKETS);
+        reset();
+    }
+
+    void record(boolean failure, boolean slow, long nowNanos) {
+        Bucket bucket = bucketFor(Math.floorDiv(nowNanos, bucketNanos));
+        bucket.calls.incrementAndGet();
+        if (failure) {
+            bucket.failures.incrementAndGet();
+        }
+        if (slow) {
+            bucket.slowCalls.incrementAndGet();
+        }
+    }
+
+    Totals totals(long nowNanos) {
+        long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        int calls = 0;
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.epoch > epoch - BUCKETS && bucket.epoch <= epoch) {
+                calls += bucket.calls.get();
+                failures += bucket.failures.get();
+                slowCalls += bucket.slowCalls.get();
+            }
+        }
+        return new Totals(calls, failures, slowCalls);
+    }
+
+    /**
+     * Forgets all outcomes. Calls recorded concurrently might end up in a bucket that is dropped right away, which is
+     * fine since the window starts over anyway.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, EMPTY);
+        }
+    }
+
+    private Bucket bucketFor(long epoch) {
+        int index = (int) Math.floorMod(epoch, (long) BUCKETS);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            // a thread that read the clock a bit earlier just adds to the newer bucket
+            if (bucket.epoch >= epoch) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(epoch);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    record Totals(int calls, int failures, int slowCalls) {
+    }
+
+    private static final class Bucket {
+        private final long epoch;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
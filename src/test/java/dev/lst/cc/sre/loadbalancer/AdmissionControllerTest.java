@@ -0,0 +1,379 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.lst.cc.sre.loadbalancer.strategy.RandomLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.FixedConcurrencyLimit;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControllerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NO_TIMEOUT = Loadbalancer.NO_TIMEOUT;
+    // long enough that requests without timeout don't give up on a slow machine
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void acquire_shouldQueueBeyondMaxConcurrentUntilReleased() throws Exception {
+        // given
+        AdmissionController controller = new AdmissionController(2, 10, 5 * MILLIS, INTERVAL_NANOS);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+
+        // when
+        CompletableFuture<Void> waiting = acquireInThread(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        awaitQueueLength(controller, 1);
+
+        // then
+        assertThat(waiting).isNotDone();
+        controller.release();
+        waiting.get(1, TimeUnit.SECONDS);
+        assertThat(controller.getInFlight()).isEqualTo(2);
+        assertThat(controller.getQueueLength()).isZero();
+        assertThat(controller.getAdmitted()).isEqualTo(3);
+    }
+
+    @Test
+    void acquire_fullQueueShouldShed() throws Exception {
+        // given
+        AdmissionController controller = new AdmissionController(1, 1, 5 * MILLIS, INTERVAL_NANOS);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        CompletableFuture<Void> waiting = acquireInThread(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        awaitQueueLength(controller, 1);
+
+        // when
+        // then
+        Assertions.assertThrows(ServiceUnavailableException.class,
+                () -> acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT));
+        assertThat(controller.getShed()).isEqualTo(1);
+        controller.release();
+        waiting.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void acquire_criticalShouldPushOutLowerPriority() throws Exception {
+        // given
+        AdmissionController controller = new AdmissionController(1, 1, 5 * MILLIS, INTERVAL_NANOS);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        CompletableFuture<Void> normal = acquireInThread(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        awaitQueueLength(controller, 1);
+
+        // when
+        CompletableFuture<Void> critical = acquireInThread(controller, RequestPriority.CRITICAL, NO_TIMEOUT);
+
+        // then
+        assertShed(normal);
+        awaitQueueLength(controller, 1);
+        controller.release();
+        critical.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void release_shouldAdmitHigherPriorityFirst() throws Exception {
+        // given
+        AdmissionController controller = new AdmissionController(1, 10, 5 * MILLIS, INTERVAL_NANOS);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        CompletableFuture<Void> sheddable = acquireInThread(controller, RequestPriority.SHEDDABLE, NO_TIMEOUT);
+        awaitQueueLength(controller, 1);
+        CompletableFuture<Void> critical = acquireInThread(controller, RequestPriority.CRITICAL, NO_TIMEOUT);
+        awaitQueueLength(controller, 2);
+
+        // when
+        controller.release();
+
+        // then
+        critical.get(1, TimeUnit.SECONDS);
+        assertThat(sheddable).isNotDone();
+        controller.release();
+        sheddable.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void acquire_shouldShedOnceTimeoutPassed() throws Exception {
+        // given
+        AdmissionController controller = new AdmissionController(1);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+
+        // when
+        long start = System.nanoTime();
+        CompletableFuture<Void> waiting = acquireInThread(controller, RequestPriority.NORMAL, 20 * MILLIS);
+
+        // then
+        assertShed(waiting);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(20 * MILLIS);
+        assertThat(controller.getQueueLength()).isZero();
+        // a request without time left is shed right away
+        Assertions.assertThrows(ServiceUnavailableException.class,
+                () -> acquire(controller, RequestPriority.CRITICAL, 0));
+    }
+
+    @Test
+    void acquire_standingQueueShouldBeOverloaded() throws Exception {
+        // given a request that waited longer than target, in an interval after the one of the first request
+        AdmissionController controller = new AdmissionController(1, 10, MILLIS, 50 * MILLIS);
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        Thread.sleep(55);
+        CompletableFuture<Void> waiting = acquireInThread(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        awaitQueueLength(controller, 1);
+        Thread.sleep(15);
+        controller.release();
+        waiting.get(1, TimeUnit.SECONDS);
+
+        // when its interval is over
+        Thread.sleep(55);
+
+        // then sheddable requests are not queued any more, the others only wait up to target
+        assertThat(controller.isOverloaded()).isTrue();
+        Assertions.assertThrows(ServiceUnavailableException.class,
+                () -> acquire(controller, RequestPriority.SHEDDABLE, NO_TIMEOUT));
+        assertShed(acquireInThread(controller, RequestPriority.NORMAL, NO_TIMEOUT));
+
+        // when requests get through without waiting again
+        controller.release();
+        acquire(controller, RequestPriority.NORMAL, NO_TIMEOUT);
+        controller.release();
+        Thread.sleep(55);
+
+        // then
+        assertThat(controller.isOverloaded()).isFalse();
+    }
+
+    @Test
+    void tryAcquire_shouldNotWait() {
+        // given
+        AdmissionController controller = new AdmissionController(1);
+
+        // when
+        // then
+        assertThat(controller.tryAcquire()).isTrue();
+        assertThat(controller.tryAcquire()).isFalse();
+        controller.release();
+        assertThat(controller.tryAcquire()).isTrue();
+        assertThat(controller.getShed()).isEqualTo(1);
+    }
+
+    @Test
+    void acquire_sharedControllerShouldCapAllLoadbalancers() throws Exception {
+        // given two pools behind one controller, one request running in the first
+        AdmissionController controller = new AdmissionController(1, 10, 5 * MILLIS, INTERVAL_NANOS);
+        ProviderRegistry first = new ProviderRegistry("first");
+        ProviderRegistry second = new ProviderRegistry("second");
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            first.registerProvider(new ProviderRegistryItem(new LatchedProvider("latched", release)));
+            second.registerProvider(new ProviderRegistryItem(new InMemoryProvider("free")));
+            Loadbalancer firstLb = new Loadbalancer(new RandomLBStrategy(first), ExecutionMode.PROVIDER_EXECUTOR,
+                    null, controller);
+            Loadbalancer secondLb = new Loadbalancer(new RandomLBStrategy(second), ExecutionMode.PROVIDER_EXECUTOR,
+                    null, controller);
+            CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return firstLb.get();
+                } catch (ServiceUnavailableException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            awaitInFlight(controller, 1);
+
+            // when
+            // then the second pool has no slot of its own
+            Assertions.assertThrows(ServiceUnavailableException.class,
+                    () -> secondLb.get(RequestPriority.NORMAL, 20 * MILLIS));
+            release.countDown();
+            assertThat(running.get(1, TimeUnit.SECONDS)).isEqualTo("latched");
+            assertThat(secondLb.get(RequestPriority.NORMAL, NO_TIMEOUT)).isEqualTo("free");
+            assertThat(controller.getInFlight()).isZero();
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * 64 clients send requests with a timeout of 20ms to a backend that handles 4 requests at a time at 2ms each, so
+     * it is overloaded eight times. Without admission control every request queues up in the backend and misses its
+     * timeout, with it the backend keeps answering in time and the excess is shed up front.
+     */
+    @Test
+    void simulation_overloadShouldKeepGoodput() throws Exception {
+        // given
+        long unprotected = simulate(null).good.get();
+
+        // when
+        Outcome outcome = simulate(new AdmissionController(4, 16, 5 * MILLIS, 100 * MILLIS));
+
+        // then
+        assertThat(outcome.good.get()).isGreaterThan(Math.max(200, 3 * unprotected));
+        // critical traffic survives the overload
+        assertThat(outcome.criticalGood.get()).isGreaterThanOrEqualTo(outcome.criticalSent.get() * 9 / 10);
+    }
+
+    private static Outcome simulate(AdmissionController controller) throws RegistryFullException,
+            InterruptedException {
+        ProviderRegistry registry = new ProviderRegistry("overload");
+        try {
+            Backend backend = new Backend(4);
+            registry.registerProvider(new ProviderRegistryItem(backend, 1, new FixedConcurrencyLimit(1000)));
+            Loadbalancer lb = new Loadbalancer(new RandomLBStrategy(registry), ExecutionMode.PROVIDER_EXECUTOR, null,
+                    controller);
+
+            Outcome outcome = new Outcome();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            List<Thread> clients = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                RequestPriority priority = i % 8 == 0 ? RequestPriority.CRITICAL : RequestPriority.NORMAL;
+                Thread client = new Thread(() -> outcome.run(lb, priority, end));
+                clients.add(client);
+                client.start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            return outcome;
+        } finally {
+            registry.close();
+        }
+    }
+
+    private static void acquire(AdmissionController controller, RequestPriority priority, long timeoutNanos)
+            throws ServiceUnavailableException {
+        controller.acquire(priority, System.nanoTime(), timeoutNanos);
+    }
+
+    private static CompletableFuture<Void> acquireInThread(AdmissionController controller, RequestPriority priority,
+                                                           long timeoutNanos) {
+        CompletableFuture<Void> admitted = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                acquire(controller, priority, timeoutNanos);
+                admitted.complete(null);
+            } catch (ServiceUnavailableException e) {
+                admitted.completeExceptionally(e);
+            }
+        }).start();
+        return admitted;
+    }
+
+    private static void assertShed(CompletableFuture<Void> request) throws InterruptedException, TimeoutException {
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> request.get(1, TimeUnit.SECONDS));
+        assertThat(e.getCause()).isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    private static void awaitQueueLength(AdmissionController controller, int length) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (controller.getQueueLength() != length && System.nanoTime() < end) {
+            Thread.sleep(1);
+        }
+        assertThat(controller.getQueueLength()).isEqualTo(length);
+    }
+
+    private static void awaitInFlight(AdmissionController controller, int inFlight) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (controller.getInFlight() != inFlight && System.nanoTime() < end) {
+            Thread.sleep(1);
+        }
+        assertThat(controller.getInFlight()).isEqualTo(inFlight);
+    }
+
+    private static final class Outcome {
+        // the deadline of the clients, only checked here: a provider timeout would add the latency based skipping of
+        // the Loadbalancer, and a single stalled call would then shed all requests regardless of admission control
+        private static final long TIMEOUT_NANOS = 20 * MILLIS;
+
+        private final AtomicLong good = new AtomicLong();
+        private final AtomicLong criticalSent = new AtomicLong();
+        private final AtomicLong criticalGood = new AtomicLong();
+
+        private void run(Loadbalancer lb, RequestPriority priority, long end) {
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                try {
+                    lb.get(priority, NO_TIMEOUT);
+                    // an answer after the timeout is wasted work
+                    if (System.nanoTime() - start <= TIMEOUT_NANOS) {
+                        good.incrementAndGet();
+                        if (priority == RequestPriority.CRITICAL) {
+                            criticalGood.incrementAndGet();
+                        }
+                    }
+                } catch (ServiceUnavailableException e) {
+                    // back off before trying again
+                    sleep(5);
+                } catch (RuntimeException e) {
+                    // a rejected call is a failed request, the client goes on
+                }
+                if (priority == RequestPriority.CRITICAL) {
+                    criticalSent.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Backend with a fixed number of workers, requests beyond that wait for one in line.
+     */
+    private static final class Backend extends InMemoryProvider {
+        private final Semaphore workers;
+
+        private Backend(int workers) {
+            super("backend");
+            this.workers = new Semaphore(workers, true);
+        }
+
+        @Override
+        public String get() {
+            workers.acquireUninterruptibly();
+            try {
+                sleep(2);
+                return getUid();
+            } finally {
+                workers.release();
+            }
+        }
+    }
+
+    /**
+     * Provider answering once the latch is released.
+     */
+    private static final class LatchedProvider extends InMemoryProvider {
+        private final CountDownLatch release;
+
+        private LatchedProvider(String uid, CountDownLatch release) {
+            super(uid);
+            this.release = release;
+        }
+
+        @Override
+        public String get() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return getUid();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void getValueAtPercentile_shouldFindPercentilesOfUniformValues() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram(WINDOW);
+        long now = System.nanoTime();
+
+        // when
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i), now);
+        }
+
+        // then
+        assertThat(histogram.getCount(now)).isEqualTo(1000);
+        assertThat((double) histogram.getValueAtPercentile(50, now)).isCloseTo(500_000, within(500_000 / 8.0));
+        assertThat((double) histogram.getValueAtPercentile(99, now)).isCloseTo(990_000, within(990_000 / 8.0));
+    }
+
+    @Test
+    void getValueAtPercentile_shouldForgetOldWindows() {
+        // given a window full of slow calls
+        LatencyHistogram histogram = new LatencyHistogram(WINDOW);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(TimeUnit.SECONDS.toNanos(1), now);
+        }
+
+        // when two windows of fast calls follow
+        for (int i = 0; i < 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1), now + WINDOW);
+        }
+        histogram.getCount(now + 2 * WINDOW);
+
+        // then
+        assertThat(histogram.getValueAtPercentile(100, now + 2 * WINDOW)).isLessThan(TimeUnit.MILLISECONDS.toNanos(2));
+    }
+}
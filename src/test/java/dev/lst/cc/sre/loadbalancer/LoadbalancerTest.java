@@ -1,19 +1,40 @@
 package dev.lst.cc.sre.loadbalancer;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import dev.lst.cc.sre.loadbalancer.strategy.ConsistentHashLBStrategy;
+import dev.lst.cc.sre.loadbalancer.strategy.LBStrategy;
 import dev.lst.cc.sre.loadbalancer.strategy.RandomLBStrategy;
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.metrics.Metrics;
+import dev.lst.cc.sre.metrics.StrategyMetrics;
+import dev.lst.cc.sre.provider.BlockingProviderAdapter;
 import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.provider.ProviderStatus;
+import dev.lst.cc.sre.provider.SlowInMemoryProvider;
+import dev.lst.cc.sre.registry.CircuitBreaker;
+import dev.lst.cc.sre.registry.FixedConcurrencyLimit;
 import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderTimeoutException;
 import dev.lst.cc.sre.registry.RegistryFullException;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-
 class LoadbalancerTest {
 
     Loadbalancer lb = new Loadbalancer(RandomLBStrategy.INSTANCE);
@@ -34,6 +55,106 @@ class LoadbalancerTest {
         assertThat(lb.get()).isEqualTo(providerUid);
     }
 
+    @Test
+    public void getAsync_shouldAnswer() throws Exception {
+        // given
+        String providerUid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(providerUid)));
+
+        // then
+        assertThat(lb.getAsync().get(1, TimeUnit.SECONDS)).isEqualTo(providerUid);
+        assertThat(lb.getAsync("key").get(1, TimeUnit.SECONDS)).isEqualTo(providerUid);
+    }
+
+    @Test
+    public void get_poolsShouldOnlyAnswerFromTheirOwnProviders() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        ProviderRegistry eu = new ProviderRegistry("eu");
+        ProviderRegistry us = new ProviderRegistry("us");
+        Loadbalancer euLb = new Loadbalancer(new RoundRobinLBStrategy(eu));
+        Loadbalancer usLb = new Loadbalancer(new RoundRobinLBStrategy(us));
+        euLb.registerProvider(new ProviderRegistryItem(new InMemoryProvider("eu-1")));
+        euLb.registerProvider(new ProviderRegistryItem(new InMemoryProvider("eu-2")));
+        usLb.registerProvider(new ProviderRegistryItem(new InMemoryProvider("us-1")));
+
+        // when
+        euLb.excludeProvider("eu-1");
+
+        // then
+        for (int i = 0; i < 10; i++) {
+            assertThat(euLb.get()).isEqualTo("eu-2");
+            assertThat(usLb.get()).isEqualTo("us-1");
+        }
+        assertThat(registry.size()).isZero();
+        eu.close();
+        Assertions.assertThrows(ServiceUnavailableException.class, euLb::get);
+        assertThat(usLb.get()).isEqualTo("us-1");
+        us.close();
+    }
+
+    @Test
+    public void getAsync_noProvidersShouldFailWithServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        CompletableFuture<String> answer = lb.getAsync();
+
+        // then
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class, answer::get);
+        assertThat(failure.getCause()).isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    public void getAsync_virtualThreadsShouldRun100kConcurrentSlowCallsWithBoundedResources() throws Exception {
+        // given 10 slow providers (2 seconds per call) that allow way more than 10 concurrent calls each
+        Loadbalancer virtualThreadLb = new Loadbalancer(RandomLBStrategy.INSTANCE, ExecutionMode.VIRTUAL_THREADS);
+        for (int i = 0; i < 10; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new SlowInMemoryProvider(UUID.randomUUID().toString()),
+                    1, new FixedConcurrencyLimit(20_000)));
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int platformThreadsBefore = threads.getThreadCount();
+        long heapBefore = usedHeap();
+
+        // when
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            answers.add(virtualThreadLb.getAsync());
+        }
+
+        // then all of them are ongoing at the same time, without a platform thread per call
+        int ongoing = registry.getActiveProviders().stream().mapToInt(ProviderRegistryItem::getOngoingRequests).sum();
+        assertThat(ongoing).isGreaterThan(90_000);
+        assertThat(threads.getThreadCount() - platformThreadsBefore).isLessThan(2 * Runtime.getRuntime().availableProcessors() + 16);
+        assertThat(usedHeap() - heapBefore).isLessThan(512L * 1024 * 1024);
+
+        CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        assertThat(registry.getActiveProviders().stream().mapToInt(ProviderRegistryItem::getOngoingRequests).sum()).isZero();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void getWithKey_shouldStickToOneProvider() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        Loadbalancer consistentHashLb = new Loadbalancer(ConsistentHashLBStrategy.INSTANCE);
+        for (int i = 0; i < 5; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString())));
+        }
+
+        // when
+        String first = consistentHashLb.get("tenant-1");
+
+        // then
+        for (int i = 0; i < 20; i++) {
+            assertThat(consistentHashLb.get("tenant-1")).isEqualTo(first);
+        }
+    }
+
     @Test
     public void excludeProvider_ShouldExcludeProvider() throws RegistryFullException {
         // given
@@ -62,4 +183,300 @@ class LoadbalancerTest {
         System.out.println(activeProviders.size());
         assertThat(activeProviders.size()).isEqualTo(1);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void get_retryShouldAnswerFromOtherProvider() throws Exception {
+        // given
+        Loadbalancer retryingLb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE, ExecutionMode.PROVIDER_EXECUTOR,
+                new RetryPolicy(2, false, 95, 0, 0, new RetryBudget()));
+        FailingProvider failing = new FailingProvider("failing");
+        registry.registerProvider(new ProviderRegistryItem(failing));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("healthy")));
+
+        // when
+        // then
+        for (int i = 0; i < 8; i++) {
+            assertThat(retryingLb.get()).isEqualTo("healthy");
+        }
+        assertThat(failing.calls.get()).isGreaterThan(0);
+    }
+
+    @Test
+    public void get_retryBudgetShouldLimitRetries() throws Exception {
+        // given a budget of 2 retries that is never refilled
+        RetryBudget budget = new RetryBudget(0, 2);
+        Loadbalancer retryingLb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE, ExecutionMode.PROVIDER_EXECUTOR,
+                new RetryPolicy(2, false, 95, 0, 0, budget));
+        FailingProvider failing = new FailingProvider("failing");
+        registry.registerProvider(new ProviderRegistryItem(failing));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("healthy")));
+
+        // when
+        int failures = 0;
+        for (int i = 0; i < 8; i++) {
+            try {
+                retryingLb.get();
+            } catch (IllegalStateException e) {
+                failures++;
+            }
+        }
+
+        // then every failed call beyond the budget reaches the caller
+        assertThat(budget.getAvailableTokens()).isZero();
+        assertThat(failures).isEqualTo(failing.calls.get() - 2);
+    }
+
+    @Test
+    public void get_hedgingShouldCutP99WithOneSlowProvider() throws Exception {
+        // given 9 fast providers and one taking 2 seconds
+        registry.registerProvider(new ProviderRegistryItem(new SlowInMemoryProvider("slow")));
+        for (int i = 0; i < 9; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("fast-" + i)));
+        }
+        Loadbalancer plainLb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE);
+        Loadbalancer hedgingLb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE, ExecutionMode.PROVIDER_EXECUTOR,
+                new RetryPolicy(2, true, 80, TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.MILLISECONDS.toNanos(100),
+                        new RetryBudget(0.2, 10)));
+
+        // when
+        long plainP99 = p99(plainLb, 10);
+        long hedgedP99 = p99(hedgingLb, 300);
+
+        // then round robin hits the slow provider once in 10 calls, hedging answers those from another provider
+        assertThat(plainP99).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(2));
+        assertThat(hedgedP99).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void getCoalesced_shouldAnswerIdenticalRequestsWithOneCall() throws Exception {
+        // given a provider that only answers once released
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("held") {
+            @Override
+            public String get() {
+                calls.incrementAndGet();
+                release.join();
+                return super.get();
+            }
+        }));
+
+        // when
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            answers.add(lb.getCoalesced("tenant-1"));
+        }
+        release.complete(null);
+
+        // then
+        for (CompletableFuture<String> answer : answers) {
+            assertThat(answer.get(1, TimeUnit.SECONDS)).isEqualTo("held");
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(lb.getCoalescedRequests()).isEqualTo(4);
+    }
+
+    @Test
+    public void getAsync_admissionControlShouldShedWithoutFreeSlot() throws Exception {
+        // given a provider that only answers once released and room for one request
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("held") {
+            @Override
+            public String get() {
+                release.join();
+                return super.get();
+            }
+        }));
+        AdmissionController admission = new AdmissionController(1);
+        Loadbalancer admitted = new Loadbalancer(RandomLBStrategy.INSTANCE, ExecutionMode.PROVIDER_EXECUTOR, null,
+                admission);
+
+        // when
+        CompletableFuture<String> first = admitted.getAsync();
+        CompletableFuture<String> second = admitted.getAsync();
+
+        // then the second one is shed right away, the slot is free again once the first one answered
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class, second::get);
+        assertThat(failure.getCause()).isInstanceOf(ServiceUnavailableException.class);
+        release.complete(null);
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo("held");
+        assertThat(admitted.get()).isEqualTo("held");
+        assertThat(admission.getInFlight()).isZero();
+    }
+
+    @Test
+    public void get_timeoutShouldAbandonSlowProvider() throws Exception {
+        // given a provider taking 2s
+        ProviderRegistryItem slow = new ProviderRegistryItem(new SlowInMemoryProvider("slow"));
+        registry.registerProvider(slow);
+        long timeout = TimeUnit.MILLISECONDS.toNanos(500);
+
+        // when
+        long start = System.nanoTime();
+        Assertions.assertThrows(ProviderTimeoutException.class, () -> lb.get(timeout));
+        long took = System.nanoTime() - start;
+
+        // then the request ends at its timeout and the provider call no longer counts as ongoing
+        assertThat(took).isBetween(timeout, TimeUnit.SECONDS.toNanos(1));
+        assertThat(slow.getOngoingRequests()).isEqualTo(0);
+        // the same for asynchronous requests, with a longer timeout as the provider took at least 500ms now
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> lb.getAsync(2 * timeout).get(2, TimeUnit.SECONDS));
+        assertThat(failure.getCause()).isInstanceOf(ProviderTimeoutException.class);
+        assertThat(slow.getOngoingRequests()).isEqualTo(0);
+    }
+
+    @Test
+    public void get_timeoutShouldSkipProvidersTooSlowForIt() throws Exception {
+        // given round robin over a provider taking 2s and a fast one
+        registry.registerProvider(new ProviderRegistryItem(new SlowInMemoryProvider("slow")));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("fast")));
+        Loadbalancer roundRobin = new Loadbalancer(new RoundRobinLBStrategy(registry));
+        long timeout = TimeUnit.MILLISECONDS.toNanos(300);
+
+        // when the slow provider timed out once
+        for (int i = 0; i < 2; i++) {
+            try {
+                roundRobin.get(timeout);
+            } catch (ProviderTimeoutException e) {
+                // expected once
+            }
+        }
+        long shorterTimeout = TimeUnit.MILLISECONDS.toNanos(250);
+        long start = System.nanoTime();
+        List<String> answers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            answers.add(roundRobin.get(shorterTimeout));
+        }
+
+        // then its latency of at least 300ms rules it out for requests with less time
+        assertThat(answers).containsOnly("fast");
+        assertThat(System.nanoTime() - start).isLessThan(shorterTimeout);
+    }
+
+    @Test
+    public void get_noProviderFastEnoughShouldThrowServiceUnavailableException() throws Exception {
+        // given a provider that timed out before
+        registry.registerProvider(new ProviderRegistryItem(new SlowInMemoryProvider("slow")));
+        long timeout = TimeUnit.MILLISECONDS.toNanos(200);
+        Assertions.assertThrows(ProviderTimeoutException.class, () -> lb.get(timeout));
+
+        // when
+        // then a request with a shorter timeout does not even try it, one without timeout still does
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> lb.get(timeout / 2));
+        assertThat(lb.getAsync()).isNotDone();
+    }
+
+    @Test
+    public void getAsync_halfOpenProviderWithoutProbeSlotShouldFailAsUnavailable() throws Exception {
+        // given a half-open provider whose only probe slot is taken, picked by a strategy that doesn't know yet
+        ProviderRegistry pool = new ProviderRegistry("half-open");
+        CountDownLatch release = new CountDownLatch(1);
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("probed") {
+            @Override
+            public String get() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return getUid();
+            }
+        }, 1, new FixedConcurrencyLimit(10), new CircuitBreaker(10, 50, TimeUnit.SECONDS.toNanos(5), 80,
+                TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(1), 1));
+        CompletableFuture<String> probe = item.executeGetAsync();
+        item.setStatus(ProviderStatus.HALF_OPEN);
+        Loadbalancer halfOpenLb = new Loadbalancer(new FixedLBStrategy(pool, item));
+        StrategyMetrics metrics = Metrics.INSTANCE.strategy("half-open", FixedLBStrategy.class.getSimpleName());
+        long unavailable = metrics.getUnavailable();
+        long errors = metrics.getErrors();
+
+        try {
+            // when
+            List<CompletableFuture<String>> answers = List.of(halfOpenLb.getAsync(),
+                    halfOpenLb.getAsync(TimeUnit.SECONDS.toNanos(1)), halfOpenLb.getAsync("key"));
+
+            // then
+            for (CompletableFuture<String> answer : answers) {
+                ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                        () -> answer.get(1, TimeUnit.SECONDS));
+                assertThat(failure.getCause()).isInstanceOf(ServiceUnavailableException.class);
+            }
+            assertThat(metrics.getUnavailable() - unavailable).isEqualTo(3);
+            assertThat(metrics.getErrors()).isEqualTo(errors);
+        } finally {
+            release.countDown();
+            probe.get(1, TimeUnit.SECONDS);
+            pool.close();
+        }
+    }
+
+    @Test
+    public void get_rejectedCallShouldFailAsUnavailable() throws Exception {
+        // given a provider whose executor is full
+        registry.registerProvider(new ProviderRegistryItem(new BlockingProviderAdapter(new InMemoryProvider("full"),
+                command -> {
+                    throw new RejectedExecutionException("executor is full");
+                })));
+        StrategyMetrics metrics = Metrics.INSTANCE.strategy(registry.getName(), "RandomLBStrategy");
+        long unavailable = metrics.getUnavailable();
+        long timeout = TimeUnit.SECONDS.toNanos(1);
+
+        // when
+        // then
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> lb.get(timeout));
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> lb.getAsync(timeout).get(1, TimeUnit.SECONDS));
+        assertThat(failure.getCause()).isInstanceOf(ServiceUnavailableException.class);
+        assertThat(metrics.getUnavailable() - unavailable).isEqualTo(2);
+        assertThat(registry.getProvider("full").getOngoingRequests()).isZero();
+    }
+
+    private static long p99(Loadbalancer loadbalancer, int calls) throws ServiceUnavailableException {
+        long[] latencies = new long[calls];
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            loadbalancer.get();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies[(int) Math.ceil(calls * 0.99) - 1];
+    }
+
+    /**
+     * Strategy that always picks the same provider, whatever its status.
+     */
+    private static final class FixedLBStrategy implements LBStrategy {
+        private final ProviderRegistry registry;
+        private final ProviderRegistryItem item;
+
+        private FixedLBStrategy(ProviderRegistry registry, ProviderRegistryItem item) {
+            this.registry = registry;
+            this.item = item;
+        }
+
+        @Override
+        public ProviderRegistry getRegistry() {
+            return registry;
+        }
+
+        @Override
+        public ProviderRegistryItem getNext() {
+            return item;
+        }
+    }
+
+    private static final class FailingProvider extends InMemoryProvider {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private FailingProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public String get() {
+            calls.incrementAndGet();
+            throw new IllegalStateException("provider " + getUid() + " failed");
+        }
+    }
+}
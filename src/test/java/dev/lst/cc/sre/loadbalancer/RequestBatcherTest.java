@@ -0,0 +1,154 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.BatchProvider;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestBatcherTest {
+
+    private static final long LONG_DELAY = TimeUnit.SECONDS.toNanos(10);
+    private static final long SHORT_DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    Loadbalancer lb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @BeforeEach
+    void setup() {
+        registry.resetProviders();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        registry.resetProviders();
+    }
+
+    @Test
+    void submit_fullBatchShouldBeOneCall() throws Exception {
+        // given
+        CountingBatchProvider provider = new CountingBatchProvider("batching");
+        registry.registerProvider(new ProviderRegistryItem(provider));
+        RequestBatcher batcher = lb.batcher(8, LONG_DELAY, executor);
+
+        // when
+        List<CompletableFuture<String>> answers = submit(batcher, 16);
+
+        // then
+        for (CompletableFuture<String> answer : answers) {
+            assertThat(answer.get(1, TimeUnit.SECONDS)).isEqualTo("batching");
+        }
+        assertThat(provider.batches.get()).isEqualTo(2);
+        assertThat(provider.requests.get()).isEqualTo(16);
+    }
+
+    @Test
+    void submit_openBatchShouldBeDispatchedAfterDelay() throws Exception {
+        // given
+        CountingBatchProvider provider = new CountingBatchProvider("batching");
+        registry.registerProvider(new ProviderRegistryItem(provider));
+        RequestBatcher batcher = lb.batcher(100, SHORT_DELAY, executor);
+
+        // when
+        List<CompletableFuture<String>> answers = submit(batcher, 3);
+
+        // then
+        CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+        assertThat(provider.batches.get()).isEqualTo(1);
+        assertThat(provider.requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void submit_providerWithoutBatchSupportShouldAnswerEveryRequest() throws Exception {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("single")));
+        RequestBatcher batcher = lb.batcher(4, LONG_DELAY, executor);
+
+        // when
+        List<CompletableFuture<String>> answers = submit(batcher, 4);
+
+        // then
+        for (CompletableFuture<String> answer : answers) {
+            assertThat(answer.get(1, TimeUnit.SECONDS)).isEqualTo("single");
+        }
+        assertThat(registry.getProvider("single").getOngoingRequests()).isZero();
+    }
+
+    @Test
+    void submit_noProvidersShouldFailWholeBatch() {
+        // given
+        RequestBatcher batcher = lb.batcher(2, LONG_DELAY, executor);
+
+        // when
+        List<CompletableFuture<String>> answers = submit(batcher, 2);
+
+        // then
+        for (CompletableFuture<String> answer : answers) {
+            ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                    () -> answer.get(1, TimeUnit.SECONDS));
+            assertThat(failure.getCause()).isInstanceOf(ServiceUnavailableException.class);
+        }
+    }
+
+    @Test
+    void submit_rejectedDelayedBatchShouldFailItsRequests() throws Exception {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new CountingBatchProvider("batching")));
+        RequestBatcher batcher = lb.batcher(100, SHORT_DELAY, command -> {
+            throw new RejectedExecutionException("executor is shut down");
+        });
+
+        // when
+        List<CompletableFuture<String>> answers = submit(batcher, 3);
+
+        // then
+        for (CompletableFuture<String> answer : answers) {
+            ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                    () -> answer.get(1, TimeUnit.SECONDS));
+            assertThat(failure.getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+    }
+
+    private static List<CompletableFuture<String>> submit(RequestBatcher batcher, int requests) {
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            answers.add(batcher.submit());
+        }
+        return answers;
+    }
+
+    private static final class CountingBatchProvider extends InMemoryProvider implements BatchProvider {
+        private final AtomicInteger batches = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private CountingBatchProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public List<String> getBatch(int requests) {
+            batches.incrementAndGet();
+            this.requests.addAndGet(requests);
+            return Collections.nCopies(requests, getUid());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryBudgetTest {
+
+    @Test
+    void tryWithdraw_shouldAllowBurstUpToMaxTokens() {
+        // given
+        RetryBudget budget = new RetryBudget(0.1, 3);
+
+        // when
+        // then
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isFalse();
+    }
+
+    @Test
+    void deposit_shouldAllowRetriesAsFractionOfTraffic() {
+        // given an empty budget
+        RetryBudget budget = new RetryBudget(0.1, 100);
+        while (budget.tryWithdraw()) {
+            // drain
+        }
+
+        // when
+        int retries = 0;
+        for (int i = 0; i < 1000; i++) {
+            budget.deposit();
+            if (budget.tryWithdraw()) {
+                retries++;
+            }
+        }
+
+        // then
+        assertThat(retries).isEqualTo(100);
+    }
+
+    @Test
+    void deposit_shouldNotExceedMaxTokens() {
+        // given
+        RetryBudget budget = new RetryBudget(0.5, 2);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+
+        // then
+        assertThat(budget.getAvailableTokens()).isEqualTo(2);
+    }
+}
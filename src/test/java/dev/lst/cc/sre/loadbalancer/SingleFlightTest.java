@@ -0,0 +1,92 @@
+package dev.lst.cc.sre.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void execute_concurrentIdenticalRequestsShouldShareOneCall() throws Exception {
+        // given
+        CompletableFuture<String> running = new CompletableFuture<>();
+
+        // when
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            answers.add(singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                return running;
+            }));
+        }
+        running.complete("answer");
+
+        // then
+        for (CompletableFuture<String> answer : answers) {
+            assertThat(answer.get()).isEqualTo("answer");
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(singleFlight.getCoalesced()).isEqualTo(9);
+    }
+
+    @Test
+    void execute_differentKeysAndLaterRequestsShouldCallAgain() throws Exception {
+        // given
+        // when
+        String first = singleFlight.execute("a", this::call).get();
+        String second = singleFlight.execute("a", this::call).get();
+        String other = singleFlight.execute("b", this::call).get();
+
+        // then
+        assertThat(first).isEqualTo("call-1");
+        assertThat(second).isEqualTo("call-2");
+        assertThat(other).isEqualTo("call-3");
+        assertThat(singleFlight.getCoalesced()).isZero();
+    }
+
+    @Test
+    void execute_failureShouldReachAllWaitingRequests() {
+        // given
+        CompletableFuture<String> running = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> running);
+        CompletableFuture<String> second = singleFlight.execute("key", () -> running);
+
+        // when
+        running.completeExceptionally(new IllegalStateException("failed"));
+
+        // then
+        for (CompletableFuture<String> answer : List.of(first, second)) {
+            ExecutionException failure = Assertions.assertThrows(ExecutionException.class, answer::get);
+            assertThat(failure.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void execute_cancellingOneRequestShouldNotAffectOthers() throws Exception {
+        // given
+        CompletableFuture<String> running = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> running);
+        CompletableFuture<String> second = singleFlight.execute("key", () -> running);
+
+        // when
+        first.cancel(true);
+        running.complete("answer");
+
+        // then
+        assertThat(second.get()).isEqualTo("answer");
+    }
+
+    private CompletableFuture<String> call() {
+        return CompletableFuture.completedFuture("call-" + calls.incrementAndGet());
+    }
+}
@@ -0,0 +1,203 @@
+package dev.lst.cc.sre.loadbalancer.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import dev.lst.cc.sre.loadbalancer.Loadbalancer;
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingLoadbalancerTest {
+
+    private static final long TTL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long LONG_TTL = TimeUnit.MINUTES.toNanos(1);
+
+    ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    Loadbalancer lb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE);
+    CountingProvider provider = new CountingProvider("counting");
+
+    @BeforeEach
+    void setup() throws Exception {
+        registry.resetProviders();
+        registry.registerProvider(new ProviderRegistryItem(provider));
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.resetProviders();
+    }
+
+    @Test
+    void get_shouldServeFreshAnswerFromCache() throws Exception {
+        // given
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 10, LONG_TTL, 0);
+
+        // when
+        String first = cache.get("key");
+        String second = cache.get("key");
+
+        // then
+        assertThat(second).isEqualTo(first);
+        assertThat(provider.calls.get()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void get_shouldAskAgainAfterTtl() throws Exception {
+        // given
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 10, TTL, 0);
+        String first = cache.get("key");
+
+        // when
+        Thread.sleep(150);
+        String second = cache.get("key");
+
+        // then
+        assertThat(second).isNotEqualTo(first);
+        assertThat(provider.calls.get()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void get_staleAnswerShouldBeServedWhileRefreshing() throws Exception {
+        // given
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 10, TTL, LONG_TTL);
+        String first = cache.get("key");
+        Thread.sleep(150);
+
+        // when
+        String stale = cache.get("key");
+
+        // then
+        assertThat(stale).isEqualTo(first);
+        assertThat(cache.getStaleHits()).isEqualTo(1);
+        waitFor(() -> provider.calls.get() == 2);
+        waitFor(() -> {
+            try {
+                return !cache.get("key").equals(first);
+            } catch (ServiceUnavailableException e) {
+                return false;
+            }
+        });
+        assertThat(cache.get("key")).isEqualTo("counting-2");
+    }
+
+    @Test
+    void get_shouldKeepFrequentKeysAgainstOneOffKeys() throws Exception {
+        // given a full cache of keys asked for several times
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 10, LONG_TTL, 0);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get("hot-" + i);
+            }
+        }
+
+        // when lots of keys are asked for once, while the hot keys stay in use
+        for (int i = 0; i < 1000; i++) {
+            cache.get("cold-" + i);
+            cache.get("hot-" + i % 10);
+        }
+
+        // then nearly all one-off keys were turned away, a hot key that lost its slot to a rare sketch collision
+        // wins it back with its next request
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        assertThat(cache.getRejections()).isGreaterThan(950);
+        int callsBefore = provider.calls.get();
+        for (int i = 0; i < 10; i++) {
+            cache.get("hot-" + i);
+        }
+        assertThat(provider.calls.get() - callsBefore).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void get_keyAskedForOftenShouldReplaceLessFrequentOne() throws Exception {
+        // given
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 1, LONG_TTL, 0);
+        cache.get("old");
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            cache.get("new");
+        }
+
+        // then
+        int callsBefore = provider.calls.get();
+        cache.get("new");
+        assertThat(provider.calls.get()).isEqualTo(callsBefore);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void get_concurrentAccessShouldStayWithinMaxSize() throws Exception {
+        // given
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 50, LONG_TTL, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // when
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    cache.get("key-" + (i * 31 % 200));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(cache.size()).isLessThanOrEqualTo(50);
+        assertThat(cache.getHits() + cache.getMisses()).isEqualTo(40_000);
+    }
+
+    @Test
+    void get_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        registry.resetProviders();
+        CachingLoadbalancer cache = new CachingLoadbalancer(lb, 10, LONG_TTL, 0);
+
+        // when
+        // then
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> cache.get("key"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class CountingProvider extends InMemoryProvider {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public String get() {
+            return getUid() + "-" + calls.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.lst.cc.sre.loadbalancer.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrequencySketchTest {
+
+    @Test
+    void frequency_shouldCountUpToMax() {
+        // given
+        FrequencySketch sketch = new FrequencySketch(100);
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("five".hashCode());
+        }
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("many".hashCode());
+        }
+
+        // then
+        assertThat(sketch.frequency("five".hashCode())).isEqualTo(5);
+        assertThat(sketch.frequency("many".hashCode())).isEqualTo(FrequencySketch.MAX_COUNT);
+        assertThat(sketch.frequency("never".hashCode())).isZero();
+    }
+
+    @Test
+    void increment_shouldAgeOldFrequencies() {
+        // given
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < FrequencySketch.MAX_COUNT; i++) {
+            sketch.increment("old".hashCode());
+        }
+
+        // when another key gets popular, enough to reset the sketch twice
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment("new".hashCode());
+        }
+
+        // then
+        assertThat(sketch.frequency("old".hashCode())).isLessThanOrEqualTo(FrequencySketch.MAX_COUNT / 4);
+        assertThat(sketch.frequency("new".hashCode())).isGreaterThan(FrequencySketch.MAX_COUNT / 4);
+    }
+}
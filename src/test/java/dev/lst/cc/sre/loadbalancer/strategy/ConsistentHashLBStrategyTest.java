@@ -0,0 +1,179 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashLBStrategyTest {
+    private static final int KEYS = 10_000;
+
+    ProviderRegistry registry = new ProviderRegistry("consistent-hash");
+    ConsistentHashLBStrategy strategy = new ConsistentHashLBStrategy(registry);
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void getNext_sameKeyShouldGoToSameProvider() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registerItems(10);
+
+        // when
+        String first = strategy.getNext("tenant-42").getProviderUid();
+
+        // then
+        for (int i = 0; i < 100; i++) {
+            assertThat(strategy.getNext("tenant-42").getProviderUid()).isEqualTo(first);
+        }
+    }
+
+    @Test
+    public void getNext_keysShouldBeSpreadOverProviders() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registerItems(10);
+
+        // when
+        Map<String, Long> counts = new HashMap<>();
+        mapKeys().values().forEach(uid -> counts.merge(uid, 1L, Long::sum));
+
+        // then
+        assertThat(counts).hasSize(10);
+        counts.values().forEach(count -> assertThat(count).isBetween(KEYS / 10 / 2L, KEYS / 10 * 2L));
+    }
+
+    @Test
+    public void getNext_excludeAndIncludeShouldOnlyMoveKeysOfThatProvider() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        List<String> uids = registerItems(10);
+        Map<String, String> before = mapKeys();
+        String excluded = uids.get(4);
+
+        // when
+        registry.exclude(excluded);
+        Map<String, String> whileExcluded = mapKeys();
+
+        // then only the keys of the excluded provider moved, and those are about 1/10 of all keys
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals(whileExcluded.get(entry.getKey()))) {
+                assertThat(entry.getValue()).isEqualTo(excluded);
+                moved++;
+            }
+        }
+        assertThat(whileExcluded).doesNotContainValue(excluded);
+        assertThat(moved).isBetween(KEYS / 20, KEYS * 2 / 10);
+
+        // when
+        registry.include(excluded);
+
+        // then every key is back where it was
+        assertThat(mapKeys()).isEqualTo(before);
+    }
+
+    @Test
+    public void hashRing_heavyWeightsShouldBeCapped() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        for (int i = 0; i < 10; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString()),
+                    ProviderRegistryItem.MAX_WEIGHT));
+        }
+
+        // when
+        HashRing hashRing = new HashRing(registry.getRegisteredSnapshot());
+        Map<String, Long> counts = new HashMap<>();
+        mapKeys().values().forEach(uid -> counts.merge(uid, 1L, Long::sum));
+
+        // then
+        assertThat(hashRing.size()).isBetween(HashRing.MAX_POINTS - 10, HashRing.MAX_POINTS);
+        assertThat(counts).hasSize(10);
+        counts.values().forEach(count -> assertThat(count).isBetween(KEYS / 10 / 2L, KEYS / 10 * 2L));
+    }
+
+    @Test
+    public void getNext_overloadedProviderShouldBeSkipped() throws Exception {
+        // given
+        for (int i = 0; i < 5; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 300)));
+        }
+        ProviderRegistryItem home = strategy.getNext("session-1");
+
+        // when the provider of the key has way more than its fair share of ongoing requests
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<String>> ongoing = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ongoing.add(executor.submit(home::executeGet));
+        }
+        while (home.getOngoingRequests() < 3) {
+            Thread.sleep(5);
+        }
+
+        // then the key goes somewhere else for now
+        ProviderRegistryItem whileLoaded = strategy.getNext("session-1");
+        assertThat(whileLoaded).isNotSameAs(home);
+
+        // and comes back once the load is gone
+        for (Future<String> future : ongoing) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(strategy.getNext("session-1")).isSameAs(home);
+    }
+
+    @Test
+    public void getNext_withoutKeyShouldStillAnswer() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        List<String> uids = registerItems(3);
+
+        // then
+        assertThat(uids).contains(strategy.getNext().getProviderUid());
+        assertThat(uids).contains(strategy.getNext(null).getProviderUid());
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            strategy.getNext("key");
+        });
+    }
+
+    private Map<String, String> mapKeys() throws ServiceUnavailableException {
+        Map<String, String> mapping = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            mapping.put(key, strategy.getNext(key).getProviderUid());
+        }
+        return mapping;
+    }
+
+    private List<String> registerItems(int amount) throws RegistryFullException {
+        List<String> providerIds = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            String providerUid = UUID.randomUUID().toString();
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(providerUid)));
+            providerIds.add(providerUid);
+        }
+        return providerIds;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import dev.lst.cc.sre.provider.InMemoryProvider;
+
+/**
+ * Provider that takes a fixed amount of milliseconds to answer. Used to simulate pools of fast and slow providers.
+ */
+class FixedLatencyProvider extends InMemoryProvider {
+
+    private final long latencyMillis;
+
+    FixedLatencyProvider(String uid, long latencyMillis) {
+        super(uid);
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public String get() {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return getUid();
+    }
+}
@@ -0,0 +1,103 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeastConnectionsLBStrategyTest {
+    ProviderRegistry registry = new ProviderRegistry("least-connections");
+    LeastConnectionsLBStrategy strategy = new LeastConnectionsLBStrategy(registry);
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void getNext_shouldReturnProviderWithLeastOngoingRequests() throws Exception {
+        // given
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ProviderRegistryItem idle = new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString()));
+        Future<?>[] ongoing = new Future<?>[4];
+        for (int i = 0; i < 4; i++) {
+            ProviderRegistryItem loaded = new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 500));
+            registry.registerProvider(loaded);
+            ongoing[i] = executor.submit(loaded::executeGet);
+            while (loaded.getOngoingRequests() == 0) {
+                Thread.sleep(5);
+            }
+        }
+        registry.registerProvider(idle);
+
+        // when
+        // then
+        for (int i = 0; i < 100; i++) {
+            assertThat(strategy.getNext()).isSameAs(idle);
+        }
+        for (Future<?> future : ongoing) {
+            future.get();
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void getNext_tiesShouldBeSpreadOverProviders() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        for (int i = 0; i < 5; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString())));
+        }
+
+        // when
+        long distinct = IntStream.range(0, 200).mapToObj(i -> {
+            try {
+                return strategy.getNext().getProviderUid();
+            } catch (ServiceUnavailableException e) {
+                throw new IllegalStateException(e);
+            }
+        }).distinct().count();
+
+        // then
+        assertThat(distinct).isEqualTo(5);
+    }
+
+    @Test
+    public void getNext_shouldReduceTailLatencyWithSlowProvider() throws Exception {
+        // given 4 fast providers and one that takes 100 times as long
+        for (int i = 0; i < 4; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 1)));
+        }
+        registry.registerProvider(new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 100)));
+
+        // when
+        StrategySimulation random = StrategySimulation.run(new RandomLBStrategy(registry), 8, 1500);
+        StrategySimulation leastConnections = StrategySimulation.run(strategy, 8, 1500);
+
+        // then
+        assertThat(random.percentileMillis(0.99)).isGreaterThanOrEqualTo(100);
+        assertThat(leastConnections.percentileMillis(0.99)).isLessThan(random.percentileMillis(0.99) / 2);
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            strategy.getNext();
+        });
+    }
+}
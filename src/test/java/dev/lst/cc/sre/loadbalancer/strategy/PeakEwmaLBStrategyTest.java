@@ -0,0 +1,111 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeakEwmaLBStrategyTest {
+    ProviderRegistry registry = new ProviderRegistry("peak-ewma");
+    PeakEwmaLBStrategy strategy = new PeakEwmaLBStrategy(registry);
+
+    @BeforeEach
+    public void setup() {
+        strategy.setRandomSource(RandomSource.seeded(7));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void getNext_trafficShouldShiftAwayFromSlowProvider() throws Exception {
+        // given a slow provider whose first call is held until released, and 4 providers answering in 1ms
+        CountDownLatch release = new CountDownLatch(1);
+        ProviderRegistryItem slow = new ProviderRegistryItem(new InMemoryProvider("slow") {
+            @Override
+            public String get() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return getUid();
+            }
+        });
+        registry.registerProvider(slow);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CompletableFuture<String> firstRequest = slow.executeGetAsync(executor);
+        for (int i = 0; i < 4; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new FixedLatencyProvider("fast-" + i, 1)));
+        }
+
+        // when requests come in while its call is ongoing
+        Map<String, Integer> whileOngoing = callSequentially(200);
+
+        // then it is avoided because of its ongoing call without any response time
+        assertThat(whileOngoing).doesNotContainKey("slow");
+
+        // when it answered after at least 100ms
+        Thread.sleep(100);
+        release.countDown();
+        assertThat(firstRequest.get(1, TimeUnit.SECONDS)).isEqualTo("slow");
+        executor.shutdown();
+        Map<String, Integer> afterAnswer = callSequentially(200);
+
+        // then it is avoided because of its latency
+        assertThat(afterAnswer).doesNotContainKey("slow");
+    }
+
+    @Test
+    public void getNext_shouldPreferFasterProvider() throws Exception {
+        // given
+        ProviderRegistryItem fast = new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 1));
+        ProviderRegistryItem slow = new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 50));
+        registry.registerProvider(fast);
+        registry.registerProvider(slow);
+        fast.executeGet();
+        slow.executeGet();
+
+        // when
+        // then
+        for (int i = 0; i < 100; i++) {
+            assertThat(strategy.getNext()).isSameAs(fast);
+        }
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            strategy.getNext();
+        });
+    }
+
+    private Map<String, Integer> callSequentially(int calls) throws ServiceUnavailableException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < calls; i++) {
+            counts.merge(strategy.getNext().executeGet(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PowerOfTwoChoicesLBStrategyTest {
+    ProviderRegistry registry = new ProviderRegistry("power-of-two");
+    PowerOfTwoChoicesLBStrategy strategy = new PowerOfTwoChoicesLBStrategy(registry);
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void getNext_singleProviderShouldBeReturned() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+
+        // then
+        assertThat(strategy.getNext().getProviderUid()).isEqualTo(uid);
+    }
+
+    @Test
+    public void getNext_shouldPreferProviderWithLessOngoingRequests() throws Exception {
+        // given
+        ProviderRegistryItem idle = new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString()));
+        ProviderRegistryItem loaded = new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 500));
+        registry.registerProvider(idle);
+        registry.registerProvider(loaded);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> ongoing = executor.submit(loaded::executeGet);
+        while (loaded.getOngoingRequests() == 0) {
+            Thread.sleep(5);
+        }
+
+        // when
+        // then with two providers both are always compared, so the idle one has to win every time
+        for (int i = 0; i < 100; i++) {
+            assertThat(strategy.getNext()).isSameAs(idle);
+        }
+        ongoing.get();
+        executor.shutdown();
+    }
+
+    @Test
+    public void getNext_shouldReduceTailLatencyWithSlowProvider() throws Exception {
+        // given 4 fast providers and one that takes 100 times as long
+        for (int i = 0; i < 4; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 1)));
+        }
+        registry.registerProvider(new ProviderRegistryItem(new FixedLatencyProvider(UUID.randomUUID().toString(), 100)));
+
+        // when
+        StrategySimulation random = StrategySimulation.run(new RandomLBStrategy(registry), 8, 1500);
+        StrategySimulation powerOfTwo = StrategySimulation.run(strategy, 8, 1500);
+
+        // then random sends every fifth request to the slow provider, power of two choices almost none
+        assertThat(random.percentileMillis(0.99)).isGreaterThanOrEqualTo(100);
+        assertThat(powerOfTwo.percentileMillis(0.99)).isLessThan(random.percentileMillis(0.99) / 2);
+        assertThat(powerOfTwo.requests()).isGreaterThan(random.requests());
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            strategy.getNext();
+        });
+    }
+}
@@ -0,0 +1,233 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.provider.ProviderStatus;
+import dev.lst.cc.sre.registry.FixedConcurrencyLimit;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriorityLBStrategyTest {
+
+    private static final int REQUESTS = 20_000;
+
+    ProviderRegistry registry = new ProviderRegistry("tiers");
+    PriorityLBStrategy strategy = new PriorityLBStrategy(registry);
+    CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setup() {
+        strategy.setRandomSource(RandomSource.seeded(7));
+        registry.setMaxProviders(30);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        registry.close();
+    }
+
+    @Test
+    public void getNext_healthyPrimaryShouldGetAllRequests() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        register(0, 10);
+        register(1, 10);
+
+        // when
+        Map<Integer, Integer> tiers = requestsPerTier();
+
+        // then
+        assertThat(tiers).containsOnlyKeys(0);
+        assertThat(strategy.getLoad(0)).isEqualTo(1.0);
+        assertThat(strategy.getLoad(1)).isZero();
+    }
+
+    @Test
+    public void getNext_shouldMoveLoadToBackupTierAsPrimaryIsExcluded() throws RegistryFullException,
+            ServiceUnavailableException {
+        // given
+        register(0, 10);
+        register(1, 10);
+
+        // when 8 of 10 primaries are active, 8 / 10 * 1.4 is still more than 100%
+        exclude(0, 2);
+
+        // then
+        assertThat(requestsPerTier()).containsOnlyKeys(0);
+
+        // when 5 of 10 primaries are active, the primary tier is 70% healthy
+        exclude(0, 5);
+
+        // then
+        Map<Integer, Integer> tiers = requestsPerTier();
+        assertThat(strategy.getLoad(0)).isBetween(0.69, 0.71);
+        assertThat(strategy.getLoad(1)).isBetween(0.29, 0.31);
+        assertThat(tiers.get(0)).isBetween(13_600, 14_400);
+
+        // when all primaries are excluded
+        exclude(0, 10);
+
+        // then
+        assertThat(requestsPerTier()).containsOnlyKeys(1);
+
+        // when the primaries come back
+        for (int i = 0; i < 10; i++) {
+            registry.include("p0-" + i);
+        }
+
+        // then
+        assertThat(requestsPerTier()).containsOnlyKeys(0);
+    }
+
+    @Test
+    public void getLoad_removingExcludedProvidersShouldRecomputeLoad() throws RegistryFullException,
+            ServiceUnavailableException {
+        // given 5 of 10 primaries excluded
+        register(0, 10);
+        register(1, 10);
+        exclude(0, 5);
+        assertThat(strategy.getLoad(0)).isBetween(0.69, 0.71);
+
+        // when the excluded ones are removed, which leaves the active providers as they are
+        for (int i = 0; i < 5; i++) {
+            registry.removeProvider("p0-" + i);
+        }
+
+        // then all 5 remaining primaries are active
+        assertThat(strategy.getLoad(0)).isEqualTo(1.0);
+        assertThat(requestsPerTier()).containsOnlyKeys(0);
+    }
+
+    @Test
+    public void getNext_shouldMoveLoadToBackupTierWhilePrimaryIsBusy() throws RegistryFullException,
+            ServiceUnavailableException {
+        // given primaries that turn BUSY with a single call
+        List<ProviderRegistryItem> primaries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ProviderRegistryItem item = new ProviderRegistryItem(new BlockingProvider("p0-" + i, release), 1,
+                    new FixedConcurrencyLimit(1));
+            primaries.add(item);
+            registry.registerProvider(item);
+        }
+        register(1, 10);
+
+        // when 6 of 10 primaries are busy, the primary tier is 4 / 10 * 1.4 = 56% healthy
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            calls.add(primaries.get(i).executeGetAsync());
+        }
+
+        // then
+        assertThat(primaries.subList(0, 6)).allMatch(item -> item.getStatus() == ProviderStatus.BUSY);
+        assertThat(strategy.getLoad(0)).isBetween(0.55, 0.57);
+        assertThat(requestsPerTier().get(1)).isBetween(8_400, 9_200);
+
+        // when the calls finish
+        release.countDown();
+        calls.forEach(CompletableFuture::join);
+
+        // then
+        assertThat(requestsPerTier()).containsOnlyKeys(0);
+    }
+
+    @Test
+    public void getNext_shouldGradeLoadOverThreeTiers() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        register(0, 10);
+        register(1, 10);
+        register(2, 10);
+
+        // when both upper tiers are 30% active, 42% healthy each
+        exclude(0, 7);
+        exclude(1, 7);
+
+        // then the last tier gets the rest
+        assertThat(strategy.getLoad(0)).isBetween(0.41, 0.43);
+        assertThat(strategy.getLoad(1)).isBetween(0.41, 0.43);
+        assertThat(strategy.getLoad(2)).isBetween(0.15, 0.17);
+    }
+
+    @Test
+    public void getNext_shouldScaleLoadIfAllTiersAreUnhealthy() throws RegistryFullException,
+            ServiceUnavailableException {
+        // given
+        register(0, 10);
+        register(1, 10);
+
+        // when both tiers are 20% active, 28% healthy each, 56% together
+        exclude(0, 8);
+        exclude(1, 8);
+
+        // then the load is scaled up to 100%
+        assertThat(strategy.getLoad(0)).isBetween(0.49, 0.51);
+        assertThat(strategy.getLoad(1)).isBetween(0.49, 0.51);
+        assertThat(requestsPerTier().get(0)).isBetween(9_600, 10_400);
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() throws RegistryFullException {
+        // given
+        register(1, 2);
+        exclude(1, 2);
+
+        // when
+        // then
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> strategy.getNext());
+        assertThat(strategy.getLoad(1)).isZero();
+    }
+
+    private void register(int priority, int providers) throws RegistryFullException {
+        for (int i = 0; i < providers; i++) {
+            ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("p" + priority + "-" + i));
+            item.setPriority(priority);
+            registry.registerProvider(item);
+        }
+    }
+
+    private void exclude(int priority, int providers) {
+        for (int i = 0; i < providers; i++) {
+            registry.exclude("p" + priority + "-" + i);
+        }
+    }
+
+    private Map<Integer, Integer> requestsPerTier() throws ServiceUnavailableException {
+        Map<Integer, Integer> tiers = new HashMap<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            tiers.merge(strategy.getNext().getPriority(), 1, Integer::sum);
+        }
+        return tiers;
+    }
+
+    private static final class BlockingProvider extends InMemoryProvider {
+        private final CountDownLatch release;
+
+        private BlockingProvider(String uid, CountDownLatch release) {
+            super(uid);
+            this.release = release;
+        }
+
+        @Override
+        public String get() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return getUid();
+        }
+    }
+}
@@ -9,18 +9,19 @@ import dev.lst.cc.sre.provider.InMemoryProvider;
 import dev.lst.cc.sre.registry.ProviderRegistry;
 import dev.lst.cc.sre.registry.RegistryFullException;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class RandomLBStrategyTest {
-    ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    ProviderRegistry registry = new ProviderRegistry("random");
+    RandomLBStrategy strategy = new RandomLBStrategy(registry);
 
-    @BeforeEach
-    public void setup() throws RegistryFullException {
-        registry.resetProviders();
+    @AfterEach
+    public void tearDown() {
+        registry.close();
     }
 
     // this test is not perfect. there's a chance that this test will fail so we would need to do more iterations or think about a better way to test randomness.
@@ -32,7 +33,7 @@ class RandomLBStrategyTest {
         // when
         boolean allMatch = true;
         for (int i = 0; i < 10; i++) {
-            if (!registeredIds.get(i).equals(RandomLBStrategy.INSTANCE.getNext().getProviderUid())) {
+            if (!registeredIds.get(i).equals(strategy.getNext().getProviderUid())) {
                 allMatch = false;
             }
         }
@@ -48,10 +49,34 @@ class RandomLBStrategyTest {
 
         // when
         Assertions.assertThrows(ServiceUnavailableException.class, () -> {
-            RandomLBStrategy.INSTANCE.getNext();
+            strategy.getNext();
         });
     }
 
+    @Test
+    public void getNext_sameSeedShouldGiveSameSequence() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registerItems(10);
+
+        // when
+        strategy.setRandomSource(RandomSource.seeded(42));
+        List<String> first = nextUids(100);
+        strategy.setRandomSource(RandomSource.seeded(42));
+        List<String> second = nextUids(100);
+
+        // then
+        assertThat(first).isEqualTo(second);
+        assertThat(first.stream().distinct().count()).isGreaterThan(1);
+    }
+
+    private List<String> nextUids(int amount) throws ServiceUnavailableException {
+        List<String> uids = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            uids.add(strategy.getNext().getProviderUid());
+        }
+        return uids;
+    }
+
     private List<String> registerItems(int amount) throws RegistryFullException {
         List<String> providerIds = new ArrayList<>();
         for (int i = 0; i < amount; i++) {
@@ -1,26 +1,37 @@
 package dev.lst.cc.sre.loadbalancer.strategy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
 import dev.lst.cc.sre.provider.InMemoryProvider;
 import dev.lst.cc.sre.registry.ProviderRegistry;
 import dev.lst.cc.sre.registry.RegistryFullException;
 import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class RoundRobinLBStrategyTest {
-    ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    ProviderRegistry registry = new ProviderRegistry("round-robin");
+    RoundRobinLBStrategy strategy = new RoundRobinLBStrategy(registry);
 
-    @BeforeEach
-    public void setup() throws RegistryFullException {
-        registry.resetProviders();
+    @AfterEach
+    public void tearDown() {
+        registry.close();
     }
 
     @Test
@@ -31,7 +42,7 @@ class RoundRobinLBStrategyTest {
         // when
         boolean allMatch = true;
         for (int i = 0; i < 10; i++) {
-            if (registeredIds.get(i).equals(RoundRobinLBStrategy.INSTANCE.getNext().getProviderUid())) {
+            if (registeredIds.get(i).equals(strategy.getNext().getProviderUid())) {
                 allMatch = false;
             }
         }
@@ -47,10 +58,89 @@ class RoundRobinLBStrategyTest {
 
         // when
         Assertions.assertThrows(ServiceUnavailableException.class, () -> {
-            RoundRobinLBStrategy.INSTANCE.getNext();
+            strategy.getNext();
         });
     }
 
+    @Test
+    public void getNext_shouldDistributeEvenlyAcrossThreads() throws Exception {
+        // given
+        List<String> registeredIds = registerItems(10);
+
+        // when
+        Map<String, LongAdder> counts = callConcurrently(strategy, 8, 12_500);
+
+        // then every provider got exactly its share
+        assertThat(counts.keySet()).containsExactlyInAnyOrderElementsOf(registeredIds);
+        counts.values().forEach(count -> assertThat(count.sum()).isEqualTo(10_000));
+    }
+
+    @Test
+    public void getNext_shouldStayFairWhenActiveSetChanges() throws Exception {
+        // given
+        List<String> registeredIds = registerItems(10);
+        String flipping = registeredIds.get(3);
+        int threads = 6;
+        int flips = 200;
+
+        // when one provider is excluded and included again while the calls are running
+        Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                while (running.get()) {
+                    String uid = strategy.getNext().getProviderUid();
+                    counts.computeIfAbsent(uid, k -> new LongAdder()).increment();
+                }
+                return null;
+            });
+        }
+        for (int i = 0; i < flips; i++) {
+            if (i % 2 == 0) {
+                registry.exclude(flipping);
+            } else {
+                registry.include(flipping);
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+        }
+        running.set(false);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // then the 9 providers that stayed active got the same share each, up to a shifted position per change
+        long total = counts.values().stream().mapToLong(LongAdder::sum).sum();
+        List<Long> steady = registeredIds.stream()
+                .filter(uid -> !uid.equals(flipping))
+                .map(uid -> counts.get(uid).sum())
+                .toList();
+        long slack = flips;
+        assertThat(counts.get(flipping).sum()).isPositive();
+        assertThat(Collections.max(steady) - Collections.min(steady)).isLessThanOrEqualTo(slack);
+        steady.forEach(count -> assertThat(count).isBetween(total / 10 - slack, total / 9 + slack));
+    }
+
+    private Map<String, LongAdder> callConcurrently(RoundRobinLBStrategy strategy, int threads, int callsPerThread)
+            throws InterruptedException {
+        Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < callsPerThread; i++) {
+                    String uid = strategy.getNext().getProviderUid();
+                    counts.computeIfAbsent(uid, k -> new LongAdder()).increment();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        return counts;
+    }
+
     private List<String> registerItems(int amount) throws RegistryFullException {
         List<String> providerIds = new ArrayList<>();
         for (int i = 0; i < amount; i++) {
@@ -0,0 +1,124 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SmoothWeightedRoundRobinLBStrategyTest {
+    ProviderRegistry registry = new ProviderRegistry("smooth-wrr");
+    SmoothWeightedRoundRobinLBStrategy strategy = new SmoothWeightedRoundRobinLBStrategy(registry);
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void getNext_shouldInterleaveLikeNginx() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a"), 5));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b"), 1));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("c"), 1));
+
+        // when
+        String sequence = nextUids(7);
+
+        // then the strategy is a singleton, so we might start anywhere in the cycle
+        assertThat("aabacaa" + "aabacaa").contains(sequence);
+    }
+
+    @Test
+    public void getNext_shouldFollowWeightChangesAtRuntime() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a"), 3));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b"), 1));
+        assertThat(count(nextUids(400))).containsEntry('a', 300L).containsEntry('b', 100L);
+
+        // when
+        registry.setWeight("b", 3);
+
+        // then
+        assertThat(count(nextUids(400))).containsEntry('a', 200L).containsEntry('b', 200L);
+    }
+
+    @Test
+    public void getNext_shouldSkipProvidersThatAreNotSelectable() throws ServiceUnavailableException,
+            RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a"), 5));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b"), 1));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("c"), 1));
+
+        // when
+        registry.exclude("a");
+
+        // then the others keep their 1:1 share
+        assertThat(count(nextUids(200))).containsOnlyKeys('b', 'c').containsEntry('b', 100L);
+
+        // when
+        registry.include("a");
+
+        // then
+        assertThat(count(nextUids(700))).containsEntry('a', 500L);
+    }
+
+    @Test
+    public void cycle_shouldBeScaledDownForHugeWeights() throws RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a"), ProviderRegistryItem.MAX_WEIGHT));
+        for (int i = 0; i < 9; i++) {
+            registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b" + i), ProviderRegistryItem.MAX_WEIGHT - 1 - i));
+        }
+
+        // when
+        int[] cycle = SmoothWeightedRoundRobinLBStrategy.cycle(registry.getActiveSnapshot());
+
+        // then
+        assertThat(cycle.length).isLessThanOrEqualTo(SmoothWeightedRoundRobinLBStrategy.MAX_CYCLE_LENGTH + 10);
+        List<Integer> positions = new ArrayList<>();
+        for (int position : cycle) {
+            positions.add(position);
+        }
+        assertThat(positions).containsAll(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            strategy.getNext();
+        });
+    }
+
+    private String nextUids(int amount) throws ServiceUnavailableException {
+        StringBuilder uids = new StringBuilder();
+        for (int i = 0; i < amount; i++) {
+            uids.append(strategy.getNext().getProviderUid());
+        }
+        return uids.toString();
+    }
+
+    private Map<Character, Long> count(String uids) {
+        Map<Character, Long> counts = new HashMap<>();
+        for (char uid : uids.toCharArray()) {
+            counts.merge(uid, 1L, Long::sum);
+        }
+        return counts;
+    }
+}
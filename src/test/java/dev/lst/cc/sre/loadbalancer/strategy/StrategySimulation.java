@@ -0,0 +1,61 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a strategy against the registered providers from several threads for a fixed amount of time and records the
+ * latency of every request. Running for a fixed time instead of a fixed amount of requests keeps the runtime of the
+ * tests bounded, no matter how much traffic a strategy sends to the slow providers.
+ */
+class StrategySimulation {
+
+    private final List<Long> latenciesNanos;
+
+    private StrategySimulation(List<Long> latenciesNanos) {
+        this.latenciesNanos = latenciesNanos;
+    }
+
+    static StrategySimulation run(LBStrategy strategy, int threads, long durationMillis) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                start.await();
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+                while (System.nanoTime() < end) {
+                    long begin = System.nanoTime();
+                    strategy.getNext().executeGet();
+                    latencies.add(System.nanoTime() - begin);
+                }
+                return latencies;
+            }));
+        }
+        start.countDown();
+
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            latencies.addAll(future.get(durationMillis * 10, TimeUnit.MILLISECONDS));
+        }
+        executor.shutdown();
+        Collections.sort(latencies);
+        return new StrategySimulation(latencies);
+    }
+
+    int requests() {
+        return latenciesNanos.size();
+    }
+
+    long percentileMillis(double percentile) {
+        int index = (int) Math.ceil(percentile * latenciesNanos.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(latenciesNanos.get(Math.max(index, 0)));
+    }
+}
@@ -0,0 +1,84 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WeightedRandomLBStrategyTest {
+    ProviderRegistry registry = new ProviderRegistry("weighted-random");
+    WeightedRandomLBStrategy strategy = new WeightedRandomLBStrategy(registry);
+
+    @BeforeEach
+    public void setup() {
+        strategy.setRandomSource(RandomSource.seeded(7));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void getNext_shouldPickProportionalToWeight() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a"), 1));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b"), 2));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("c"), 7));
+
+        // when
+        Map<String, Long> counts = count(100_000);
+
+        // then
+        assertThat(counts.get("a")).isBetween(9_000L, 11_000L);
+        assertThat(counts.get("b")).isBetween(19_000L, 21_000L);
+        assertThat(counts.get("c")).isBetween(69_000L, 71_000L);
+    }
+
+    @Test
+    public void getNext_shouldFollowActiveSetAndWeightChanges() throws ServiceUnavailableException, RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a"), 1));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b"), 1));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("c"), 1));
+
+        // when
+        registry.exclude("c");
+        registry.setWeight("b", 4);
+        Map<String, Long> counts = count(50_000);
+
+        // then
+        assertThat(counts).doesNotContainKey("c");
+        assertThat(counts.get("a")).isBetween(9_000L, 11_000L);
+        assertThat(counts.get("b")).isBetween(39_000L, 41_000L);
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        // nothing
+
+        // when
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> {
+            strategy.getNext();
+        });
+    }
+
+    private Map<String, Long> count(int amount) throws ServiceUnavailableException {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < amount; i++) {
+            counts.merge(strategy.getNext().getProviderUid(), 1L, Long::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,198 @@
+package dev.lst.cc.sre.loadbalancer.strategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.loadbalancer.Loadbalancer;
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
+import dev.lst.cc.sre.registry.HealthCheckScheduler;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZoneAwareLBStrategyTest {
+
+    private static final int REQUESTS = 20_000;
+
+    // the test runs the health checks itself, the scheduled ones must not come in between
+    HealthCheckScheduler healthChecks = new HealthCheckScheduler(TimeUnit.HOURS.toNanos(1), TimeUnit.HOURS.toNanos(1),
+            HealthCheckScheduler.DEFAULT_TIMEOUT_NANOS, 1, HealthCheckScheduler.DEFAULT_TICK_NANOS);
+    ProviderRegistry registry = new ProviderRegistry("zones", healthChecks);
+    ZoneAwareLBStrategy strategy = new ZoneAwareLBStrategy(registry, "a");
+    Loadbalancer lb = new Loadbalancer(strategy);
+    List<ProviderRegistryItem> items = new ArrayList<>();
+    Map<String, ZoneProvider> providers = new HashMap<>();
+
+    @BeforeEach
+    public void setup() throws RegistryFullException {
+        strategy.setRandomSource(RandomSource.seeded(7));
+        registry.setMaxProviders(25);
+        // local zone a with 10 providers, zone b with 10 and zone c with 5
+        register("a", 10);
+        register("b", 10);
+        register("c", 5);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+        healthChecks.shutdown();
+    }
+
+    @Test
+    public void getNext_healthyLocalZoneShouldGetAllRequests() throws ServiceUnavailableException {
+        // given
+        // all providers healthy
+
+        // when
+        Map<String, Integer> zones = requestsPerZone();
+
+        // then
+        assertThat(zones).containsOnlyKeys("a");
+        assertThat(strategy.getLocalShare()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void getNext_shouldStayLocalAboveThreshold() throws ServiceUnavailableException {
+        // given 8 of 10 local providers healthy, above the threshold of 70%
+        setHealth("a", 2, ProviderHealthCheckStatus.ERROR);
+
+        // when
+        Map<String, Integer> zones = requestsPerZone();
+
+        // then
+        assertThat(zones).containsOnlyKeys("a");
+    }
+
+    @Test
+    public void getNext_shouldSpillOverProportionallyBelowThreshold() throws ServiceUnavailableException {
+        // given 5 of 10 local providers healthy, so 0.5 / 0.7 of the requests stay local
+        setHealth("a", 5, ProviderHealthCheckStatus.ERROR);
+
+        // when
+        Map<String, Integer> zones = requestsPerZone();
+
+        // then
+        assertThat(strategy.getLocalShare()).isBetween(0.71, 0.72);
+        assertThat(zones.get("a")).isBetween(13_800, 14_800);
+        // the rest spills over in proportion to the healthy providers of the other zones, 10 to 5
+        int spilled = zones.get("b") + zones.get("c");
+        assertThat((double) zones.get("b") / spilled).isBetween(0.63, 0.70);
+    }
+
+    @Test
+    public void getLocalShare_removingExcludedProvidersShouldRebuildSplit() throws ServiceUnavailableException {
+        // given 5 of 10 local providers excluded
+        setHealth("a", 5, ProviderHealthCheckStatus.ERROR);
+        assertThat(strategy.getLocalShare()).isBetween(0.71, 0.72);
+
+        // when the excluded ones are removed, which leaves the active providers as they are
+        for (int i = 0; i < 5; i++) {
+            registry.removeProvider("a-" + i);
+        }
+
+        // then all 5 remaining local providers are active
+        assertThat(strategy.getLocalShare()).isEqualTo(1.0);
+        assertThat(requestsPerZone()).containsOnlyKeys("a");
+    }
+
+    @Test
+    public void simulation_zoneFailureAndRecovery() throws ServiceUnavailableException {
+        // given
+        // all providers healthy
+
+        // when zone a fails
+        setHealth("a", 10, ProviderHealthCheckStatus.ERROR);
+
+        // then all requests go to the other zones
+        Map<String, Integer> zones = requestsPerZone();
+        assertThat(zones).containsOnlyKeys("b", "c");
+
+        // when zone a recovers: the first good health check makes its providers PENDING, the second one OK again
+        setHealth("a", 10, ProviderHealthCheckStatus.OK);
+        assertThat(requestsPerZone()).doesNotContainKey("a");
+        setHealth("a", 10, ProviderHealthCheckStatus.OK);
+
+        // then
+        assertThat(requestsPerZone()).containsOnlyKeys("a");
+    }
+
+    @Test
+    public void simulation_remoteZoneFailureShouldNotMatter() throws ServiceUnavailableException {
+        // given local zone a is degraded
+        setHealth("a", 6, ProviderHealthCheckStatus.ERROR);
+
+        // when zone b fails too
+        setHealth("b", 10, ProviderHealthCheckStatus.ERROR);
+        Map<String, Integer> zones = requestsPerZone();
+
+        // then the local share stays the same, all spilled requests go to zone c
+        assertThat(zones).containsOnlyKeys("a", "c");
+        assertThat(zones.get("a")).isBetween(10_900, 12_000);
+    }
+
+    @Test
+    public void getNext_noProvidersShouldThrowServiceUnavailableException() {
+        // given
+        registry.resetProviders();
+
+        // when
+        // then
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> strategy.getNext());
+    }
+
+    private void register(String zone, int providers) throws RegistryFullException {
+        for (int i = 0; i < providers; i++) {
+            ZoneProvider provider = new ZoneProvider(zone + "-" + i, zone);
+            ProviderRegistryItem item = new ProviderRegistryItem(provider);
+            items.add(item);
+            this.providers.put(provider.getUid(), provider);
+            registry.registerProvider(item);
+        }
+    }
+
+    /**
+     * Sets the health of the first providers of a zone and runs a health check on them.
+     */
+    private void setHealth(String zone, int providers, ProviderHealthCheckStatus health) {
+        items.stream()
+                .filter(item -> item.getZone().equals(zone))
+                .limit(providers)
+                .forEach(item -> {
+                    this.providers.get(item.getProviderUid()).health = health;
+                    item.healthCheck();
+                });
+    }
+
+    private Map<String, Integer> requestsPerZone() throws ServiceUnavailableException {
+        Map<String, Integer> zones = new HashMap<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            zones.merge(lb.get().split("-")[0], 1, Integer::sum);
+        }
+        return zones;
+    }
+
+    private static final class ZoneProvider extends InMemoryProvider {
+        private volatile ProviderHealthCheckStatus health = ProviderHealthCheckStatus.OK;
+
+        private ZoneProvider(String uid, String zone) {
+            super(uid, zone);
+        }
+
+        @Override
+        public ProviderHealthCheckStatus healthCheck() {
+            return health;
+        }
+    }
+}
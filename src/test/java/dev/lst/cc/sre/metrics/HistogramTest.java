@@ -0,0 +1,78 @@
+package dev.lst.cc.sre.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistogramTest {
+
+    @Test
+    void bucketOf_upperBoundShouldBeWithinOneEighth() {
+        // given
+        // when
+        // then
+        for (long value = 0; value < 1_000_000; value += 7) {
+            long upperBound = Histogram.upperBoundOf(Histogram.bucketOf(value));
+            assertThat(upperBound).isBetween(value, value + value / 8);
+        }
+        long max = Histogram.upperBoundOf(Histogram.bucketOf(Long.MAX_VALUE));
+        assertThat(max).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void getValueAtPercentile_shouldFindPercentilesOfUniformValues() {
+        // given
+        Histogram histogram = new Histogram();
+
+        // when
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        // then
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(histogram.getMean()).isEqualTo(5_000_500);
+        assertThat(histogram.getValueAtPercentile(50)).isBetween(5_000_000L, 5_625_000L);
+        assertThat(histogram.getValueAtPercentile(99)).isBetween(9_900_000L, 11_137_500L);
+        assertThat(histogram.getValueAtPercentile(100)).isBetween(10_000_000L, 11_250_000L);
+    }
+
+    @Test
+    void getValueAtPercentile_emptyShouldBeZero() {
+        // given
+        Histogram histogram = new Histogram();
+
+        // when
+        // nothing
+
+        // then
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMean()).isZero();
+        assertThat(histogram.getValueAtPercentile(99)).isZero();
+    }
+
+    @Test
+    void record_shouldNotLoseConcurrentValues() {
+        // given
+        Histogram histogram = new Histogram();
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+
+        // when 8 threads record the same values at the same time, so they race for the same buckets
+        for (int thread = 0; thread < 8; thread++) {
+            writers.add(CompletableFuture.runAsync(() -> {
+                for (long value = 0; value < 100_000; value++) {
+                    histogram.record(value % 1_000);
+                }
+            }));
+        }
+        CompletableFuture.allOf(writers.toArray(new CompletableFuture<?>[0])).join();
+
+        // then
+        assertThat(histogram.getCount()).isEqualTo(800_000);
+        assertThat(histogram.getValueAtPercentile(100)).isBetween(999L, 1_023L);
+    }
+}
@@ -0,0 +1,178 @@
+package dev.lst.cc.sre.metrics;
+
+import java.util.UUID;
+
+import dev.lst.cc.sre.loadbalancer.Loadbalancer;
+import dev.lst.cc.sre.loadbalancer.ServiceUnavailableException;
+import dev.lst.cc.sre.loadbalancer.strategy.RoundRobinLBStrategy;
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
+import dev.lst.cc.sre.registry.FixedConcurrencyLimit;
+import dev.lst.cc.sre.registry.ProviderRegistry;
+import dev.lst.cc.sre.registry.ProviderRegistryItem;
+import dev.lst.cc.sre.registry.RegistryFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsTest {
+
+    ProviderRegistry registry = ProviderRegistry.INSTANCE;
+    Metrics metrics = Metrics.INSTANCE;
+    Loadbalancer lb = new Loadbalancer(RoundRobinLBStrategy.INSTANCE);
+    StrategyMetrics strategyMetrics = metrics.strategy(registry.getName(), RoundRobinLBStrategy.class.getSimpleName());
+
+    @BeforeEach
+    public void setup() {
+        registry.resetProviders();
+        metrics.setEnabled(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        metrics.setEnabled(true);
+    }
+
+    @Test
+    public void get_shouldRecordProviderAndStrategyMetrics() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+        long strategyRequests = strategyMetrics.getRequests();
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            lb.get();
+        }
+
+        // then
+        ProviderMetrics providerMetrics = metrics.provider(registry.getName(), uid);
+        assertThat(providerMetrics.getRequests()).isEqualTo(10);
+        assertThat(providerMetrics.getErrors()).isZero();
+        assertThat(providerMetrics.getLatency().getCount()).isEqualTo(10);
+        assertThat(strategyMetrics.getRequests() - strategyRequests).isEqualTo(10);
+    }
+
+    @Test
+    public void get_shouldCountErrorsBusyAndUnavailable() throws RegistryFullException {
+        // given a failing provider that turns BUSY with its single call
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new FailingProvider(uid), 1, new FixedConcurrencyLimit(1)));
+        long strategyErrors = strategyMetrics.getErrors();
+        long strategyUnavailable = strategyMetrics.getUnavailable();
+
+        // when
+        Assertions.assertThrows(IllegalStateException.class, lb::get);
+        registry.exclude(uid);
+        Assertions.assertThrows(ServiceUnavailableException.class, lb::get);
+
+        // then
+        ProviderMetrics providerMetrics = metrics.provider(registry.getName(), uid);
+        assertThat(providerMetrics.getRequests()).isEqualTo(1);
+        assertThat(providerMetrics.getErrors()).isEqualTo(1);
+        assertThat(providerMetrics.getBusy()).isEqualTo(1);
+        assertThat(strategyMetrics.getErrors() - strategyErrors).isEqualTo(1);
+        assertThat(strategyMetrics.getUnavailable() - strategyUnavailable).isEqualTo(1);
+    }
+
+    @Test
+    public void healthCheck_shouldCountErrors() throws RegistryFullException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        FailingProvider provider = new FailingProvider(uid);
+        ProviderRegistryItem item = new ProviderRegistryItem(provider);
+        registry.registerProvider(item);
+
+        // when
+        item.healthCheck();
+
+        // then
+        assertThat(metrics.provider(registry.getName(), uid).getHealthCheckErrors()).isEqualTo(1);
+    }
+
+    @Test
+    public void setEnabled_disabledShouldNotRecord() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+        metrics.setEnabled(false);
+
+        // when
+        lb.get();
+
+        // then
+        assertThat(metrics.provider(registry.getName(), uid).getRequests()).isZero();
+    }
+
+    @Test
+    public void removeProvider_shouldDropProviderMetrics() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+        lb.get();
+
+        // when
+        registry.removeProvider(uid);
+
+        // then
+        assertThat(metrics.dump()).doesNotContain("provider.default." + uid);
+    }
+
+    @Test
+    public void get_poolsShouldNotShareMetrics() throws RegistryFullException, ServiceUnavailableException {
+        // given the same provider uid in two pools
+        ProviderRegistry other = new ProviderRegistry("metrics-other");
+        Loadbalancer otherLb = new Loadbalancer(new RoundRobinLBStrategy(other));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("shared-uid")));
+        other.registerProvider(new ProviderRegistryItem(new InMemoryProvider("shared-uid")));
+
+        // when
+        lb.get();
+        otherLb.get();
+        otherLb.get();
+
+        // then
+        assertThat(metrics.provider(registry.getName(), "shared-uid").getRequests()).isEqualTo(1);
+        assertThat(metrics.provider(other.getName(), "shared-uid").getRequests()).isEqualTo(2);
+        assertThat(metrics.strategy(other.getName(), "RoundRobinLBStrategy").getRequests()).isEqualTo(2);
+        other.close();
+    }
+
+    @Test
+    public void dump_shouldWriteOneLinePerMetric() throws RegistryFullException, ServiceUnavailableException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider(uid)));
+
+        // when
+        lb.get();
+        String dump = metrics.dump();
+
+        // then
+        assertThat(dump).contains("provider.default." + uid + ".requests 1\n");
+        assertThat(dump).contains("provider.default." + uid + ".busy 0\n");
+        assertThat(dump).containsPattern("provider\\.default\\." + uid + "\\.latency count=1 mean=\\d+ p50=\\d+ p99=\\d+ p999=\\d+\n");
+        assertThat(dump).contains("strategy.default.RoundRobinLBStrategy.requests ");
+        assertThat(dump.indexOf("strategy.")).isLessThan(dump.indexOf("provider."));
+    }
+
+    private static final class FailingProvider extends InMemoryProvider {
+
+        private FailingProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public String get() {
+            throw new IllegalStateException("provider " + getUid() + " failed");
+        }
+
+        @Override
+        public ProviderHealthCheckStatus healthCheck() {
+            return ProviderHealthCheckStatus.ERROR;
+        }
+    }
+}
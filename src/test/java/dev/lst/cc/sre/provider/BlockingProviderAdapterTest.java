@@ -0,0 +1,64 @@
+package dev.lst.cc.sre.provider;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlockingProviderAdapterTest {
+
+    @Test
+    void getAsync_shouldAnswerOnExecutor() throws Exception {
+        // given
+        String uid = UUID.randomUUID().toString();
+        BlockingProviderAdapter adapter = new BlockingProviderAdapter(new InMemoryProvider(uid));
+
+        // when
+        CompletableFuture<String> answer = adapter.getAsync();
+
+        // then
+        assertThat(answer.get(1, TimeUnit.SECONDS)).isEqualTo(uid);
+        assertThat(adapter.getUid()).isEqualTo(uid);
+    }
+
+    @Test
+    void getAsync_fullExecutorShouldFailInsteadOfBlocking() throws Exception {
+        // given one thread and room for one more call in the queue
+        CountDownLatch release = new CountDownLatch(1);
+        Provider blocking = new InMemoryProvider(UUID.randomUUID().toString()) {
+            @Override
+            public String get() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.get();
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        BlockingProviderAdapter adapter = new BlockingProviderAdapter(blocking, executor);
+
+        // when
+        CompletableFuture<String> running = adapter.getAsync();
+        CompletableFuture<String> queued = adapter.getAsync();
+        CompletableFuture<String> rejected = adapter.getAsync();
+
+        // then
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class, rejected::get);
+        assertThat(failure.getCause()).isInstanceOf(RejectedExecutionException.class);
+        release.countDown();
+        assertThat(running.get(1, TimeUnit.SECONDS)).isEqualTo(blocking.getUid());
+        assertThat(queued.get(1, TimeUnit.SECONDS)).isEqualTo(blocking.getUid());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,25 @@
+package dev.lst.cc.sre.registry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AimdConcurrencyLimitTest {
+
+    @Test
+    void limit_shouldFollowCapacityDownAndUp() {
+        // given calls count as slow once they take twice the base response time
+        LatencySimulation simulation = new LatencySimulation(new AimdConcurrencyLimit(10, 1, 1000, 0.9,
+                2 * LatencySimulation.BASE_RTT_NANOS));
+
+        // when
+        double healthy = simulation.run(40, 5_000);
+        double degraded = simulation.run(10, 5_000);
+        double recovered = simulation.run(40, 5_000);
+
+        // then
+        assertThat(healthy).isBetween(60.0, 90.0);
+        assertThat(degraded).isBetween(10.0, 25.0);
+        assertThat(recovered).isBetween(60.0, 90.0);
+    }
+}
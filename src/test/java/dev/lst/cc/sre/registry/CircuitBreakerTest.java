@@ -0,0 +1,266 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static dev.lst.cc.sre.provider.ProviderStatus.HALF_OPEN;
+import static dev.lst.cc.sre.provider.ProviderStatus.OK;
+import static dev.lst.cc.sre.provider.ProviderStatus.OPEN;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long OPEN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    ProviderRegistry registry = ProviderRegistry.INSTANCE;
+
+    @BeforeEach
+    void setup() {
+        registry.resetProviders();
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.resetProviders();
+    }
+
+    @Test
+    void executeGet_failuresShouldOpenBreaker() {
+        // given
+        FailingProvider provider = new FailingProvider("failing");
+        ProviderRegistryItem item = item(provider, 10);
+        provider.failing = true;
+
+        // when
+        for (int i = 0; i < 9; i++) {
+            Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+        }
+
+        // then not yet, the window needs 10 calls
+        assertThat(item.getStatus()).isEqualTo(OK);
+
+        // when
+        Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(OPEN);
+        assertThat(item.isSelectable()).isFalse();
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+    }
+
+    @Test
+    void executeGet_lowFailureRateShouldKeepBreakerClosed() {
+        // given
+        FailingProvider provider = new FailingProvider("flaky");
+        ProviderRegistryItem item = item(provider, 10);
+
+        // when every third call fails
+        for (int i = 0; i < 30; i++) {
+            provider.failing = i % 3 == 0;
+            try {
+                item.executeGet();
+            } catch (IllegalStateException expected) {
+                // counted by the breaker
+            }
+        }
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void executeGet_slowCallsShouldOpenBreaker() {
+        // given
+        CircuitBreaker breaker = new CircuitBreaker(5, 50, TimeUnit.MILLISECONDS.toNanos(1), 80,
+                WINDOW_NANOS, OPEN_NANOS, 2);
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("slow") {
+            @Override
+            public String get() {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.get();
+            }
+        }, 1, new FixedConcurrencyLimit(10), breaker);
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            item.executeGet();
+        }
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(OPEN);
+    }
+
+    @Test
+    void halfOpen_successfulProbesShouldCloseBreaker() {
+        // given
+        FailingProvider provider = new FailingProvider("recovering");
+        ProviderRegistryItem item = item(provider, 10);
+        provider.failing = true;
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+        }
+        provider.failing = false;
+
+        // when
+        item.halfOpen();
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(HALF_OPEN);
+        assertThat(item.isSelectable()).isTrue();
+        item.executeGet();
+        assertThat(item.getStatus()).isEqualTo(HALF_OPEN);
+        item.executeGet();
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void halfOpen_repeatedCallShouldKeepProbeResults() {
+        // given
+        FailingProvider provider = new FailingProvider("recovering");
+        ProviderRegistryItem item = item(provider, 10);
+        item.setStatus(OPEN);
+        item.halfOpen();
+        item.executeGet();
+
+        // when the switch to half-open comes in once more
+        item.halfOpen();
+
+        // then the first probe still counts
+        item.executeGet();
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void executeGet_halfOpenShouldRejectCallsBeyondProbeSlots() throws Exception {
+        // given a half-open provider with both probe slots taken
+        CountDownLatch release = new CountDownLatch(1);
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("probed") {
+            @Override
+            public String get() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return getUid();
+            }
+        }, 1, new FixedConcurrencyLimit(10), breaker(10));
+        item.setStatus(OPEN);
+        item.halfOpen();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CompletableFuture<String> first = item.executeGetAsync(executor);
+        CompletableFuture<String> second = item.executeGetAsync(executor);
+
+        // when
+        // then
+        assertThat(item.isSelectable()).isFalse();
+        Assertions.assertThrows(ProviderUnavailableException.class, item::executeGet);
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> item.executeGetAsync().get(1, TimeUnit.SECONDS));
+        assertThat(failure.getCause()).isInstanceOf(ProviderUnavailableException.class);
+        assertThat(item.getOngoingRequests()).isEqualTo(2);
+
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void halfOpen_failedProbeShouldOpenBreakerAgain() {
+        // given
+        FailingProvider provider = new FailingProvider("still-failing");
+        ProviderRegistryItem item = item(provider, 10);
+        provider.failing = true;
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+        }
+
+        // when
+        item.halfOpen();
+        Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(OPEN);
+    }
+
+    @Test
+    void recordClosed_shouldForgetOutcomesOutsideTheWindow() {
+        // given
+        CircuitBreaker expired = breaker(10);
+        CircuitBreaker recent = breaker(10);
+        for (int i = 0; i < 9; i++) {
+            assertThat(expired.recordClosed(true, 0, 0)).isFalse();
+            assertThat(recent.recordClosed(true, 0, 0)).isFalse();
+        }
+
+        // when
+        // then the tenth failure only opens the breaker while the first nine are still in the window
+        assertThat(expired.recordClosed(true, 0, WINDOW_NANOS)).isFalse();
+        assertThat(recent.recordClosed(true, 0, WINDOW_NANOS - 1)).isTrue();
+    }
+
+    @Test
+    void registry_shouldDropOpenProviderAndProbeItAfterOpenTime() throws Exception {
+        // given
+        // breaker trips before the outlier detection ejects the provider after 5 failures in a row
+        FailingProvider provider = new FailingProvider("registered");
+        ProviderRegistryItem item = item(provider, 4);
+        registry.registerProvider(item);
+        provider.failing = true;
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+        }
+
+        // then
+        assertThat(registry.getActiveProviders()).isEmpty();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (item.getStatus() != HALF_OPEN && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(item.getStatus()).isEqualTo(HALF_OPEN);
+        assertThat(registry.getActiveProviders()).containsExactly(item);
+    }
+
+    private static ProviderRegistryItem item(FailingProvider provider, int minimumCalls) {
+        return new ProviderRegistryItem(provider, 1, new FixedConcurrencyLimit(10), breaker(minimumCalls));
+    }
+
+    private static CircuitBreaker breaker(int minimumCalls) {
+        return new CircuitBreaker(minimumCalls, 50, TimeUnit.SECONDS.toNanos(5), 80, WINDOW_NANOS, OPEN_NANOS, 2);
+    }
+
+    private static final class FailingProvider extends InMemoryProvider {
+        private volatile boolean failing;
+
+        private FailingProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public String get() {
+            if (failing) {
+                throw new IllegalStateException("provider failed");
+            }
+            return super.get();
+        }
+    }
+}
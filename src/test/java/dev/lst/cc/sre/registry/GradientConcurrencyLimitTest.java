@@ -0,0 +1,24 @@
+package dev.lst.cc.sre.registry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GradientConcurrencyLimitTest {
+
+    @Test
+    void limit_shouldFollowCapacityDownAndUp() {
+        // given
+        LatencySimulation simulation = new LatencySimulation(new GradientConcurrencyLimit());
+
+        // when
+        double healthy = simulation.run(40, 5_000);
+        double degraded = simulation.run(10, 5_000);
+        double recovered = simulation.run(40, 5_000);
+
+        // then
+        assertThat(healthy).isBetween(30.0, 60.0);
+        assertThat(degraded).isBetween(5.0, 20.0);
+        assertThat(recovered).isBetween(30.0, 60.0);
+    }
+}
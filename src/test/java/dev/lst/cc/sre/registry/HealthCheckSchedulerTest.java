@@ -0,0 +1,164 @@
+package dev.lst.cc.sre.registry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static dev.lst.cc.sre.provider.ProviderStatus.EXCLUDED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HealthCheckSchedulerTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private HealthCheckScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void schedule_shouldCheckPeriodically() throws InterruptedException {
+        // given
+        scheduler = new HealthCheckScheduler(PERIOD, PERIOD, TIMEOUT, 2, TICK);
+        CountingProvider provider = new CountingProvider("counting", 0);
+
+        // when
+        scheduler.schedule(new ProviderRegistryItem(provider));
+        Thread.sleep(650);
+
+        // then the first check is within the first period, then one per period with 10% jitter
+        assertThat(provider.checks.get()).isBetween(4, 7);
+    }
+
+    @Test
+    void cancel_shouldStopChecks() throws InterruptedException {
+        // given
+        scheduler = new HealthCheckScheduler(0, PERIOD, TIMEOUT, 2, TICK);
+        CountingProvider provider = new CountingProvider("cancelled", 0);
+        HealthCheckScheduler.Registration registration = scheduler.schedule(new ProviderRegistryItem(provider));
+        waitFor(() -> provider.checks.get() > 0);
+
+        // when
+        registration.cancel();
+        int checks = provider.checks.get();
+        Thread.sleep(300);
+
+        // then
+        assertThat(provider.checks.get()).isEqualTo(checks);
+        waitFor(() -> scheduler.getEntryCount() == 0);
+        assertThat(scheduler.getEntryCount()).isZero();
+    }
+
+    @Test
+    void timeout_shouldExcludeHangingProviderWithoutStarvingOthers() throws InterruptedException {
+        // given a single worker and a provider that hangs in its health check
+        scheduler = new HealthCheckScheduler(0, PERIOD, TIMEOUT, 1, TICK);
+        CountingProvider hanging = new CountingProvider("hanging", 10_000);
+        CountingProvider healthy = new CountingProvider("healthy", 0);
+        ProviderRegistryItem hangingItem = new ProviderRegistryItem(hanging);
+
+        // when
+        scheduler.schedule(hangingItem);
+        scheduler.schedule(new ProviderRegistryItem(healthy));
+        Thread.sleep(650);
+
+        // then the hanging check timed out and got interrupted, so the worker was free for the other provider
+        assertThat(hangingItem.getStatus()).isEqualTo(EXCLUDED);
+        assertThat(healthy.checks.get()).isGreaterThanOrEqualTo(4);
+    }
+
+    @Test
+    void scheduleOnce_failingTaskShouldBeReportedWithoutStoppingTheWheel() throws InterruptedException {
+        // given
+        scheduler = new HealthCheckScheduler(PERIOD, PERIOD, TIMEOUT, 1, TICK);
+        List<Throwable> reported = new CopyOnWriteArrayList<>();
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> reported.add(e));
+        AtomicInteger runs = new AtomicInteger();
+        try {
+            // when
+            scheduler.scheduleOnce(() -> {
+                throw new IllegalStateException("failing task");
+            }, TICK);
+            scheduler.scheduleOnce(runs::incrementAndGet, 2 * TICK);
+            waitFor(() -> runs.get() > 0);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+
+        // then
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(scheduler.getFailedTasks()).isEqualTo(1);
+        assertThat(reported).singleElement().isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void schedule_10kProvidersShouldKeepThreadsAndEntriesFlat() throws InterruptedException {
+        // given
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        scheduler = new HealthCheckScheduler(PERIOD, PERIOD, TIMEOUT, 4, TICK);
+        List<CountingProvider> providers = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 10_000; i++) {
+            CountingProvider provider = new CountingProvider("provider-" + i, 0);
+            providers.add(provider);
+            scheduler.schedule(new ProviderRegistryItem(provider));
+        }
+        Thread.sleep(500);
+
+        // then every provider was checked several times, by the wheel thread plus 4 workers
+        assertThat(providers).allMatch(provider -> provider.checks.get() >= 2);
+        assertThat(threads.getThreadCount() - threadsBefore).isLessThanOrEqualTo(5);
+        // at most one entry per provider plus one timeout per running check
+        assertThat(scheduler.getEntryCount()).isLessThanOrEqualTo(2 * providers.size());
+        assertThat(scheduler.getSkippedChecks()).isZero();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class CountingProvider extends InMemoryProvider {
+        private final AtomicInteger checks = new AtomicInteger();
+        private final long sleepMillis;
+
+        private CountingProvider(String uid, long sleepMillis) {
+            super(uid);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public ProviderHealthCheckStatus healthCheck() {
+            checks.incrementAndGet();
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ProviderHealthCheckStatus.OK;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic model of a provider behind a concurrency limit: clients always want more calls than the limit, so
+ * the limit is fully used, and the provider answers in baseRtt up to its capacity of concurrent calls. Above that,
+ * calls queue and the response time grows with the overload.
+ */
+final class LatencySimulation {
+
+    static final long BASE_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ConcurrencyLimit limit;
+
+    LatencySimulation(ConcurrencyLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Feeds samples into the limit.
+     *
+     * @return average limit over the last quarter of the samples, after the limit had time to settle.
+     */
+    double run(int capacity, int samples) {
+        double sum = 0;
+        int counted = 0;
+        for (int i = 0; i < samples; i++) {
+            int inflight = limit.getLimit();
+            long rtt = (long) (BASE_RTT_NANOS * Math.max(1.0, (double) inflight / capacity));
+            limit.onSample(rtt, inflight, false);
+            if (i >= samples * 3 / 4) {
+                sum += limit.getLimit();
+                counted++;
+            }
+        }
+        return sum / counted;
+    }
+}
@@ -0,0 +1,303 @@
+package dev.lst.cc.sre.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dev.lst.cc.sre.provider.InMemoryProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static dev.lst.cc.sre.provider.ProviderStatus.EJECTED;
+import static dev.lst.cc.sre.provider.ProviderStatus.EXCLUDED;
+import static dev.lst.cc.sre.provider.ProviderStatus.OK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutlierDetectorTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long BASE_EJECTION = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_EJECTION = TimeUnit.MILLISECONDS.toNanos(300);
+    private static final long NO_SWEEP = TimeUnit.HOURS.toNanos(1);
+
+    private HealthCheckScheduler scheduler;
+    private final List<ProviderRegistryItem> pool = new ArrayList<>();
+    private OutlierDetector detector;
+
+    @BeforeEach
+    void setup() {
+        scheduler = new HealthCheckScheduler(0, NO_SWEEP, NO_SWEEP, 1, TICK);
+        // the sweep is called by the tests themselves
+        detector = new OutlierDetector(scheduler, () -> pool, 5, BASE_EJECTION, MAX_EJECTION, 10, NO_SWEEP, 1.9, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void executeGet_consecutiveErrorsShouldEjectUntilEjectionTimeIsOver() throws InterruptedException {
+        // given
+        FailingProvider provider = new FailingProvider("failing");
+        ProviderRegistryItem item = item(provider);
+        provider.failing = true;
+
+        // when
+        fail(item, 4);
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(OK);
+
+        // when
+        fail(item, 1);
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(EJECTED);
+        assertThat(item.isSelectable()).isFalse();
+        Thread.sleep(200);
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void executeGet_successShouldResetConsecutiveErrors() {
+        // given
+        FailingProvider provider = new FailingProvider("flaky");
+        ProviderRegistryItem item = item(provider);
+
+        // when
+        provider.failing = true;
+        fail(item, 4);
+        provider.failing = false;
+        item.executeGet();
+        provider.failing = true;
+        fail(item, 4);
+
+        // then
+        assertThat(item.getConsecutiveErrors()).isEqualTo(4);
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void executeGet_consecutiveErrorsAfterEjectionShouldEjectForTwiceAsLong() throws InterruptedException {
+        // given a provider that was ejected once and is back
+        FailingProvider provider = new FailingProvider("repeated");
+        ProviderRegistryItem item = item(provider);
+        provider.failing = true;
+        fail(item, 5);
+        assertThat(item.getStatus()).isEqualTo(EJECTED);
+        Thread.sleep(150);
+        assertThat(item.getStatus()).isEqualTo(OK);
+
+        // when it keeps failing
+        fail(item, 5);
+
+        // then the second ejection takes 200ms
+        assertThat(item.getStatus()).isEqualTo(EJECTED);
+        Thread.sleep(150);
+        assertThat(item.getStatus()).isEqualTo(EJECTED);
+        Thread.sleep(100);
+        assertThat(item.getStatus()).isEqualTo(OK);
+        assertThat(item.getEjections()).isEqualTo(2);
+
+        // when healthy for two sweeps
+        provider.failing = false;
+        item.executeGet();
+        detector.sweep();
+        detector.sweep();
+
+        // then
+        assertThat(item.getEjections()).isZero();
+    }
+
+    @Test
+    void executeGet_providerDeniedByTheGuardShouldBeEjectedWithItsNextError() {
+        // given 10% of 10 providers, one of them ejected
+        List<ProviderRegistryItem> items = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            items.add(item(new FailingProvider("provider-" + i)));
+        }
+        FailingProvider provider = new FailingProvider("failing");
+        ProviderRegistryItem failing = item(provider);
+        provider.failing = true;
+        detector.eject(items.get(0));
+        fail(failing, 5);
+        assertThat(failing.getStatus()).isEqualTo(OK);
+
+        // when the place is free again
+        items.get(0).include();
+        fail(failing, 1);
+
+        // then
+        assertThat(failing.getStatus()).isEqualTo(EJECTED);
+    }
+
+    @Test
+    void eject_timerOfEarlierEjectionShouldNotEndNewOne() throws InterruptedException {
+        // given an ejection of 100ms that ended early
+        ProviderRegistryItem item = item(new FailingProvider("included"));
+        detector.eject(item);
+        item.include();
+
+        // when ejected again, now for 200ms
+        detector.eject(item);
+        Thread.sleep(150);
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(EJECTED);
+        Thread.sleep(100);
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void eject_shouldRespectMaxEjectionPercent() {
+        // given 10% of 10 providers
+        List<ProviderRegistryItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(item(new FailingProvider("provider-" + i)));
+        }
+
+        // when
+        boolean first = detector.eject(items.get(0));
+        boolean second = detector.eject(items.get(1));
+
+        // then
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(items.get(1).getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void eject_endedEjectionShouldFreeItsPlace() {
+        // given 10% of 10 providers, one of them ejected
+        List<ProviderRegistryItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(item(new FailingProvider("provider-" + i)));
+        }
+        detector.eject(items.get(0));
+
+        // when it is included again early
+        items.get(0).include();
+
+        // then
+        assertThat(detector.getEjectedCount()).isZero();
+        assertThat(detector.eject(items.get(1))).isTrue();
+
+        // when the ejected provider is removed from the pool
+        items.get(1).setOutlierDetector(null);
+
+        // then
+        assertThat(detector.getEjectedCount()).isZero();
+        assertThat(detector.eject(items.get(2))).isTrue();
+        assertThat(detector.getEjectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void eject_shouldAlwaysAllowOneProviderInSmallPools() {
+        // given 10% of 3 providers is less than one
+        ProviderRegistryItem first = item(new FailingProvider("first"));
+        ProviderRegistryItem second = item(new FailingProvider("second"));
+        item(new FailingProvider("third"));
+
+        // when
+        // then
+        assertThat(detector.eject(first)).isTrue();
+        assertThat(detector.eject(second)).isFalse();
+    }
+
+    @Test
+    void eject_shouldLeaveExcludedProviderAlone() {
+        // given
+        ProviderRegistryItem item = item(new FailingProvider("excluded"));
+        item.setStatus(EXCLUDED);
+
+        // when
+        boolean ejected = detector.eject(item);
+
+        // then
+        assertThat(ejected).isFalse();
+        assertThat(item.getStatus()).isEqualTo(EXCLUDED);
+        assertThat(item.getEjections()).isZero();
+    }
+
+    @Test
+    void sweep_shouldEjectLatencyOutlier() {
+        // given 9 fast providers and a slow one
+        List<ProviderRegistryItem> items = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            items.add(item(new FailingProvider("fast-" + i)));
+        }
+        FailingProvider slowProvider = new FailingProvider("slow");
+        slowProvider.sleepMillis = 20;
+        ProviderRegistryItem slow = item(slowProvider);
+        items.forEach(ProviderRegistryItem::executeGet);
+        slow.executeGet();
+
+        // when
+        detector.sweep();
+
+        // then
+        assertThat(slow.getStatus()).isEqualTo(EJECTED);
+        assertThat(items).allMatch(item -> item.getStatus() == OK);
+    }
+
+    @Test
+    void sweep_shouldNotEjectWithoutEnoughHosts() {
+        // given 4 providers, one of them slow
+        for (int i = 0; i < 3; i++) {
+            item(new FailingProvider("fast-" + i)).executeGet();
+        }
+        FailingProvider slowProvider = new FailingProvider("slow");
+        slowProvider.sleepMillis = 20;
+        ProviderRegistryItem slow = item(slowProvider);
+        slow.executeGet();
+
+        // when
+        detector.sweep();
+
+        // then
+        assertThat(slow.getStatus()).isEqualTo(OK);
+    }
+
+    private ProviderRegistryItem item(FailingProvider provider) {
+        // a breaker that never trips in these tests
+        CircuitBreaker breaker = new CircuitBreaker(1000, 50, TimeUnit.SECONDS.toNanos(5), 80,
+                TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(1), 2);
+        ProviderRegistryItem item = new ProviderRegistryItem(provider, 1, new FixedConcurrencyLimit(10), breaker);
+        item.setOutlierDetector(detector);
+        pool.add(item);
+        return item;
+    }
+
+    private static void fail(ProviderRegistryItem item, int times) {
+        for (int i = 0; i < times; i++) {
+            Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+        }
+    }
+
+    private static final class FailingProvider extends InMemoryProvider {
+        private volatile boolean failing;
+        private volatile long sleepMillis;
+
+        private FailingProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public String get() {
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                throw new IllegalStateException("provider " + getUid() + " failed");
+            }
+            return super.get();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package dev.lst.cc.sre.registry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PeakEwmaTest {
+
+    private static final long DECAY = 1_000_000;
+
+    @Test
+    void get_noSamplesShouldBeZero() {
+        assertThat(new PeakEwma(DECAY).get(0)).isEqualTo(0.0);
+    }
+
+    @Test
+    void observe_higherSampleShouldBeTakenAsPeak() {
+        // given
+        PeakEwma ewma = new PeakEwma(DECAY);
+        ewma.observe(100, 0);
+
+        // when
+        ewma.observe(10_000, 1);
+
+        // then
+        assertThat(ewma.get(1)).isEqualTo(10_000.0);
+    }
+
+    @Test
+    void observe_lowerSamplesShouldBeBlendedInOverTime() {
+        // given
+        PeakEwma ewma = new PeakEwma(DECAY);
+        ewma.observe(10_000, 0);
+
+        // when one decay period later
+        ewma.observe(100, DECAY);
+
+        // then
+        double weight = Math.exp(-1);
+        assertThat(ewma.get(DECAY)).isCloseTo(10_000 * weight + 100 * (1 - weight), within(0.001));
+    }
+
+    @Test
+    void get_shouldDecayWhileIdle() {
+        // given
+        PeakEwma ewma = new PeakEwma(DECAY);
+        ewma.observe(10_000, 0);
+
+        // when
+        // then
+        assertThat(ewma.get(DECAY)).isCloseTo(10_000 * Math.exp(-1), within(0.001));
+        assertThat(ewma.get(10 * DECAY)).isLessThan(1.0);
+    }
+}
@@ -1,5 +1,7 @@
 package dev.lst.cc.sre.registry;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import dev.lst.cc.sre.provider.Provider;
 import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
 
@@ -16,10 +18,10 @@ import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
 class ProviderMock implements Provider {
 
     private final String uid;
-    private boolean finish = false;
-    private boolean started = false;
-    private int countdownRequests = 1;
-    private ProviderHealthCheckStatus status = ProviderHealthCheckStatus.OK;
+    private volatile boolean finish = false;
+    private volatile boolean started = false;
+    private final AtomicInteger countdownRequests = new AtomicInteger(1);
+    private volatile ProviderHealthCheckStatus status = ProviderHealthCheckStatus.OK;
 
     public ProviderMock(String uid) {
         this.uid = uid;
@@ -27,8 +29,7 @@ class ProviderMock implements Provider {
 
     @Override
     public String get() {
-        countdownRequests--;
-        if (countdownRequests == 0) {
+        if (countdownRequests.decrementAndGet() == 0) {
             // so we have the amount of wanted requests waiting here now and can inform through
             // started that we are waiting.
             started = true;
@@ -75,10 +76,10 @@ class ProviderMock implements Provider {
     }
 
     public int getCountdownRequests() {
-        return countdownRequests;
+        return countdownRequests.get();
     }
 
     public void setCountdownRequests(int countdownRequests) {
-        this.countdownRequests = countdownRequests;
+        this.countdownRequests.set(countdownRequests);
     }
 }
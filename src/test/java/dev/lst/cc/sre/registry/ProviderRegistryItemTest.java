@@ -1,15 +1,23 @@
 package dev.lst.cc.sre.registry;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import dev.lst.cc.sre.provider.AsyncProvider;
 import dev.lst.cc.sre.provider.InMemoryProvider;
 import dev.lst.cc.sre.provider.ProviderHealthCheckStatus;
+import dev.lst.cc.sre.provider.SlowInMemoryProvider;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import static dev.lst.cc.sre.provider.ProviderStatus.BUSY;
@@ -98,9 +106,9 @@ class ProviderRegistryItemTest {
         // when
         assertThat(item.getOngoingRequests()).isEqualTo(0);
         ExecutorService executor = Executors.newFixedThreadPool(10);
-        Future<String> future = null;
+        List<Future<String>> futures = new ArrayList<>();
         for (int i = 0; i < 10; i++) {
-            future = executor.submit(item::executeGet);
+            futures.add(executor.submit(item::executeGet));
         }
 
         // then
@@ -114,12 +122,98 @@ class ProviderRegistryItemTest {
 
 
         blockingProvider.setFinish(true);
-        String response = future.get(1, TimeUnit.SECONDS);
-        assertThat(response).isEqualTo(uid);
+        for (Future<String> future : futures) {
+            assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(uid);
+        }
         assertThat(item.getOngoingRequests()).isEqualTo(0);
     }
 
 
+    @Test
+    void executeGetAsync_shouldIncreaseAndDecreaseOngoingCounterWithoutBlocking() throws Exception {
+        // given
+        String uid = UUID.randomUUID().toString();
+        ProviderMock blockingProvider = new ProviderMock(uid);
+        ProviderRegistryItem item = new ProviderRegistryItem(blockingProvider);
+
+        // when
+        CompletableFuture<String> answer = item.executeGetAsync();
+
+        // then the caller is not blocked, the call is ongoing until the provider answers
+        assertThat(item.getOngoingRequests()).isEqualTo(1);
+        while (!blockingProvider.isStarted()) {
+            Thread.sleep(20);
+        }
+        assertThat(answer).isNotDone();
+        blockingProvider.setFinish(true);
+        assertThat(answer.get(1, TimeUnit.SECONDS)).isEqualTo(uid);
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+    }
+
+    @Test
+    void executeGetAsync_failedCallShouldReleaseOngoingCall() {
+        // given
+        ProviderRegistryItem item = new ProviderRegistryItem(new AsyncProvider() {
+            @Override
+            public CompletableFuture<String> getAsync() {
+                CompletableFuture<String> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalStateException("boom"));
+                return failed;
+            }
+
+            @Override
+            public String get() {
+                throw new IllegalStateException("boom");
+            }
+
+            @Override
+            public ProviderHealthCheckStatus healthCheck() {
+                return ProviderHealthCheckStatus.OK;
+            }
+
+            @Override
+            public String getUid() {
+                return "failing";
+            }
+        });
+
+        // when
+        CompletableFuture<String> answer = item.executeGetAsync();
+
+        // then
+        assertThat(answer).isCompletedExceptionally();
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void executeGet_shouldBeBusyAtConfiguredConcurrencyLimit() throws Exception {
+        // given
+        String uid = UUID.randomUUID().toString();
+        ProviderMock blockingProvider = new ProviderMock(uid);
+        blockingProvider.setCountdownRequests(3);
+        ProviderRegistryItem item = new ProviderRegistryItem(blockingProvider, 1, new FixedConcurrencyLimit(3));
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submit(item::executeGet));
+        }
+        while (!blockingProvider.isStarted()) {
+            Thread.sleep(20);
+        }
+
+        // then
+        assertThat(item.getStatus()).isEqualTo(BUSY);
+        blockingProvider.setFinish(true);
+        for (Future<String> future : futures) {
+            future.get(1, TimeUnit.SECONDS);
+        }
+        assertThat(item.getStatus()).isEqualTo(OK);
+        executor.shutdown();
+    }
+
     @Test
     void include_shouldInclude() {
         // given
@@ -133,4 +227,205 @@ class ProviderRegistryItemTest {
         // then
         assertThat(item.getStatus()).isEqualTo(OK);
     }
-}
\ No newline at end of file
+
+    @Test
+    void executeGet_failingProviderShouldReleaseOngoingCall() {
+        // given
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("failing") {
+            @Override
+            public String get() {
+                throw new IllegalStateException("boom");
+            }
+        }, 1, new FixedConcurrencyLimit(1));
+
+        // when
+        Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+
+        // then
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void executeGet_timeoutShouldReleaseOngoingCallAndCountAsFailure() {
+        // given a provider taking 2s and room for one call
+        ProviderRegistryItem item = new ProviderRegistryItem(new SlowInMemoryProvider("slow"), 1,
+                new FixedConcurrencyLimit(1));
+        long timeout = TimeUnit.MILLISECONDS.toNanos(100);
+
+        // when
+        long start = System.nanoTime();
+        Assertions.assertThrows(ProviderTimeoutException.class, () -> item.executeGetWithin(timeout));
+
+        // then the caller, the slot and the status don't wait for the provider
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+        assertThat(item.getStatus()).isEqualTo(OK);
+        assertThat(item.getConsecutiveErrors()).isEqualTo(1);
+        assertThat(item.getLatencyEwmaNanos(System.nanoTime())).isGreaterThan(timeout * 0.9);
+    }
+
+    @Test
+    void executeGet_timeoutShouldInterruptHangingProvider() throws Exception {
+        // given
+        HangingProvider hanging = new HangingProvider("hanging");
+        ProviderRegistryItem item = new ProviderRegistryItem(hanging);
+
+        // when
+        Assertions.assertThrows(ProviderTimeoutException.class,
+                () -> item.executeGetWithin(TimeUnit.MILLISECONDS.toNanos(50)));
+
+        // then
+        assertThat(hanging.interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void executeGetAsync_timeoutShouldFreeTheExecutorThread() throws Exception {
+        // given a single thread to run the calls on
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            HangingProvider hanging = new HangingProvider("hanging");
+            ProviderRegistryItem hangingItem = new ProviderRegistryItem(hanging);
+            ProviderRegistryItem fastItem = new ProviderRegistryItem(new InMemoryProvider("fast"));
+
+            // when
+            CompletableFuture<String> timedOut = hangingItem.executeGetAsync(executor, TimeUnit.MILLISECONDS.toNanos(50));
+            CompletableFuture<String> next = fastItem.executeGetAsync(executor, TimeUnit.SECONDS.toNanos(1));
+
+            // then the hanging call was interrupted and the next one got the thread
+            ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                    () -> timedOut.get(1, TimeUnit.SECONDS));
+            assertThat(failure.getCause()).isInstanceOf(ProviderTimeoutException.class);
+            assertThat(hanging.interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(next.get(1, TimeUnit.SECONDS)).isEqualTo("fast");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void executeGet_withTimeoutShouldAnswer() {
+        // given
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("fast"));
+
+        // when
+        String answer = item.executeGetWithin(TimeUnit.SECONDS.toNanos(1));
+
+        // then
+        assertThat(answer).isEqualTo("fast");
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+        assertThat(item.getConsecutiveErrors()).isEqualTo(0);
+    }
+
+    @Test
+    void executeGet_shouldFeedAdaptiveConcurrencyLimit() {
+        // given
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(10, 1, 100, 0.5, Long.MAX_VALUE);
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("failing") {
+            @Override
+            public String get() {
+                throw new IllegalStateException("boom");
+            }
+        }, 1, limit);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThrows(IllegalStateException.class, item::executeGet);
+        }
+
+        // then every failed call halved the limit
+        assertThat(item.getConcurrencyLimit().getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentCalls_shouldNeverOverwriteExclusion() throws Exception {
+        // given
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString()),
+                1, new FixedConcurrencyLimit(4));
+        int threads = 8;
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> callers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            callers.add(executor.submit(() -> {
+                while (running.get()) {
+                    item.executeGet();
+                }
+            }));
+        }
+
+        // when excluding and including while the callers keep starting and finishing calls
+        int lostExclusions = 0;
+        for (int round = 0; round < 2_000; round++) {
+            item.setStatus(EXCLUDED);
+            for (int i = 0; i < 100; i++) {
+                if (item.getStatus() != EXCLUDED) {
+                    lostExclusions++;
+                }
+            }
+            item.include();
+        }
+        running.set(false);
+        for (Future<?> caller : callers) {
+            caller.get(5, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then every exclusion survived and all calls were released
+        assertThat(lostExclusions).isZero();
+        assertThat(item.getOngoingRequests()).isEqualTo(0);
+        assertThat(item.getStatus()).isEqualTo(OK);
+    }
+
+    @Test
+    void healthCheck_shouldNotOverwriteConcurrentExclusion() {
+        // given an item that was excluded by the health check
+        ProviderMock blockingProvider = new ProviderMock(UUID.randomUUID().toString());
+        ProviderRegistryItem item = new ProviderRegistryItem(blockingProvider);
+        item.setStatus(PENDING);
+
+        // when an admin excludes it before the next health check
+        item.setStatus(EXCLUDED);
+        item.healthCheck();
+
+        // then the health check starts over with PENDING instead of including it
+        assertThat(item.getStatus()).isEqualTo(PENDING);
+        assertThat(item.compareAndSetStatus(EXCLUDED, OK)).isFalse();
+    }
+
+    @Test
+    void setWeight_shouldRejectInvalidWeights() {
+        // given
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString()));
+
+        // when
+        // then
+        assertThat(item.getWeight()).isEqualTo(ProviderRegistryItem.DEFAULT_WEIGHT);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> item.setWeight(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> item.setWeight(ProviderRegistryItem.MAX_WEIGHT + 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ProviderRegistryItem(new InMemoryProvider(UUID.randomUUID().toString()), -1));
+    }
+
+    /**
+     * Provider that only answers when interrupted.
+     */
+    private static final class HangingProvider extends InMemoryProvider {
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        private HangingProvider(String uid) {
+            super(uid);
+        }
+
+        @Override
+        public String get() {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return getUid();
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package dev.lst.cc.sre.registry;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import dev.lst.cc.sre.provider.InMemoryProvider;
 import dev.lst.cc.sre.provider.ProviderStatus;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -21,6 +30,11 @@ class ProviderRegistryTest {
         registry.resetProviders();
     }
 
+    @AfterEach
+    public void tearDown() {
+        registry.setMaxProviders(10);
+    }
+
     @Test
     public void registerProvider_shouldAllowOnly10Providers() throws RegistryFullException {
         // given
@@ -34,6 +48,18 @@ class ProviderRegistryTest {
         });
     }
 
+    @Test
+    public void registerProvider_shouldRespectConfiguredMaxProviders() throws RegistryFullException {
+        // given
+        registry.setMaxProviders(12);
+        registerItems(12);
+
+        // when
+        // then
+        assertThat(registry.getActiveProviders().size()).isEqualTo(12);
+        Assertions.assertThrows(RegistryFullException.class, () -> registerItems(1));
+    }
+
     private List<String> registerItems(int amount) throws RegistryFullException {
         List<String> providerIds = new ArrayList<>();
         for (int i = 0; i < amount; i++) {
@@ -80,6 +106,29 @@ class ProviderRegistryTest {
         assertThat(registry.getActiveProviders().size()).isEqualTo(1);
     }
 
+    @Test
+    public void getRegisteredSnapshot_shouldOnlyChangeWithRegistration() throws RegistryFullException {
+        // given
+        List<String> uids = registerItems(3);
+        ProviderSnapshot registered = registry.getRegisteredSnapshot();
+
+        // when
+        registry.exclude(uids.get(1));
+
+        // then
+        assertThat(registry.getActiveSnapshot().size()).isEqualTo(2);
+        assertThat(registry.getRegisteredSnapshot()).isSameAs(registered);
+        assertThat(registered.size()).isEqualTo(3);
+
+        // when
+        registry.removeProvider(uids.get(1));
+
+        // then
+        assertThat(registry.getRegisteredSnapshot().asList())
+                .extracting(ProviderRegistryItem::getProviderUid)
+                .containsExactly(uids.get(0), uids.get(2));
+    }
+
     @Test
     public void getActiveProviders_shouldContainItem() throws RegistryFullException {
         // when
@@ -128,4 +177,277 @@ class ProviderRegistryTest {
         assertThat(providerRegistryItem.getStatus()).isEqualTo(ProviderStatus.OK);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getActiveSnapshot_shouldChangeVersionOnStatusChange() throws RegistryFullException {
+        // given
+        List<String> strings = registerItems(2);
+        ProviderSnapshot before = registry.getActiveSnapshot();
+
+        // when
+        registry.exclude(strings.get(0));
+
+        // then
+        ProviderSnapshot after = registry.getActiveSnapshot();
+        assertThat(before.size()).isEqualTo(2);
+        assertThat(after.size()).isEqualTo(1);
+        assertThat(after.get(0).getProviderUid()).isEqualTo(strings.get(1));
+        assertThat(after.getVersion()).isGreaterThan(before.getVersion());
+    }
+
+    @Test
+    public void getActiveSnapshot_shouldNotChangeIfStatusStaysTheSame() throws RegistryFullException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        ProviderRegistryItem providerRegistryItem = new ProviderRegistryItem(new InMemoryProvider(uid));
+        registry.registerProvider(providerRegistryItem);
+        ProviderSnapshot before = registry.getActiveSnapshot();
+
+        // when
+        providerRegistryItem.setStatus(ProviderStatus.OK);
+
+        // then
+        assertThat(registry.getActiveSnapshot()).isSameAs(before);
+    }
+
+    @Test
+    public void setWeight_shouldPublishNewSnapshot() throws RegistryFullException {
+        // given
+        List<String> strings = registerItems(1);
+        ProviderSnapshot before = registry.getActiveSnapshot();
+
+        // when
+        registry.setWeight(strings.get(0), 5);
+
+        // then
+        ProviderSnapshot after = registry.getActiveSnapshot();
+        assertThat(before.getWeight(0)).isEqualTo(1);
+        assertThat(after.getWeight(0)).isEqualTo(5);
+        assertThat(after.getVersion()).isGreaterThan(before.getVersion());
+    }
+
+    @Test
+    public void getActiveSnapshot_removedItemShouldNotUpdateSnapshot() throws RegistryFullException {
+        // given
+        String uid = UUID.randomUUID().toString();
+        ProviderRegistryItem providerRegistryItem = new ProviderRegistryItem(new InMemoryProvider(uid));
+        registry.registerProvider(providerRegistryItem);
+        registry.removeProvider(uid);
+        ProviderSnapshot before = registry.getActiveSnapshot();
+
+        // when
+        providerRegistryItem.setStatus(ProviderStatus.EXCLUDED);
+        providerRegistryItem.setStatus(ProviderStatus.OK);
+
+        // then
+        assertThat(registry.getActiveSnapshot()).isSameAs(before);
+        assertThat(before.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void getActiveSnapshot_shouldStayConsistentUnderConcurrentStatusFlips() throws Exception {
+        // given
+        List<String> uids = registerItems(10);
+        List<ProviderRegistryItem> items = new ArrayList<>(registry.getActiveProviders());
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // when
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    ProviderRegistryItem item = items.get(random.nextInt(items.size()));
+                    item.setStatus(random.nextBoolean() ? ProviderStatus.OK : ProviderStatus.EXCLUDED);
+
+                    // every snapshot we see must only contain registered items and no duplicates
+                    ProviderSnapshot snapshot = registry.getActiveSnapshot();
+                    Set<String> seen = new HashSet<>();
+                    for (int p = 0; p < snapshot.size(); p++) {
+                        assertThat(uids).contains(snapshot.get(p).getProviderUid());
+                        assertThat(seen.add(snapshot.get(p).getProviderUid())).isTrue();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // then the last published snapshot reflects exactly the final status of every item
+        Set<String> expected = items.stream().filter(i -> ProviderStatus.OK.equals(i.getStatus()))
+                .map(ProviderRegistryItem::getProviderUid).collect(Collectors.toSet());
+        Set<String> actual = registry.getActiveProviders().stream()
+                .map(ProviderRegistryItem::getProviderUid).collect(Collectors.toSet());
+        assertThat(actual).isEqualTo(expected);
+        assertThat(registry.getActiveSnapshot().size()).isEqualTo(expected.size());
+    }
+
+    @Test
+    public void exclude_changeShouldBeVisibleOnceItReturns() throws Exception {
+        // given every thread flipping a provider of its own
+        List<String> uids = registerItems(8);
+        ExecutorService executor = Executors.newFixedThreadPool(uids.size());
+        CountDownLatch start = new CountDownLatch(1);
+
+        // when
+        List<Future<?>> flippers = new ArrayList<>();
+        for (String uid : uids) {
+            flippers.add(executor.submit(() -> {
+                start.await();
+                ProviderRegistryItem item = registry.getProvider(uid);
+                for (int i = 0; i < 2_000; i++) {
+                    registry.exclude(uid);
+                    // then
+                    assertThat(registry.getActiveProviders()).doesNotContain(item);
+                    registry.include(uid);
+                    assertThat(registry.getActiveProviders()).contains(item);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> flipper : flippers) {
+            flipper.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertThat(registry.getActiveSnapshot().size()).isEqualTo(8);
+    }
+
+    @Test
+    public void registry_shouldHandleThousandsOfProviders() throws RegistryFullException {
+        // given
+        registry.setMaxProviders(10_000);
+        List<String> uids = registerItems(10_000);
+
+        // when
+        registry.exclude(uids.get(5_000));
+        registry.removeProvider(uids.get(0));
+
+        // then
+        assertThat(registry.size()).isEqualTo(9_999);
+        assertThat(registry.getProvider(uids.get(0))).isNull();
+        assertThat(registry.getProvider(uids.get(5_000)).getStatus()).isEqualTo(ProviderStatus.EXCLUDED);
+        assertThat(registry.getActiveSnapshot().size()).isEqualTo(9_998);
+        assertThat(registry.getActiveProviders().get(0).getProviderUid()).isEqualTo(uids.get(1));
+
+        // when
+        registry.include(uids.get(5_000));
+
+        // then the provider is back at its place in registration order
+        assertThat(registry.getActiveSnapshot().size()).isEqualTo(9_999);
+        assertThat(registry.getActiveSnapshot().get(4_999).getProviderUid()).isEqualTo(uids.get(5_000));
+    }
+
+    @Test
+    public void removeProvider_shouldBeSafeAgainstConcurrentRegistration() throws Exception {
+        // given
+        registry.setMaxProviders(1_000);
+        List<String> uids = registerItems(500);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when one thread removes while another one registers
+        executor.submit(() -> uids.forEach(registry::removeProvider));
+        executor.submit(() -> registerItems(500));
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        // then
+        assertThat(registry.size()).isEqualTo(500);
+        assertThat(registry.getActiveSnapshot().size()).isEqualTo(500);
+        assertThat(uids).noneMatch(uid -> registry.getProvider(uid) != null);
+    }
+
+    @Test
+    public void newRegistry_poolsShouldBeIndependent() throws RegistryFullException {
+        // given the same provider uid in two pools
+        ProviderRegistry other = new ProviderRegistry("other");
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("shared-uid")));
+        other.registerProvider(new ProviderRegistryItem(new InMemoryProvider("shared-uid")));
+
+        // when
+        registry.exclude("shared-uid");
+        registry.removeProvider("shared-uid");
+
+        // then
+        assertThat(registry.size()).isZero();
+        assertThat(other.size()).isEqualTo(1);
+        assertThat(other.getProvider("shared-uid").getStatus()).isEqualTo(ProviderStatus.OK);
+        assertThat(other.getActiveSnapshot().size()).isEqualTo(1);
+        other.close();
+    }
+
+    @Test
+    public void newRegistry_shouldNotStartThreadsPerPool() throws RegistryFullException {
+        // given the shared scheduler is running already
+        HealthCheckScheduler.shared();
+        int threads = Thread.activeCount();
+        List<ProviderRegistry> pools = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            ProviderRegistry pool = new ProviderRegistry("pool-" + i);
+            pool.registerProvider(new ProviderRegistryItem(new InMemoryProvider("provider-" + i)));
+            pools.add(pool);
+        }
+
+        // then a scheduler per pool would have started 500 threads, a few more may come from other tests
+        assertThat(Thread.activeCount()).isLessThan(threads + 10);
+        pools.forEach(ProviderRegistry::close);
+        assertThat(pools).allMatch(pool -> pool.size() == 0);
+    }
+
+    @Test
+    public void size_shouldCountProvidersPerZone() throws RegistryFullException {
+        // given
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a-1", "a")));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("a-2", "a")));
+        registry.registerProvider(new ProviderRegistryItem(new InMemoryProvider("b-1", "b")));
+
+        // when
+        registry.exclude("a-1");
+        registry.removeProvider("b-1");
+
+        // then excluded providers still count, removed ones don't
+        assertThat(registry.size("a")).isEqualTo(2);
+        assertThat(registry.size("b")).isZero();
+        assertThat(registry.size("c")).isZero();
+    }
+
+    @Test
+    public void getActiveSnapshot_shouldKeepPriorityTiersTogether() throws RegistryFullException {
+        // given providers of two tiers registered alternately
+        for (int i = 0; i < 6; i++) {
+            ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("provider-" + i));
+            item.setPriority(i % 2);
+            registry.registerProvider(item);
+        }
+
+        // when
+        registry.exclude("provider-2");
+
+        // then every tier is one range, in registration order
+        ProviderSnapshot snapshot = registry.getActiveSnapshot();
+        assertThat(snapshot.getPriorityStart(0)).isZero();
+        assertThat(snapshot.getPriorityEnd(0)).isEqualTo(2);
+        assertThat(snapshot.getPriorityStart(1)).isEqualTo(2);
+        assertThat(snapshot.getPriorityEnd(1)).isEqualTo(5);
+        assertThat(snapshot.asList()).extracting(ProviderRegistryItem::getProviderUid)
+                .containsExactly("provider-0", "provider-4", "provider-1", "provider-3", "provider-5");
+        assertThat(registry.sizeOfPriority(0)).isEqualTo(3);
+        assertThat(registry.sizeOfPriority(1)).isEqualTo(3);
+    }
+
+    @Test
+    public void setPriority_shouldNotBeChangedWhileRegistered() throws RegistryFullException {
+        // given
+        ProviderRegistryItem item = new ProviderRegistryItem(new InMemoryProvider("provider"));
+        registry.registerProvider(item);
+
+        // when
+        // then
+        Assertions.assertThrows(IllegalStateException.class, () -> item.setPriority(1));
+    }
+}